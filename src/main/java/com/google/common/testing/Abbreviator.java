@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+/**
+ * Renders possibly huge values for failure messages, keeping only their
+ * beginning and end. E.g., with a maximum length of 6, a 1000-character
+ * string of {@code a}s followed by {@code xyz} is rendered as:
+ *
+ * <pre>
+ * &lt;aaa...xyz&gt; (length:1003, 997 chars omitted)
+ * </pre>
+ *
+ * <p>Only the characters that are kept are ever read, so this is cheap even
+ * for a huge {@link java.nio.CharBuffer}.
+ *
+ * <p>The maximum length defaults to {@value #DEFAULT_MAX_LENGTH}, and can be
+ * changed with {@link #setMaxLength}, or by the
+ * {@value #MAX_LENGTH_PROPERTY} system property.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class Abbreviator {
+
+  public static final String MAX_LENGTH_PROPERTY =
+      "com.google.common.testing.Abbreviator.maxLength";
+
+  public static final int DEFAULT_MAX_LENGTH = 1000;
+
+  private static final String ELLIPSIS = "...";
+
+  private static volatile int maxLength =
+      Integer.getInteger(MAX_LENGTH_PROPERTY, DEFAULT_MAX_LENGTH);
+
+  private Abbreviator() { }
+
+  /**
+   * Returns the maximum number of characters of a value that are kept in a
+   * failure message.
+   */
+  public static int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Sets the maximum number of characters of a value that are kept in a
+   * failure message. Use {@link Integer#MAX_VALUE} to never abbreviate.
+   *
+   * @throws IllegalArgumentException if {@code maxLength} is negative
+   */
+  public static void setMaxLength(int maxLength) {
+    if (maxLength < 0) {
+      throw new IllegalArgumentException("maxLength can't be negative");
+    }
+    Abbreviator.maxLength = maxLength;
+  }
+
+  /**
+   * Returns {@code value} surrounded by {@code <>}, or {@code "null"} if it is
+   * {@code null}. If it is longer than {@link #getMaxLength}, only its first
+   * and last characters are kept, and a note with its length is added.
+   */
+  public static String describe(CharSequence value) {
+    if (value == null) {
+      return "null";
+    }
+    int length = value.length();
+    int max = maxLength;
+    if (length <= max) {
+      return "<" + value + '>';
+    }
+    int head = (max + 1) / 2;
+    int tail = max - head;
+    return new StringBuilder(max + ELLIPSIS.length() + 50)
+        .append('<')
+        .append(value, 0, head)
+        .append(ELLIPSIS)
+        .append(value, length - tail, length)
+        .append("> (length:").append(length).append(", ")
+        .append(length - max).append(" chars omitted)")
+        .toString();
+  }
+
+  /**
+   * Like {@link #describe(CharSequence)}, for {@code String.valueOf(value)}.
+   */
+  public static String describe(Object value) {
+    return (value instanceof CharSequence)
+        ? describe((CharSequence) value)
+        : describe((CharSequence) String.valueOf(value));
+  }
+}
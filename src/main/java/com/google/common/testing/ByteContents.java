@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Finds and describes the first difference between two byte sequences,
+ * without ever copying either of them onto the heap. This is what backs the
+ * {@code assertContentsEqual} methods of
+ * {@link com.google.common.testing.junit3.JUnitAsserts} and
+ * {@link com.google.common.testing.junit4.JUnitAsserts}, and is framework
+ * agnostic.
+ *
+ * <p>{@link FileChannel}s are compared through read-only memory-mapped
+ * regions of at most {@link #CHUNK_SIZE} bytes, so comparing two
+ * multi-gigabyte files costs time proportional to their size, but only a
+ * constant amount of heap. Files of an {@link InMemoryFileSystem}, which
+ * can't be mapped, are compared in place instead.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class ByteContents {
+
+  /**
+   * The largest region of a {@link FileChannel} that is mapped at once.
+   */
+  public static final int CHUNK_SIZE = 64 * 1024 * 1024;
+
+  /**
+   * How many bytes before and after the first difference
+   * {@link #describeMismatch} shows.
+   */
+  static final int WINDOW_RADIUS = 16;
+
+  private ByteContents() { }
+
+  /**
+   * Returns the offset, relative to their respective positions, of the first
+   * byte that differs between the remaining contents of {@code expected} and
+   * {@code actual}, or {@code -1} if they have the same contents. If one is a
+   * proper prefix of the other, the length of the shorter one is returned.
+   *
+   * <p>The positions and limits of the buffers are not modified.
+   */
+  public static long mismatch(ByteBuffer expected, ByteBuffer actual) {
+    int expectedLength = expected.remaining();
+    int actualLength = actual.remaining();
+    int common = Math.min(expectedLength, actualLength);
+    Object event = FlightRecorderEvents.beginComparison();
+    int result = mismatch(
+        expected, expected.position(), actual, actual.position(), common);
+    FlightRecorderEvents.endComparison(event, "contents", null, common);
+    if (result >= 0) {
+      return result;
+    }
+    return (expectedLength == actualLength) ? -1 : common;
+  }
+
+  /**
+   * Returns the offset of the first byte that differs between the entire
+   * contents of {@code expected} and {@code actual}, or {@code -1} if they
+   * have the same contents. If one is a proper prefix of the other, the size
+   * of the smaller one is returned.
+   *
+   * <p>The channels are compared from offset zero, regardless of their
+   * current positions, which are not modified.
+   */
+  public static long mismatch(FileChannel expected, FileChannel actual)
+      throws IOException {
+    long expectedSize = expected.size();
+    long actualSize = actual.size();
+    long common = Math.min(expectedSize, actualSize);
+    Object event = FlightRecorderEvents.beginComparison();
+    try {
+      for (long offset = 0; offset < common; offset += CHUNK_SIZE) {
+        int length = (int) Math.min(CHUNK_SIZE, common - offset);
+        ByteBuffer expectedChunk = chunk(expected, offset, length);
+        ByteBuffer actualChunk = chunk(actual, offset, length);
+        int result = mismatch(expectedChunk, 0, actualChunk, 0, length);
+        if (result >= 0) {
+          return offset + result;
+        }
+      }
+    } finally {
+      FlightRecorderEvents.endComparison(event, "file contents", null, common);
+    }
+    return (expectedSize == actualSize) ? -1 : common;
+  }
+
+  /**
+   * Returns a multi-line description of the bytes of {@code expected} and
+   * {@code actual} around {@code offset}, as returned by
+   * {@link #mismatch(ByteBuffer, ByteBuffer)}, in both hex and text.
+   */
+  public static String describeMismatch(
+      ByteBuffer expected, ByteBuffer actual, long offset) {
+    return describeMismatch(window(expected, offset), expected.remaining(),
+        window(actual, offset), actual.remaining(), offset);
+  }
+
+  /**
+   * Returns a multi-line description of the bytes of {@code expected} and
+   * {@code actual} around {@code offset}, as returned by
+   * {@link #mismatch(FileChannel, FileChannel)}, in both hex and text.
+   */
+  public static String describeMismatch(
+      FileChannel expected, FileChannel actual, long offset)
+      throws IOException {
+    return describeMismatch(window(expected, offset), expected.size(),
+        window(actual, offset), actual.size(), offset);
+  }
+
+  private static String describeMismatch(ByteBuffer expectedWindow,
+      long expectedLength, ByteBuffer actualWindow, long actualLength,
+      long offset) {
+    long start = windowStart(offset);
+    StringBuilder result = new StringBuilder()
+        .append("contents differ at offset:<").append(offset)
+        .append("> (expected length:<").append(expectedLength)
+        .append(">, actual length:<").append(actualLength).append(">)\n");
+    appendWindow(result, "expected: ", start, expectedWindow);
+    result.append('\n');
+    appendWindow(result, "actual:   ", start, actualWindow);
+    return result.toString();
+  }
+
+  /**
+   * Compares {@code length} bytes of {@code a} and {@code b}, starting at the
+   * given absolute indexes, eight bytes at a time where possible.
+   */
+  private static int mismatch(
+      ByteBuffer a, int aStart, ByteBuffer b, int bStart, int length) {
+    int i = 0;
+    for (; i + 8 <= length; i += 8) {
+      if (a.getLong(aStart + i) != b.getLong(bStart + i)) {
+        break;
+      }
+    }
+    for (; i < length; i++) {
+      if (a.get(aStart + i) != b.get(bStart + i)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static ByteBuffer chunk(FileChannel channel, long offset, int length)
+      throws IOException {
+    if (channel instanceof InMemoryFileChannel) {
+      return ((InMemoryFileChannel) channel).readOnlyView(offset, length);
+    }
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+  }
+
+  private static long windowStart(long offset) {
+    return Math.max(0, offset - WINDOW_RADIUS);
+  }
+
+  private static ByteBuffer window(ByteBuffer buffer, long offset) {
+    ByteBuffer result = buffer.duplicate();
+    int start = (int) Math.min(windowStart(offset), buffer.remaining());
+    int end = (int) Math.min(offset + WINDOW_RADIUS, buffer.remaining());
+    result.position(buffer.position() + start);
+    result.limit(buffer.position() + end);
+    return result.slice();
+  }
+
+  private static ByteBuffer window(FileChannel channel, long offset)
+      throws IOException {
+    long start = windowStart(offset);
+    ByteBuffer result = ByteBuffer.allocate((int) (offset + WINDOW_RADIUS - start));
+    while (result.hasRemaining()) {
+      int read = channel.read(result, start + result.position());
+      if (read < 0) {
+        break;
+      }
+    }
+    result.flip();
+    return result;
+  }
+
+  private static void appendWindow(
+      StringBuilder out, String label, long start, ByteBuffer window) {
+    out.append(label).append(String.format("0x%08x ", start));
+    for (int i = 0; i < 2 * WINDOW_RADIUS; i++) {
+      if (i < window.limit()) {
+        out.append(String.format(" %02x", window.get(i) & 0xff));
+      } else {
+        out.append("   ");
+      }
+    }
+    out.append("  |");
+    for (int i = 0; i < window.limit(); i++) {
+      char c = (char) (window.get(i) & 0xff);
+      out.append((c >= 0x20 && c < 0x7f) ? c : '.');
+    }
+    out.append('|');
+  }
+}
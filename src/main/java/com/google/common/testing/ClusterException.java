@@ -19,8 +19,11 @@ package com.google.common.testing;
 // Repackages from the zigva project
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * An {@link ClusterException} is data structure that allows for some code to
@@ -60,26 +63,72 @@ import java.util.Collections;
  */
 final class ClusterException extends RuntimeException {
 
+  /**
+   * If this system property is {@code true}, {@link #create(Collection)}
+   * creates {@link ClusterException}s without a stack trace of their own.
+   */
+  static final String STACKLESS_PROPERTY =
+      "com.google.common.testing.ClusterException.stackless";
+
   public final Collection<? extends Throwable> exceptions;
-  
-  private ClusterException(Collection<? extends Throwable> exceptions) {
-    super(String.format(
-        "%d exceptions were thrown. The first exception is listed as a cause.", 
-        exceptions.size()), exceptions.iterator().next());
-    ArrayList<Throwable> temp = new ArrayList<Throwable>();
-    temp.addAll(exceptions);
-    this.exceptions = Collections.unmodifiableCollection(temp);
+
+  /**
+   * How many times each of {@link #exceptions} occurred. These are all 1,
+   * unless this was created from {@link FailureGroups}, in which case each
+   * of {@link #exceptions} stands for a group of alike exceptions.
+   */
+  public final List<Integer> occurrences;
+
+  /**
+   * The total number of exceptions thrown, including the ones that were not
+   * kept as part of {@link #exceptions}.
+   */
+  public final int totalOccurrences;
+
+  private ClusterException(List<Throwable> exceptions,
+      List<Integer> occurrences, int totalOccurrences, boolean stackless) {
+    super(null, exceptions.get(0), true, !stackless);
+    this.exceptions = Collections.unmodifiableList(exceptions);
+    this.occurrences = Collections.unmodifiableList(occurrences);
+    this.totalOccurrences = totalOccurrences;
+    for (int i = 1; i < exceptions.size(); i++) {
+      addSuppressed(exceptions.get(i));
+    }
   }
 
   /**
-   * @see #create(Collection)
+   * Built on demand, since a {@link ClusterException} is often caught and
+   * inspected without its message ever being looked at.
    */
-  public static RuntimeException create(Throwable... exceptions) {
-    ArrayList<Throwable> temp = new ArrayList<Throwable>();
+  @Override public String getMessage() {
+    if (totalOccurrences == exceptions.size()) {
+      return exceptions.size()
+          + " exceptions were thrown. The first exception is listed as a"
+          + " cause, and the others as suppressed.";
+    }
+    StringBuilder result = new StringBuilder()
+        .append(totalOccurrences).append(" exceptions were thrown, ")
+        .append(exceptions.size()).append(" of which are listed: the first")
+        .append(" as a cause, and the others as suppressed. Occurrences:");
+    int listed = 0;
+    Iterator<Integer> counts = occurrences.iterator();
     for (Throwable exception : exceptions) {
-      temp.add(exception);
+      int count = counts.next();
+      listed += count;
+      result.append("\n  ").append(count).append(" x ").append(exception);
+    }
+    if (listed < totalOccurrences) {
+      result.append("\n  ").append(totalOccurrences - listed)
+          .append(" x others, not kept");
     }
-    return create(temp);
+    return result.toString();
+  }
+
+  /**
+   * @see #create(Collection)
+   */
+  public static RuntimeException create(Throwable... exceptions) {
+    return create(Arrays.asList(exceptions));
   }
   
   /**
@@ -93,17 +142,34 @@ final class ClusterException extends RuntimeException {
    *    <em>not</em> a {@link RuntimeException}, return a simple 
    *    {@code RuntimeException} that wraps it
    *  <li>Otherwise, return an instance of {@link ClusterException} that wraps 
-   *    the first exception in the {@code exceptions} collection.
+   *    the first exception in the {@code exceptions} collection, and has all
+   *    the others as {@linkplain Throwable#getSuppressed() suppressed}
+   *    exceptions.
    * </ul>
    * 
    * <p>Though this method takes any {@link Collection}, it often makes most 
    * sense to pass a {@link java.util.List} or some other collection that 
    * preserves the order in which the exceptions got added.
+   *
+   * <p>If the {@value #STACKLESS_PROPERTY} system property is {@code true},
+   * the {@link ClusterException} is created as if by
+   * {@link #create(Collection, boolean) create(exceptions, true)}.
    * 
    * @throws NullPointerException if {@code exceptions} is null
    * @throws IllegalArgumentException if {@code exceptions} is empty
    */
   public static RuntimeException create(Collection<? extends Throwable> exceptions) {
+    return create(exceptions, Boolean.getBoolean(STACKLESS_PROPERTY));
+  }
+
+  /**
+   * Like {@link #create(Collection)} but, if {@code stackless} is true, a
+   * {@link ClusterException} is created without filling in its own stack
+   * trace. This makes creating it much cheaper, and loses little: the useful
+   * stack traces are those of {@code exceptions}, which are kept.
+   */
+  public static RuntimeException create(
+      Collection<? extends Throwable> exceptions, boolean stackless) {
     if (exceptions.size() == 0) {
       throw new IllegalArgumentException(
           "Can't create an ExceptionCollection with no exceptions");
@@ -116,6 +182,24 @@ final class ClusterException extends RuntimeException {
         return new RuntimeException(temp);
       }
     }
-    return new ClusterException(exceptions);
+    List<Throwable> temp = new ArrayList<Throwable>(exceptions);
+    return new ClusterException(temp,
+        Collections.nCopies(temp.size(), 1), temp.size(), stackless);
+  }
+
+  /**
+   * Like {@link #create(Collection)}, for the exemplars of {@code groups}.
+   * Unless a single exception was thrown, the result is a
+   * {@link ClusterException} which also records how many times each
+   * exemplar's group occurred.
+   *
+   * @throws IllegalArgumentException if {@code groups} is empty
+   */
+  static RuntimeException create(FailureGroups groups) {
+    if (groups.total() <= 1) {
+      return create(groups.exemplars());
+    }
+    return new ClusterException(groups.exemplars(), groups.occurrences(),
+        groups.total(), Boolean.getBoolean(STACKLESS_PROPERTY));
   }
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.LongFunction;
+
+/**
+ * Measures how many bytes, and how much time, each run of some code takes,
+ * for assertions such as
+ * {@link com.google.common.testing.junit4.JUnitAsserts#assertAllocatesAtMost}
+ * and
+ * {@link com.google.common.testing.junit4.JUnitAsserts#assertCompletesWithin}.
+ *
+ * <p>The code is first run as many times as it will be measured, unmeasured,
+ * so that class loading, lazy initialization and JIT compilation (which can
+ * remove allocations altogether, through escape analysis) are mostly done by
+ * the time it is measured.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class CostMeasurements {
+
+  /** How many times code is measured when not told otherwise. */
+  public static final int DEFAULT_ITERATIONS = 1000;
+
+  /** The width, in characters, of the longest bar of a histogram. */
+  static final int HISTOGRAM_WIDTH = 40;
+
+  private CostMeasurements() { }
+
+  /**
+   * Runs {@code code} {@code iterations} times to warm it up, then
+   * {@code iterations} more times, returning how many bytes the current
+   * thread allocated during each of the latter, in ascending order.
+   *
+   * @throws UnsupportedOperationException if this JVM can't measure the bytes
+   *     allocated by a thread
+   */
+  public static long[] measureAllocations(int iterations, Runnable code) {
+    checkIterations(iterations);
+    if (ResourceProfiler.currentThreadAllocatedBytes() < 0) {
+      throw new UnsupportedOperationException(
+          "this JVM can't measure the bytes allocated by a thread");
+    }
+    long overhead = Long.MAX_VALUE;
+    for (int i = 0; i < 10; i++) {
+      long start = ResourceProfiler.currentThreadAllocatedBytes();
+      overhead = Math.min(overhead,
+          ResourceProfiler.currentThreadAllocatedBytes() - start);
+    }
+    for (int i = 0; i < iterations; i++) {
+      code.run();
+    }
+    long[] result = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long start = ResourceProfiler.currentThreadAllocatedBytes();
+      code.run();
+      long end = ResourceProfiler.currentThreadAllocatedBytes();
+      result[i] = Math.max(0, end - start - overhead);
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * Runs {@code code} {@code iterations} times to warm it up, then
+   * {@code iterations} more times, returning how many nanoseconds each of the
+   * latter took, in ascending order.
+   */
+  public static long[] measureLatencies(int iterations, Runnable code) {
+    checkIterations(iterations);
+    for (int i = 0; i < iterations; i++) {
+      code.run();
+    }
+    long[] result = new long[iterations];
+    for (int i = 0; i < iterations; i++) {
+      long start = System.nanoTime();
+      code.run();
+      result[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * Returns the smallest of {@code sorted} that is greater than or equal to
+   * {@code percentile} percent of them (the "nearest rank" definition).
+   *
+   * @throws IllegalArgumentException if {@code percentile} is not greater
+   *     than 0 and at most 100, or {@code sorted} is empty
+   */
+  public static long percentile(long[] sorted, double percentile) {
+    if (!(percentile > 0 && percentile <= 100)) {
+      throw new IllegalArgumentException(
+          "percentile must be greater than 0 and at most 100: " + percentile);
+    }
+    if (sorted.length == 0) {
+      throw new IllegalArgumentException("no values");
+    }
+    int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+    return sorted[Math.max(rank, 1) - 1];
+  }
+
+  /**
+   * Returns a histogram of {@code sorted} allocation sizes, as returned by
+   * {@link #measureAllocations}.
+   */
+  public static String describeAllocations(long[] sorted) {
+    return histogram(sorted, CostMeasurements::formatBytes);
+  }
+
+  /**
+   * Returns a histogram of {@code sorted} latencies, as returned by
+   * {@link #measureLatencies}.
+   */
+  public static String describeLatencies(long[] sorted) {
+    return histogram(sorted, CostMeasurements::formatNanos);
+  }
+
+  /**
+   * Returns a histogram of {@code sorted}, one line per power-of-two bucket
+   * from the smallest value to the largest, such as
+   * {@code "  [1.0ms, 2.0ms)      412 ########"}.
+   */
+  static String histogram(long[] sorted, LongFunction<String> format) {
+    if (sorted.length == 0) {
+      return "";
+    }
+    int first = bucket(sorted[0]);
+    int last = bucket(sorted[sorted.length - 1]);
+    int[] counts = new int[last - first + 1];
+    for (long value : sorted) {
+      counts[bucket(value) - first]++;
+    }
+    int maxCount = 0;
+    for (int count : counts) {
+      maxCount = Math.max(maxCount, count);
+    }
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < counts.length; i++) {
+      int bucket = first + i;
+      String range = "[" + format.apply(lowerBound(bucket)) + ", "
+          + format.apply(lowerBound(bucket + 1)) + ")";
+      int width = (counts[i] == 0)
+          ? 0
+          : Math.max(1, (int) ((long) counts[i] * HISTOGRAM_WIDTH / maxCount));
+      result.append(String.format(Locale.ROOT, "\n  %-20s %8d ", range,
+          counts[i]));
+      for (int j = 0; j < width; j++) {
+        result.append('#');
+      }
+    }
+    return result.toString();
+  }
+
+  /** Bucket 0 holds 0, and bucket {@code k} holds [2^(k-1), 2^k). */
+  private static int bucket(long value) {
+    return 64 - Long.numberOfLeadingZeros(value);
+  }
+
+  private static long lowerBound(int bucket) {
+    return (bucket == 0) ? 0 : 1L << (bucket - 1);
+  }
+
+  /**
+   * Returns {@code nanos} in the most readable unit, such as {@code "1.5ms"}.
+   */
+  public static String formatNanos(long nanos) {
+    if (nanos < 1000) {
+      return nanos + "ns";
+    } else if (nanos < 1000000) {
+      return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+    } else if (nanos < 1000000000) {
+      return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+    }
+    return String.format(Locale.ROOT, "%.2fs", nanos / 1e9);
+  }
+
+  /**
+   * Returns {@code bytes} in the most readable unit, such as
+   * {@code "1.5KiB"}.
+   */
+  public static String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + "B";
+    } else if (bytes < 1024 * 1024) {
+      return String.format(Locale.ROOT, "%.1fKiB", bytes / 1024.0);
+    }
+    return String.format(Locale.ROOT, "%.1fMiB", bytes / (1024.0 * 1024));
+  }
+
+  private static void checkIterations(int iterations) {
+    if (iterations < 1) {
+      throw new IllegalArgumentException(
+          "iterations must be positive: " + iterations);
+    }
+  }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out {@link ExecutorService}s that are shut down when a test tears
+ * down:
+ *
+ * <pre>
+ *   ExecutorFixture executors = ExecutorFixture.create(this);
+ *   ExecutorService workers = executors.newFixedThreadPool(4);
+ *   ExecutorService clients = executors.newVirtualThreadPerTaskExecutor();
+ * </pre>
+ *
+ * <p>All the executors are shut down at once, and then given a single grace
+ * period, shared by all of them, to finish their tasks; tearing down many
+ * executors thus takes about as long as the slowest of them, rather than a
+ * grace period each. Tasks still running then are reported, with where
+ * their threads were, and interrupted; the tear-down fails with an
+ * {@link IllegalStateException} listing them, and the threads that outlive
+ * even the interruption, as leaked.
+ *
+ * <p>Virtual threads need Java 21 or later, and are looked up reflectively
+ * so that this class runs on older versions too; see
+ * {@link #supportsVirtualThreads()}.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class ExecutorFixture implements TearDown {
+
+  /** How long executors are given to finish when not told otherwise. */
+  public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofSeconds(5);
+
+  /** How long interrupted threads are given to be gone. */
+  static final Duration INTERRUPT_TIMEOUT = Duration.ofSeconds(1);
+
+  private static final AtomicInteger fixtures = new AtomicInteger();
+
+  private final Duration gracePeriod;
+  private final String name = "ExecutorFixture-" + fixtures.incrementAndGet();
+  private final List<Pool> pools = new ArrayList<Pool>();
+
+  private ExecutorFixture(Duration gracePeriod) {
+    this.gracePeriod = gracePeriod;
+  }
+
+  /**
+   * Creates a fixture that shuts its executors down, within
+   * {@link #DEFAULT_GRACE_PERIOD}, when {@code accepter} tears down.
+   */
+  public static ExecutorFixture create(TearDownAccepter accepter) {
+    return create(accepter, DEFAULT_GRACE_PERIOD);
+  }
+
+  /**
+   * Creates a fixture that shuts its executors down, giving them
+   * {@code gracePeriod} to finish, when {@code accepter} tears down.
+   */
+  public static ExecutorFixture create(
+      TearDownAccepter accepter, Duration gracePeriod) {
+    if (gracePeriod.isNegative()) {
+      throw new IllegalArgumentException(
+          "negative grace period: " + gracePeriod);
+    }
+    ExecutorFixture result = new ExecutorFixture(gracePeriod);
+    accepter.addTearDown(result);
+    return result;
+  }
+
+  /** Returns whether this JVM has virtual threads. */
+  public static boolean supportsVirtualThreads() {
+    return VirtualThreads.OF_VIRTUAL != null;
+  }
+
+  /**
+   * Returns an executor like {@link Executors#newFixedThreadPool(int)}.
+   */
+  public synchronized ExecutorService newFixedThreadPool(int threads) {
+    Pool pool = newPool("pool", Executors.defaultThreadFactory());
+    return register(pool, Executors.newFixedThreadPool(threads, pool));
+  }
+
+  /**
+   * Returns an executor like {@link Executors#newCachedThreadPool()}.
+   */
+  public synchronized ExecutorService newCachedThreadPool() {
+    Pool pool = newPool("pool", Executors.defaultThreadFactory());
+    return register(pool, Executors.newCachedThreadPool(pool));
+  }
+
+  /**
+   * Returns an executor that runs each task in a new virtual thread, like
+   * Java 21's {@code Executors.newVirtualThreadPerTaskExecutor()}.
+   *
+   * @throws UnsupportedOperationException if this JVM has no virtual
+   *     threads
+   */
+  public synchronized ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (!supportsVirtualThreads()) {
+      throw new UnsupportedOperationException(
+          "virtual threads need Java 21 or later");
+    }
+    Pool pool = newPool("virtual", VirtualThreads.factory());
+    return register(pool, VirtualThreads.newThreadPerTaskExecutor(pool));
+  }
+
+  /**
+   * Shuts {@code executor}, which was created some other way, down along
+   * with the others. Since its threads are not known, only whether it
+   * terminated is reported.
+   */
+  public synchronized <E extends ExecutorService> E track(E executor) {
+    return register(newPool("tracked", null), executor);
+  }
+
+  /** Returns how many threads of its executors this is keeping track of. */
+  synchronized int trackedThreadCount() {
+    int result = 0;
+    for (Pool pool : pools) {
+      if (pool.threads != null) {
+        result += pool.threads.size();
+      }
+    }
+    return result;
+  }
+
+  private Pool newPool(String kind, ThreadFactory factory) {
+    return new Pool(name + "-" + kind + "-" + (pools.size() + 1), factory);
+  }
+
+  /**
+   * Adds {@code pool}, whose executor is {@code executor}, to those to shut
+   * down. This is only done once the executor was successfully created.
+   */
+  private <E extends ExecutorService> E register(Pool pool, E executor) {
+    pool.executor = executor;
+    pools.add(pool);
+    return executor;
+  }
+
+  /**
+   * Don't call this method directly -- it fullfils the {@link TearDown}
+   * interface.
+   *
+   * @throws IllegalStateException if some tasks were still running after
+   *     the grace period
+   */
+  public void tearDown() throws InterruptedException {
+    List<Pool> toShutDown;
+    synchronized (this) {
+      toShutDown = new ArrayList<Pool>(pools);
+      pools.clear();
+    }
+    for (Pool pool : toShutDown) {
+      pool.executor.shutdown();
+    }
+    List<Pool> stuck;
+    try {
+      stuck = awaitTermination(toShutDown, gracePeriod);
+    } catch (InterruptedException e) {
+      // Don't leave the tasks running, since no one will wait for them
+      for (Pool pool : toShutDown) {
+        pool.executor.shutdownNow();
+      }
+      throw e;
+    }
+    if (stuck.isEmpty()) {
+      return;
+    }
+    StringBuilder message = new StringBuilder().append(stuck.size())
+        .append(" executors did not finish within ").append(gracePeriod)
+        .append(':');
+    for (Pool pool : stuck) {
+      message.append("\n  ").append(pool.name);
+      for (Thread thread : pool.liveThreads()) {
+        appendThread(message, thread, "running");
+      }
+      pool.executor.shutdownNow();
+    }
+    long deadline = System.nanoTime() + INTERRUPT_TIMEOUT.toNanos();
+    awaitTermination(stuck, INTERRUPT_TIMEOUT);
+    for (Pool pool : stuck) {
+      for (Thread thread : pool.liveThreads()) {
+        thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(
+            deadline - System.nanoTime())));
+        if (thread.isAlive()) {
+          message.append("\n  leaked thread \"").append(thread.getName())
+              .append("\" (").append(thread.getState())
+              .append("), which ignored being interrupted");
+        }
+      }
+      if (pool.threads == null && !pool.executor.isTerminated()) {
+        message.append("\n  leaked ").append(pool.name)
+            .append(", which ignored being interrupted");
+      }
+    }
+    throw new IllegalStateException(message.toString());
+  }
+
+  /**
+   * Waits up to {@code timeout}, in all, for the executors of {@code pools}
+   * to terminate, returning those that did not.
+   */
+  private static List<Pool> awaitTermination(List<Pool> pools,
+      Duration timeout) throws InterruptedException {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    List<Pool> result = new ArrayList<Pool>();
+    for (Pool pool : pools) {
+      if (!pool.executor.awaitTermination(
+          Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+        result.add(pool);
+      }
+    }
+    return result;
+  }
+
+  private static void appendThread(StringBuilder message, Thread thread,
+      String what) {
+    message.append("\n    ").append(what).append(" in thread \"")
+        .append(thread.getName()).append("\" (").append(thread.getState())
+        .append(')');
+    for (StackTraceElement element : thread.getStackTrace()) {
+      message.append("\n      at ").append(element);
+    }
+  }
+
+  /** An executor, and the threads it created. */
+  private static final class Pool implements ThreadFactory {
+    final String name;
+    final ThreadFactory factory;
+    /**
+     * The threads created so far, but for those known to have terminated,
+     * or null if they aren't known.
+     */
+    final List<Thread> threads;
+    /** How many threads were created, guarded by {@link #threads}. */
+    int created;
+    ExecutorService executor;
+
+    Pool(String name, ThreadFactory factory) {
+      this.name = name;
+      this.factory = factory;
+      this.threads = (factory == null)
+          ? null : Collections.synchronizedList(new ArrayList<Thread>());
+    }
+
+    public Thread newThread(Runnable task) {
+      Thread result = factory.newThread(task);
+      if (result != null) {
+        synchronized (threads) {
+          // Not those that aren't alive yet, since they aren't started
+          for (Iterator<Thread> i = threads.iterator(); i.hasNext(); ) {
+            if (i.next().getState() == Thread.State.TERMINATED) {
+              i.remove();
+            }
+          }
+          result.setName(name + "-thread-" + ++created);
+          threads.add(result);
+        }
+      }
+      return result;
+    }
+
+    List<Thread> liveThreads() {
+      List<Thread> result = new ArrayList<Thread>();
+      if (threads != null) {
+        synchronized (threads) {
+          for (Thread thread : threads) {
+            if (thread.isAlive()) {
+              result.add(thread);
+            }
+          }
+        }
+      }
+      return result;
+    }
+  }
+
+  /** The Java 21 virtual thread API, looked up reflectively. */
+  private static final class VirtualThreads {
+    /** {@code Thread.ofVirtual()}, or null if there are no virtual threads. */
+    static final Method OF_VIRTUAL;
+    static final Method FACTORY;
+    static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+      Method ofVirtual = null;
+      Method factory = null;
+      Method newThreadPerTaskExecutor = null;
+      try {
+        ofVirtual = Thread.class.getMethod("ofVirtual");
+        factory = Class.forName("java.lang.Thread$Builder")
+            .getMethod("factory");
+        newThreadPerTaskExecutor = Executors.class.getMethod(
+            "newThreadPerTaskExecutor", ThreadFactory.class);
+        // Fails where virtual threads are still a preview feature
+        ofVirtual.invoke(null);
+      } catch (ReflectiveOperationException e) {
+        ofVirtual = null;
+      }
+      OF_VIRTUAL = ofVirtual;
+      FACTORY = factory;
+      NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    static ThreadFactory factory() {
+      return (ThreadFactory) invoke(FACTORY, invoke(OF_VIRTUAL, null));
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(ThreadFactory factory) {
+      return (ExecutorService) invoke(NEW_THREAD_PER_TASK_EXECUTOR, null,
+          factory);
+    }
+
+    private static Object invoke(Method method, Object target,
+        Object... args) {
+      try {
+        return method.invoke(target, args);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      } catch (InvocationTargetException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Collects exceptions, grouping the ones that look alike: same type, same
+ * message once numbers are masked out, and same top
+ * {@value #SIGNATURE_FRAMES} stack frames (not counting those of assertion
+ * libraries). Numbers can be left in, so that only identical messages are
+ * grouped, when they tell failures apart. Only the first exception of each
+ * group, its exemplar, is
+ * kept, along with how many times the group occurred; and only up to
+ * {@code maxExemplars} groups are kept, beyond which exceptions are merely
+ * counted.
+ *
+ * <p>This way, when a shared resource dies and hundreds of {@link TearDown}s
+ * fail the same way, the memory held is bounded by the number of distinct
+ * failures, not by the number of failures.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+final class FailureGroups {
+
+  /**
+   * The system property that sets the default maximum number of distinct
+   * exemplars kept.
+   */
+  static final String MAX_EXEMPLARS_PROPERTY =
+      "com.google.common.testing.FailureGroups.maxExemplars";
+
+  static final int DEFAULT_MAX_EXEMPLARS = 100;
+
+  /** How many of the top stack frames are part of a signature. */
+  static final int SIGNATURE_FRAMES = 3;
+
+  private static final String[] ASSERTION_CLASS_PREFIXES = {
+      "junit.framework.Assert",
+      "org.junit.Assert",
+      "com.google.common.testing.junit3.JUnitAsserts",
+      "com.google.common.testing.junit4.JUnitAsserts",
+  };
+
+  private static final Pattern NUMBERS =
+      Pattern.compile("0x[0-9a-fA-F]+|\\d+");
+
+  private final int maxExemplars;
+  private final boolean maskNumbers;
+  private final Map<String, Group> groups = new LinkedHashMap<String, Group>();
+  private int total;
+  private int dropped;
+
+  FailureGroups() {
+    this(true);
+  }
+
+  /**
+   * Creates groups of up to the default maximum number of exemplars, which
+   * only ignore the numbers in messages if {@code maskNumbers}.
+   */
+  FailureGroups(boolean maskNumbers) {
+    this(Integer.getInteger(MAX_EXEMPLARS_PROPERTY, DEFAULT_MAX_EXEMPLARS),
+        maskNumbers);
+  }
+
+  FailureGroups(int maxExemplars) {
+    this(maxExemplars, true);
+  }
+
+  FailureGroups(int maxExemplars, boolean maskNumbers) {
+    if (maxExemplars < 1) {
+      throw new IllegalArgumentException("maxExemplars must be positive");
+    }
+    this.maxExemplars = maxExemplars;
+    this.maskNumbers = maskNumbers;
+  }
+
+  /**
+   * Counts {@code t}, keeping it if it is the first of its group.
+   */
+  void add(Throwable t) {
+    add(t, 1);
+  }
+
+  /**
+   * Adds the exceptions grouped by {@code e}, each counted as many times as
+   * it occurred. Those that {@code e} only counted are counted as not kept
+   * here either.
+   */
+  void addAll(ClusterException e) {
+    Iterator<Integer> counts = e.occurrences.iterator();
+    int listed = 0;
+    for (Throwable t : e.exceptions) {
+      int count = counts.next();
+      add(t, count);
+      listed += count;
+    }
+    total += e.totalOccurrences - listed;
+    dropped += e.totalOccurrences - listed;
+  }
+
+  /** Counts {@code t} {@code count} times, keeping it if it is new. */
+  private void add(Throwable t, int count) {
+    total += count;
+    String signature = signature(t, maskNumbers);
+    Group group = groups.get(signature);
+    if (group != null) {
+      group.count += count;
+    } else if (groups.size() < maxExemplars) {
+      groups.put(signature, new Group(t, count));
+    } else {
+      dropped += count;
+    }
+  }
+
+  boolean isEmpty() {
+    return total == 0;
+  }
+
+  /** Returns how many exceptions were added, kept or not. */
+  int total() {
+    return total;
+  }
+
+  /**
+   * Returns how many exceptions were not kept because {@code maxExemplars}
+   * groups were already being kept.
+   */
+  int dropped() {
+    return dropped;
+  }
+
+  /** Returns the first exception of each group, in the order they came. */
+  List<Throwable> exemplars() {
+    List<Throwable> result = new ArrayList<Throwable>(groups.size());
+    for (Group group : groups.values()) {
+      result.add(group.exemplar);
+    }
+    return result;
+  }
+
+  /** Returns the number of occurrences of each of {@link #exemplars()}. */
+  List<Integer> occurrences() {
+    List<Integer> result = new ArrayList<Integer>(groups.size());
+    for (Group group : groups.values()) {
+      result.add(group.count);
+    }
+    return result;
+  }
+
+  /**
+   * Returns a string that is the same for exceptions that most likely have
+   * the same root cause: their type, their message with all numbers masked
+   * out (so e.g. ports and ids don't matter) and their top
+   * {@value #SIGNATURE_FRAMES} stack frames outside of assertion libraries.
+   */
+  static String signature(Throwable t) {
+    return signature(t, true);
+  }
+
+  private static String signature(Throwable t, boolean maskNumbers) {
+    StringBuilder result = new StringBuilder(t.getClass().getName());
+    String message = t.getMessage();
+    if (message != null) {
+      result.append(": ").append(maskNumbers
+          ? NUMBERS.matcher(message).replaceAll("#") : message);
+    }
+    StackTraceElement[] frames = t.getStackTrace();
+    int first = 0;
+    while (first < frames.length && isAssertionFrame(frames[first])) {
+      first++;
+    }
+    int end = Math.min(first + SIGNATURE_FRAMES, frames.length);
+    for (int i = first; i < end; i++) {
+      result.append("\n\tat ").append(frames[i]);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Whether {@code frame} belongs to an assertion library, rather than to
+   * the code that called it. Such frames are the same for all failures of
+   * a kind of assertion, and so say nothing about where a failure happened.
+   */
+  private static boolean isAssertionFrame(StackTraceElement frame) {
+    String className = frame.getClassName();
+    for (String prefix : ASSERTION_CLASS_PREFIXES) {
+      if (className.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static final class Group {
+    final Throwable exemplar;
+    int count;
+
+    Group(Throwable exemplar, int count) {
+      this.exemplar = exemplar;
+      this.count = count;
+    }
+  }
+}
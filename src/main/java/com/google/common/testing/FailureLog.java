@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs exceptions that are not allowed to fail anything, such as those of a
+ * {@link SloppyTearDown}, without flooding the log when the same failure
+ * happens over and over -- e.g. because a fixture that every test uses is
+ * broken.
+ *
+ * <p>Exceptions that look alike, as told by {@link FailureGroups#signature},
+ * are logged in full, stack trace and all, only the first time. Repeats are
+ * only counted, and noted in a single line when their count reaches a power
+ * of two. When the JVM exits, how many times each failure happened is
+ * logged. Beyond {@link FailureGroups#DEFAULT_MAX_EXEMPLARS} distinct
+ * failures, new ones are only counted, and noted in a single line.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+final class FailureLog {
+
+  private final Logger logger;
+  private final Level level;
+  private final String description;
+  private final int maxSignatures;
+  private final boolean summarizeAtExit;
+
+  /** How many times each failure happened, in the order they first did. */
+  private final Map<String, long[]> counts = new LinkedHashMap<String, long[]>();
+  private long untracked;
+  private boolean summaryScheduled;
+
+  /**
+   * Creates a log of failures described as {@code description}, e.g.
+   * {@code "exception thrown during tearDown"}, to {@code logger}.
+   */
+  FailureLog(Logger logger, Level level, String description) {
+    this(logger, level, description, FailureGroups.DEFAULT_MAX_EXEMPLARS,
+        true);
+  }
+
+  FailureLog(Logger logger, Level level, String description,
+      int maxSignatures, boolean summarizeAtExit) {
+    this.logger = logger;
+    this.level = level;
+    this.description = description;
+    this.maxSignatures = maxSignatures;
+    this.summarizeAtExit = summarizeAtExit;
+  }
+
+  /** Logs {@code t}, in full if it is the first of its kind. */
+  void log(Throwable t) {
+    String signature = FailureGroups.signature(t);
+    long count;
+    synchronized (this) {
+      scheduleSummary();
+      long[] seen = counts.get(signature);
+      if (seen != null) {
+        count = ++seen[0];
+      } else if (counts.size() < maxSignatures) {
+        counts.put(signature, new long[] {1});
+        count = 1;
+      } else {
+        untracked++;
+        count = 0;
+      }
+    }
+    if (!logger.isLoggable(level)) {
+      return;
+    }
+    if (count == 1) {
+      logger.log(level, description + ": " + t.getMessage(), t);
+    } else if (count == 0) {
+      logger.log(level, "{0} (too many distinct ones to log in full): {1}",
+          new Object[] {description, t});
+    } else if (Long.bitCount(count) == 1) {
+      logger.log(level,
+          "{0} {1} times so far, logged in full the first time: {2}",
+          new Object[] {description, Long.toString(count), t});
+    }
+  }
+
+  /**
+   * Returns how many times each failure happened, keyed by signature, in
+   * the order they first did.
+   */
+  synchronized Map<String, Long> getCounts() {
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+      result.put(entry.getKey(), entry.getValue()[0]);
+    }
+    return result;
+  }
+
+  /**
+   * Forgets all failures logged so far, so that the next one of each kind
+   * is logged in full again.
+   */
+  synchronized void reset() {
+    counts.clear();
+    untracked = 0;
+  }
+
+  /**
+   * Returns a summary of how many times each failure happened, or
+   * {@code null} if none did.
+   */
+  synchronized String summary() {
+    if (counts.isEmpty()) {
+      return null;
+    }
+    long total = untracked;
+    for (long[] count : counts.values()) {
+      total += count[0];
+    }
+    StringBuilder result = new StringBuilder().append(total).append(' ')
+        .append(description).append(", ").append(counts.size())
+        .append(" distinct:");
+    for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+      String signature = entry.getKey();
+      int firstLine = signature.indexOf('\n');
+      result.append("\n  ").append(entry.getValue()[0]).append(" x ")
+          .append(firstLine < 0 ? signature : signature.substring(0, firstLine));
+    }
+    if (untracked > 0) {
+      result.append("\n  ").append(untracked).append(" x others");
+    }
+    return result.toString();
+  }
+
+  private void scheduleSummary() {
+    if (summaryScheduled || !summarizeAtExit) {
+      return;
+    }
+    summaryScheduled = true;
+    Runtime.getRuntime().addShutdownHook(
+        new Thread(description + " summary") {
+          @Override public void run() {
+            String summary = summary();
+            if (summary != null) {
+              logger.log(level, summary);
+            }
+          }
+        });
+  }
+}
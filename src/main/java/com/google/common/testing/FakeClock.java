@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Clock} whose time only changes when a test says so, so that code
+ * waiting for timeouts, retries or expiries can be tested without really
+ * waiting. Pass it to the code under test in place of
+ * {@link Clock#systemUTC()}, and its {@link #nanoTime()} in place of
+ * {@link System#nanoTime()}.
+ *
+ * <p>To also run scheduled tasks as time passes, advance it through a
+ * {@link FakeScheduledExecutorService}.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class FakeClock extends Clock {
+
+  /** When a {@link FakeClock} starts, unless told otherwise. */
+  public static final Instant DEFAULT_START =
+      Instant.parse("2010-01-01T00:00:00Z");
+
+  /** Nanoseconds since the epoch, shared by all zones of this clock. */
+  private final AtomicLong nanos;
+  private final ZoneId zone;
+
+  /**
+   * Creates a clock, in UTC, that starts at {@link #DEFAULT_START}.
+   */
+  public FakeClock() {
+    this(DEFAULT_START);
+  }
+
+  /**
+   * Creates a clock, in UTC, that starts at {@code start}.
+   */
+  public FakeClock(Instant start) {
+    this(new AtomicLong(
+        TimeUnit.SECONDS.toNanos(start.getEpochSecond()) + start.getNano()),
+        ZoneOffset.UTC);
+  }
+
+  private FakeClock(AtomicLong nanos, ZoneId zone) {
+    this.nanos = nanos;
+    this.zone = zone;
+  }
+
+  @Override public ZoneId getZone() {
+    return zone;
+  }
+
+  /**
+   * Returns a view of this clock in {@code zone}, which moves along with it.
+   */
+  @Override public FakeClock withZone(ZoneId zone) {
+    return new FakeClock(nanos, zone);
+  }
+
+  @Override public Instant instant() {
+    long now = nanos.get();
+    return Instant.ofEpochSecond(0, now);
+  }
+
+  @Override public long millis() {
+    return TimeUnit.NANOSECONDS.toMillis(nanos.get());
+  }
+
+  /**
+   * Returns the current time in nanoseconds, like {@link System#nanoTime()}
+   * but counted from the epoch.
+   */
+  public long nanoTime() {
+    return nanos.get();
+  }
+
+  /**
+   * Moves this clock forward by {@code amount} {@code unit}s.
+   *
+   * @throws IllegalArgumentException if {@code amount} is negative
+   */
+  public void advance(long amount, TimeUnit unit) {
+    if (amount < 0) {
+      throw new IllegalArgumentException(
+          "time can't go backwards: " + amount + " " + unit);
+    }
+    nanos.addAndGet(unit.toNanos(amount));
+  }
+
+  /**
+   * Moves this clock forward by {@code duration}.
+   *
+   * @throws IllegalArgumentException if {@code duration} is negative
+   */
+  public void advance(Duration duration) {
+    advance(duration.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Moves this clock forward to {@code nanoTime}, if it is not already
+   * there or past it.
+   */
+  void advanceTo(long nanoTime) {
+    long now;
+    do {
+      now = nanos.get();
+    } while (now < nanoTime && !nanos.compareAndSet(now, nanoTime));
+  }
+
+  @Override public String toString() {
+    return "FakeClock[" + instant() + "," + zone + "]";
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledExecutorService} that runs tasks on the test's own
+ * thread, as a {@link FakeClock} is {@linkplain #advance advanced} past the
+ * time they are due. A test can thus check what happens after a timeout,
+ * retry or expiry of minutes without waiting at all:
+ *
+ * <pre>
+ * FakeScheduledExecutorService scheduler =
+ *     FakeScheduledExecutorService.create(this, new FakeClock());
+ * Cache cache = new Cache(scheduler.getClock(), scheduler);
+ * cache.put("key", "value", 10, MINUTES);
+ * scheduler.advance(10, MINUTES);
+ * assertNull(cache.get("key"));
+ * </pre>
+ *
+ * <p>Tasks submitted without a delay are not run right away either, but
+ * when the scheduler is next advanced (possibly by zero, with
+ * {@link #runDueTasks()}). Tasks run in the order they are due, and the
+ * clock reads the time each was due while it runs. Since nothing runs
+ * unless the test advances the scheduler, methods that would wait for tasks
+ * to run, such as {@link #invokeAll}, are not supported.
+ *
+ * <p>Following {@link java.util.concurrent.ScheduledThreadPoolExecutor},
+ * {@link #shutdown()} cancels periodic tasks but leaves delayed ones to run.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class FakeScheduledExecutorService extends AbstractExecutorService
+    implements ScheduledExecutorService {
+
+  private final FakeClock clock;
+  private final PriorityQueue<Task<?>> queue = new PriorityQueue<Task<?>>();
+  private long sequence;
+  private boolean shutdown;
+
+  /**
+   * Creates a scheduler whose tasks run as {@code clock} is advanced through
+   * it.
+   */
+  public FakeScheduledExecutorService(FakeClock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Creates a scheduler like {@link #FakeScheduledExecutorService(FakeClock)},
+   * and registers a {@link TearDown} with {@code accepter} that fails if any
+   * task is still pending at tear-down: a test that leaves tasks pending most
+   * likely didn't advance the clock as far as it meant to, or didn't check
+   * what those tasks would do. Shut the scheduler down to cancel periodic
+   * tasks, or {@link #shutdownNow()} to cancel all of them.
+   *
+   * <p>Note that JUnit 3's
+   * {@link com.google.common.testing.junit3.TearDownTestCase} only logs
+   * exceptions thrown by its {@link TearDown}s.
+   */
+  public static FakeScheduledExecutorService create(
+      TearDownAccepter accepter, FakeClock clock) {
+    final FakeScheduledExecutorService result =
+        new FakeScheduledExecutorService(clock);
+    accepter.addTearDown(new TearDown() {
+      public void tearDown() {
+        result.checkNoPendingTasks();
+      }
+    });
+    return result;
+  }
+
+  /** Returns the clock this scheduler advances. */
+  public FakeClock getClock() {
+    return clock;
+  }
+
+  /**
+   * Moves the clock forward by {@code amount} {@code unit}s, running, in
+   * order, all the tasks that become due meanwhile -- including those that
+   * these tasks schedule, and the repetitions of periodic tasks.
+   *
+   * @return how many tasks ran
+   */
+  public int advance(long amount, TimeUnit unit) {
+    if (amount < 0) {
+      throw new IllegalArgumentException(
+          "time can't go backwards: " + amount + " " + unit);
+    }
+    long target = saturatedAdd(clock.nanoTime(), unit.toNanos(amount));
+    int ran = 0;
+    while (true) {
+      Task<?> task;
+      synchronized (this) {
+        task = queue.peek();
+        if (task == null || task.time > target) {
+          break;
+        }
+        queue.poll();
+      }
+      clock.advanceTo(task.time);
+      task.run();
+      ran++;
+    }
+    clock.advanceTo(target);
+    return ran;
+  }
+
+  /**
+   * Moves the clock forward by {@code duration}, running the tasks that
+   * become due meanwhile.
+   *
+   * @return how many tasks ran
+   * @see #advance(long, TimeUnit)
+   */
+  public int advance(Duration duration) {
+    return advance(duration.toNanos(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Runs the tasks that are due now, without moving the clock.
+   *
+   * @return how many tasks ran
+   */
+  public int runDueTasks() {
+    return advance(0, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the tasks that have neither run (or, if periodic, been
+   * cancelled) yet, in the order they are due.
+   */
+  public synchronized List<ScheduledFuture<?>> getPendingTasks() {
+    List<Task<?>> tasks = new ArrayList<Task<?>>(queue);
+    Collections.sort(tasks);
+    return new ArrayList<ScheduledFuture<?>>(tasks);
+  }
+
+  /**
+   * Throws an {@link AssertionError} listing the pending tasks, if there
+   * are any.
+   */
+  public synchronized void checkNoPendingTasks() {
+    if (queue.isEmpty()) {
+      return;
+    }
+    StringBuilder message = new StringBuilder()
+        .append(queue.size()).append(" tasks still pending at ")
+        .append(clock.instant()).append(':');
+    for (ScheduledFuture<?> task : getPendingTasks()) {
+      message.append("\n  ").append(task);
+    }
+    throw new AssertionError(message.toString());
+  }
+
+  public void execute(Runnable command) {
+    schedule(command, 0, TimeUnit.NANOSECONDS);
+  }
+
+  public ScheduledFuture<?> schedule(
+      Runnable command, long delay, TimeUnit unit) {
+    return enqueue(new Task<Void>(command,
+        Executors.<Void>callable(command, null), delay(delay, unit), 0));
+  }
+
+  public <V> ScheduledFuture<V> schedule(
+      Callable<V> callable, long delay, TimeUnit unit) {
+    return enqueue(new Task<V>(callable, callable, delay(delay, unit), 0));
+  }
+
+  public ScheduledFuture<?> scheduleAtFixedRate(Runnable command,
+      long initialDelay, long period, TimeUnit unit) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("period must be positive: " + period);
+    }
+    return enqueue(new Task<Void>(command,
+        Executors.<Void>callable(command, null), delay(initialDelay, unit),
+        unit.toNanos(period)));
+  }
+
+  public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command,
+      long initialDelay, long delay, TimeUnit unit) {
+    if (delay <= 0) {
+      throw new IllegalArgumentException("delay must be positive: " + delay);
+    }
+    return enqueue(new Task<Void>(command,
+        Executors.<Void>callable(command, null), delay(initialDelay, unit),
+        -unit.toNanos(delay)));
+  }
+
+  public synchronized void shutdown() {
+    shutdown = true;
+    List<Task<?>> periodic = new ArrayList<Task<?>>();
+    for (Task<?> task : queue) {
+      if (task.isPeriodic()) {
+        periodic.add(task);
+      }
+    }
+    for (Task<?> task : periodic) {
+      task.cancel(false);
+    }
+  }
+
+  public synchronized List<Runnable> shutdownNow() {
+    shutdown = true;
+    List<Runnable> result = new ArrayList<Runnable>(queue);
+    for (Runnable task : result) {
+      ((Task<?>) task).cancel(false);
+    }
+    return result;
+  }
+
+  public synchronized boolean isShutdown() {
+    return shutdown;
+  }
+
+  public synchronized boolean isTerminated() {
+    return shutdown && queue.isEmpty();
+  }
+
+  /**
+   * Returns whether this scheduler is terminated, right away: waiting would
+   * be pointless, since tasks only run when the test advances the clock.
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) {
+    return isTerminated();
+  }
+
+  /**
+   * Not supported, since it would wait forever: tasks only run when the test
+   * advances the clock.
+   */
+  @Override public <T> List<Future<T>> invokeAll(
+      Collection<? extends Callable<T>> tasks) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Not supported, since it would wait forever: tasks only run when the test
+   * advances the clock.
+   */
+  @Override public <T> List<Future<T>> invokeAll(
+      Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Not supported, since it would wait forever: tasks only run when the test
+   * advances the clock.
+   */
+  @Override public <T> T invokeAny(Collection<? extends Callable<T>> tasks) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Not supported, since it would wait forever: tasks only run when the test
+   * advances the clock.
+   */
+  @Override public <T> T invokeAny(Collection<? extends Callable<T>> tasks,
+      long timeout, TimeUnit unit) {
+    throw new UnsupportedOperationException();
+  }
+
+  private long delay(long delay, TimeUnit unit) {
+    return saturatedAdd(clock.nanoTime(), Math.max(0, unit.toNanos(delay)));
+  }
+
+  /**
+   * Returns {@code time + nanos}, or {@link Long#MAX_VALUE} if that
+   * overflows, so that a task scheduled for "never" is never due.
+   */
+  private static long saturatedAdd(long time, long nanos) {
+    long result = time + nanos;
+    return (nanos > 0 && result < time) ? Long.MAX_VALUE : result;
+  }
+
+  private synchronized <V> Task<V> enqueue(Task<V> task) {
+    if (shutdown) {
+      throw new RejectedExecutionException("scheduler was shut down");
+    }
+    queue.add(task);
+    return task;
+  }
+
+  private synchronized boolean reenqueue(Task<?> task) {
+    if (shutdown) {
+      return false;
+    }
+    queue.add(task);
+    return true;
+  }
+
+  private synchronized void dequeue(Task<?> task) {
+    queue.remove(task);
+  }
+
+  private final class Task<V> extends FutureTask<V>
+      implements RunnableScheduledFuture<V> {
+
+    private final Object command;
+    private final long id;
+    /** Zero if one-shot, positive if at a fixed rate, negative if with a fixed delay. */
+    private final long period;
+    private volatile long time;
+
+    Task(Object command, Callable<V> callable, long time, long period) {
+      super(callable);
+      this.command = command;
+      this.time = time;
+      this.period = period;
+      synchronized (FakeScheduledExecutorService.this) {
+        this.id = sequence++;
+      }
+    }
+
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(time - clock.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    public int compareTo(Delayed other) {
+      if (other == this) {
+        return 0;
+      }
+      if (other instanceof Task) {
+        Task<?> that = (Task<?>) other;
+        if (time != that.time) {
+          return (time < that.time) ? -1 : 1;
+        }
+        return (id < that.id) ? -1 : 1;
+      }
+      long difference =
+          getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+      return (difference < 0) ? -1 : (difference > 0) ? 1 : 0;
+    }
+
+    public boolean isPeriodic() {
+      return period != 0;
+    }
+
+    @Override public void run() {
+      if (!isPeriodic()) {
+        super.run();
+      } else if (runAndReset()) {
+        time = (period > 0)
+            ? saturatedAdd(time, period)
+            : saturatedAdd(clock.nanoTime(), -period);
+        if (!reenqueue(this)) {
+          super.cancel(false);
+        }
+      }
+    }
+
+    @Override public boolean cancel(boolean mayInterruptIfRunning) {
+      boolean cancelled = super.cancel(mayInterruptIfRunning);
+      if (cancelled) {
+        dequeue(this);
+      }
+      return cancelled;
+    }
+
+    @Override public String toString() {
+      long delay = time - clock.nanoTime();
+      return ((delay >= 0)
+          ? "due in " + CostMeasurements.formatNanos(delay)
+          : "overdue by " + CostMeasurements.formatNanos(-delay))
+          + (isPeriodic() ? ", periodic: " : ": ") + command;
+    }
+  }
+}
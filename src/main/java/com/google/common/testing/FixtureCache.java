@@ -0,0 +1,369 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A cache of fixtures shared by tests, so that tests that need the same
+ * expensive fixture -- e.g. parameterized tests whose parameters share an
+ * input dataset -- build it once rather than each time:
+ *
+ * <pre>
+ * {@code @Test}
+ * public void search() {
+ *   Index index = FixtureCache.getDefault().get(this,
+ *       Arrays.asList("index", dataset), new FixtureCache.Loader&lt;Index&gt;() {
+ *         public Index load(TearDownAccepter accepter) throws Exception {
+ *           final Index index = Index.build(dataset);
+ *           accepter.addTearDown(new TearDown() {
+ *             public void tearDown() {
+ *               index.delete();
+ *             }
+ *           });
+ *           return index;
+ *         }
+ *       });
+ *   ...
+ * }
+ * </pre>
+ *
+ * <p>Fixtures are keyed by any object with suitable {@code equals} and
+ * {@code hashCode}; since the {@linkplain #getDefault default cache} is
+ * shared by the whole JVM, keys should tell apart different kinds of
+ * fixtures, not just their inputs. The {@link Loader} registers what undoes
+ * the fixture with the accepter it is given, and that runs when the fixture
+ * is evicted, when the cache is {@linkplain #clear cleared}, or, for the
+ * default cache, when the JVM exits. Exceptions thrown meanwhile are logged,
+ * since no test is there to fail.
+ *
+ * <p>When the cache holds more fixtures, or more of their estimated
+ * {@linkplain Weigher weight}, than its bounds allow, it evicts the least
+ * recently ({@link Eviction#LRU}) or least often ({@link Eviction#LFU}) used
+ * fixture. A fixture is never evicted while a test that got it is still
+ * running -- that is, until the {@link TearDownAccepter} that test passed to
+ * {@link #get} tears down -- so the bounds can be exceeded while many tests
+ * run at once. Picking a fixture to evict takes time linear in the number
+ * of fixtures, which is fine for the handful of expensive ones this is for.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class FixtureCache {
+
+  public static final String MAX_ENTRIES_PROPERTY =
+      "com.google.common.testing.FixtureCache.maxEntries";
+
+  public static final String MAX_WEIGHT_PROPERTY =
+      "com.google.common.testing.FixtureCache.maxWeight";
+
+  public static final String EVICTION_PROPERTY =
+      "com.google.common.testing.FixtureCache.eviction";
+
+  public static final int DEFAULT_MAX_ENTRIES = 16;
+
+  /** Which fixture to evict when the cache is full. */
+  public enum Eviction {
+    /** The least recently used fixture. */
+    LRU,
+    /**
+     * The least often used fixture or, among those used equally often, the
+     * least recently used one.
+     */
+    LFU
+  }
+
+  /** Builds a fixture. */
+  public interface Loader<V> {
+    /**
+     * Builds the fixture, registering what undoes it with
+     * {@code accepter}.
+     */
+    V load(TearDownAccepter accepter) throws Exception;
+  }
+
+  /** Estimates how much of the cache's bound on weight a fixture uses. */
+  public interface Weigher<V> {
+    long weigh(V value);
+  }
+
+  private static final Logger logger =
+      Logger.getLogger(FixtureCache.class.getName());
+
+  private static FixtureCache defaultCache;
+
+  private final int maxEntries;
+  private final long maxWeight;
+  private final Eviction eviction;
+
+  /** In access order, least recently used first. */
+  private final LinkedHashMap<Object, Entry> entries =
+      new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+  private long weight;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long loadFailures;
+
+  /**
+   * Creates a cache that holds up to {@code maxEntries} fixtures weighing up
+   * to {@code maxWeight} together.
+   */
+  public FixtureCache(int maxEntries, long maxWeight, Eviction eviction) {
+    if (maxEntries < 1 || maxWeight < 0) {
+      throw new IllegalArgumentException(
+          "invalid bounds: " + maxEntries + " entries, " + maxWeight + " weight");
+    }
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.eviction = eviction;
+  }
+
+  /**
+   * Returns the JVM-wide cache, bounded by the {@value #MAX_ENTRIES_PROPERTY}
+   * (by default {@value #DEFAULT_MAX_ENTRIES}) and
+   * {@value #MAX_WEIGHT_PROPERTY} (by default unbounded) system properties,
+   * and evicting according to the {@value #EVICTION_PROPERTY} one (by
+   * default {@code LRU}). It is cleared when the JVM exits.
+   */
+  public static synchronized FixtureCache getDefault() {
+    if (defaultCache == null) {
+      defaultCache = new FixtureCache(
+          Integer.getInteger(MAX_ENTRIES_PROPERTY, DEFAULT_MAX_ENTRIES),
+          Long.getLong(MAX_WEIGHT_PROPERTY, Long.MAX_VALUE),
+          Eviction.valueOf(System.getProperty(EVICTION_PROPERTY, "LRU")));
+      final FixtureCache cache = defaultCache;
+      Runtime.getRuntime().addShutdownHook(new Thread("FixtureCache clear") {
+        @Override public void run() {
+          cache.clear();
+        }
+      });
+    }
+    return defaultCache;
+  }
+
+  /**
+   * Variant of {@link #get(TearDownAccepter,Object,Loader,Weigher)} for
+   * fixtures that weigh nothing.
+   */
+  public <V> V get(TearDownAccepter accepter, Object key, Loader<V> loader) {
+    return get(accepter, key, loader, null);
+  }
+
+  /**
+   * Returns the fixture cached under {@code key}, first building it with
+   * {@code loader} and weighing it with {@code weigher} if it isn't cached.
+   * The fixture is not evicted until {@code accepter} tears down. It is
+   * built at most once even if several threads ask for it at once; if
+   * building it fails, what the loader registered so far is torn down, and
+   * the next call tries again.
+   *
+   * @throws RuntimeException if {@code loader} threw a checked exception,
+   *     which is its cause
+   */
+  @SuppressWarnings("unchecked") // The loader of a key decides its type
+  public <V> V get(TearDownAccepter accepter, Object key, Loader<V> loader,
+      Weigher<? super V> weigher) {
+    final Entry entry;
+    synchronized (this) {
+      Entry existing = entries.get(key);
+      if (existing == null) {
+        existing = new Entry(key);
+        entries.put(key, existing);
+      }
+      entry = existing;
+      entry.pins++;
+      entry.uses++;
+    }
+    accepter.addTearDown(new TearDown() {
+      public void tearDown() {
+        boolean orphaned;
+        synchronized (FixtureCache.this) {
+          entry.pins--;
+          // Cleared while it was being built
+          orphaned = entry.pins == 0 && entry.removed;
+        }
+        if (orphaned) {
+          FixtureCache.tearDown(entry);
+        }
+        evictIfNeeded();
+      }
+    });
+    synchronized (entry) {
+      if (entry.loaded) {
+        synchronized (this) {
+          hits++;
+        }
+      } else {
+        load(entry, (Loader<Object>) loader, (Weigher<Object>) weigher);
+      }
+    }
+    evictIfNeeded();
+    return (V) entry.value;
+  }
+
+  /**
+   * Tears down and forgets all cached fixtures, even those that tests are
+   * still using.
+   */
+  public void clear() {
+    List<Entry> cleared;
+    synchronized (this) {
+      cleared = new ArrayList<Entry>(entries.values());
+      for (Entry entry : cleared) {
+        entry.removed = true;
+      }
+      entries.clear();
+      weight = 0;
+    }
+    for (Entry entry : cleared) {
+      tearDown(entry);
+    }
+  }
+
+  /** Returns how well this cache has done so far. */
+  public synchronized Stats getStats() {
+    return new Stats(hits, misses, evictions, loadFailures, entries.size(),
+        weight);
+  }
+
+  private void load(Entry entry, Loader<Object> loader, Weigher<Object> weigher) {
+    try {
+      entry.value = loader.load(entry.stack);
+      entry.weight = (weigher == null) ? 0 : weigher.weigh(entry.value);
+    } catch (Exception e) {
+      synchronized (this) {
+        loadFailures++;
+      }
+      tearDown(entry);
+      if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      }
+      throw new RuntimeException("could not build fixture " + entry.key, e);
+    }
+    synchronized (this) {
+      misses++;
+      entry.loaded = true;
+      if (!entry.removed) {
+        weight += entry.weight;
+      }
+    }
+  }
+
+  private void evictIfNeeded() {
+    List<Entry> evicted = new ArrayList<Entry>();
+    synchronized (this) {
+      while (entries.size() > maxEntries || weight > maxWeight) {
+        Entry victim = null;
+        for (Entry entry : entries.values()) {
+          if (entry.pins == 0 && (victim == null
+              || (eviction == Eviction.LFU && entry.uses < victim.uses))) {
+            victim = entry;
+            if (eviction == Eviction.LRU) {
+              break;
+            }
+          }
+        }
+        if (victim == null) {
+          break;
+        }
+        entries.remove(victim.key);
+        victim.removed = true;
+        if (victim.loaded) {
+          weight -= victim.weight;
+          evictions++;
+          evicted.add(victim);
+        }
+      }
+    }
+    for (Entry entry : evicted) {
+      tearDown(entry);
+    }
+  }
+
+  private static void tearDown(Entry entry) {
+    try {
+      entry.stack.runTearDown();
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "could not tear down fixture " + entry.key, e);
+    }
+  }
+
+  private static final class Entry {
+    final Object key;
+    final TearDownStack stack = new TearDownStack();
+    /** Guarded by the cache. */
+    int pins;
+    /** Guarded by the cache. */
+    long uses;
+    /** Guarded by the cache. */
+    boolean removed;
+    /** Written under the entry's lock, then read under the cache's. */
+    volatile boolean loaded;
+    volatile Object value;
+    long weight;
+
+    Entry(Object key) {
+      this.key = key;
+    }
+  }
+
+  /** Statistics of a {@link FixtureCache}, as of when they were taken. */
+  public static final class Stats {
+    /** How many requests found their fixture built. */
+    public final long hits;
+    /** How many requests built their fixture. */
+    public final long misses;
+    /** How many fixtures were evicted to keep within the bounds. */
+    public final long evictions;
+    /** How many times a fixture failed to build. */
+    public final long loadFailures;
+    /** How many fixtures are cached, or being built. */
+    public final int entries;
+    /** The total weight of the cached fixtures. */
+    public final long weight;
+
+    Stats(long hits, long misses, long evictions, long loadFailures,
+        int entries, long weight) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.loadFailures = loadFailures;
+      this.entries = entries;
+      this.weight = weight;
+    }
+
+    /**
+     * Returns the fraction of requests that found their fixture built, or
+     * {@code 0} if there were none.
+     */
+    public double hitRate() {
+      long requests = hits + misses;
+      return (requests == 0) ? 0 : (double) hits / requests;
+    }
+
+    @Override public String toString() {
+      return String.format("%d hits, %d misses (%.1f%% hit rate), "
+          + "%d evictions, %d load failures, %d entries weighing %d",
+          hits, misses, hitRate() * 100, evictions, loadFailures, entries,
+          weight);
+    }
+  }
+}
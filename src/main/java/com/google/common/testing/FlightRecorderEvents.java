@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.concurrent.TimeUnit;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events for the time spent in this library, so that
+ * it can be told apart from that of the code under test in, e.g., JDK
+ * Mission Control:
+ *
+ * <ul>
+ * <li>{@value #TEAR_DOWN}: each {@link TearDown} run by a
+ *     {@link TearDownStack}, with its class and, if it threw, its failure;
+ * <li>{@value #LOG_BURST}: each burst of records published to a
+ *     {@link TestLogHandler}, that is, records published less than
+ *     {@link #LOG_BURST_GAP_MILLIS} apart, with how many there were;
+ * <li>{@value #SLOW_COMPARISON}: each comparison of the regex and contents
+ *     assertions of {@link com.google.common.testing.junit3.JUnitAsserts} and
+ *     {@link com.google.common.testing.junit4.JUnitAsserts} that took longer
+ *     than 10 ms (a threshold that recording settings can change), with what
+ *     was compared. A line-by-line regex assertion is one comparison, of all
+ *     the lines it read.
+ * </ul>
+ *
+ * <p>The events are only created while a recording enables them, so they
+ * cost next to nothing otherwise. The classes of the events are only loaded
+ * if this JVM has the {@code jdk.jfr} module, so this library still runs
+ * where it doesn't.
+ *
+ * <p>This is public only so that the assertion classes can report their
+ * comparisons; tests have no use for it.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class FlightRecorderEvents {
+
+  public static final String TEAR_DOWN = "com.google.common.testing.TearDown";
+
+  public static final String LOG_BURST = "com.google.common.testing.LogBurst";
+
+  public static final String SLOW_COMPARISON =
+      "com.google.common.testing.SlowComparison";
+
+  /** How far apart records may be published and still be part of a burst. */
+  public static final long LOG_BURST_GAP_MILLIS = 10;
+
+  private static final boolean AVAILABLE = isJfrPresent();
+
+  private FlightRecorderEvents() { }
+
+  /** Returns whether this JVM can record the events. */
+  public static boolean isAvailable() {
+    return AVAILABLE;
+  }
+
+  private static boolean isJfrPresent() {
+    try {
+      Class.forName("jdk.jfr.Event");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    } catch (LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Starts timing a tear-down, returning what to pass to
+   * {@link #endTearDown}, or {@code null} if it isn't being recorded.
+   */
+  static Object beginTearDown() {
+    return AVAILABLE ? Events.beginTearDown() : null;
+  }
+
+  /**
+   * Records the tear-down started by {@code event}, if any, which ran
+   * {@code tearDown} and threw {@code failure}, or {@code null} if it didn't.
+   */
+  static void endTearDown(Object event, TearDown tearDown, Throwable failure) {
+    if (event != null) {
+      Events.endTearDown(event, tearDown, failure);
+    }
+  }
+
+  /**
+   * Starts timing a comparison, returning what to pass to
+   * {@link #endComparison}, or {@code null} if it isn't being recorded.
+   */
+  public static Object beginComparison() {
+    return AVAILABLE ? Events.beginComparison() : null;
+  }
+
+  /**
+   * Records the comparison started by {@code event}, if any, and if it was
+   * slow: a {@code kind} of comparison, e.g. {@code "regex"}, of
+   * {@code pattern}, if there is one, against {@code inputLength} characters
+   * or bytes.
+   */
+  public static void endComparison(Object event, String kind, String pattern,
+      long inputLength) {
+    if (event != null) {
+      Events.endComparison(event, kind, pattern, inputLength);
+    }
+  }
+
+  /**
+   * The bursts of records published to a log handler. Each burst is
+   * recorded when the next one starts, or when it is {@linkplain #end ended}.
+   */
+  static final class LogBursts {
+    private final String handler;
+    /** The event of the current burst, or null if there is none. */
+    private Object event;
+    private long lastPublishNanos;
+    private int records;
+
+    LogBursts(String handler) {
+      this.handler = handler;
+    }
+
+    /** Counts a record that is being published. */
+    void published() {
+      if (!AVAILABLE) {
+        return;
+      }
+      long now = System.nanoTime();
+      synchronized (this) {
+        if (event != null && now - lastPublishNanos
+            > TimeUnit.MILLISECONDS.toNanos(LOG_BURST_GAP_MILLIS)) {
+          end();
+        }
+        if (event == null) {
+          event = Events.beginLogBurst();
+          if (event == null) {
+            return;
+          }
+        }
+        records++;
+        lastPublishNanos = now;
+        Events.extendLogBurst(event);
+      }
+    }
+
+    /** Records the current burst, if any. */
+    synchronized void end() {
+      if (event != null) {
+        Events.endLogBurst(event, handler, records);
+        event = null;
+        records = 0;
+      }
+    }
+  }
+
+  /**
+   * The events themselves, which are only loaded if {@link #AVAILABLE}.
+   */
+  private static final class Events {
+
+    static Object beginTearDown() {
+      TearDownEvent event = new TearDownEvent();
+      if (!event.isEnabled()) {
+        return null;
+      }
+      event.begin();
+      return event;
+    }
+
+    static void endTearDown(Object event, TearDown tearDown,
+        Throwable failure) {
+      TearDownEvent tearDownEvent = (TearDownEvent) event;
+      tearDownEvent.end();
+      if (tearDownEvent.shouldCommit()) {
+        tearDownEvent.tearDownClass = tearDown.getClass().getName();
+        tearDownEvent.failure = (failure == null) ? null : failure.toString();
+        tearDownEvent.commit();
+      }
+    }
+
+    static Object beginComparison() {
+      ComparisonEvent event = new ComparisonEvent();
+      if (!event.isEnabled()) {
+        return null;
+      }
+      event.begin();
+      return event;
+    }
+
+    static void endComparison(Object event, String kind, String pattern,
+        long inputLength) {
+      ComparisonEvent comparison = (ComparisonEvent) event;
+      comparison.end();
+      if (comparison.shouldCommit()) {
+        comparison.kind = kind;
+        comparison.pattern = pattern;
+        comparison.inputLength = inputLength;
+        comparison.commit();
+      }
+    }
+
+    static Object beginLogBurst() {
+      LogBurstEvent event = new LogBurstEvent();
+      if (!event.isEnabled()) {
+        return null;
+      }
+      event.begin();
+      return event;
+    }
+
+    static void extendLogBurst(Object event) {
+      ((LogBurstEvent) event).end();
+    }
+
+    static void endLogBurst(Object event, String handler, int records) {
+      LogBurstEvent burst = (LogBurstEvent) event;
+      if (burst.shouldCommit()) {
+        burst.handler = handler;
+        burst.records = records;
+        burst.commit();
+      }
+    }
+  }
+
+  @Name(TEAR_DOWN)
+  @Label("Tear Down")
+  @Description("A TearDown run by a TearDownStack")
+  @Category("Test Libraries for Java")
+  static final class TearDownEvent extends Event {
+    @Label("Tear-Down Class")
+    String tearDownClass;
+
+    @Label("Failure")
+    @Description("What the tear-down threw, if anything")
+    String failure;
+  }
+
+  @Name(LOG_BURST)
+  @Label("Log Burst")
+  @Description("Records published to a TestLogHandler in a burst")
+  @Category("Test Libraries for Java")
+  static final class LogBurstEvent extends Event {
+    @Label("Handler")
+    String handler;
+
+    @Label("Records")
+    int records;
+  }
+
+  @Name(SLOW_COMPARISON)
+  @Label("Slow Comparison")
+  @Description("A slow comparison of a JUnitAsserts assertion")
+  @Category("Test Libraries for Java")
+  @Threshold("10 ms")
+  static final class ComparisonEvent extends Event {
+    @Label("Kind")
+    String kind;
+
+    @Label("Pattern")
+    String pattern;
+
+    @Label("Input Length")
+    long inputLength;
+  }
+}
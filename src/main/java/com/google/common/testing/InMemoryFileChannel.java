@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A {@link FileChannel} on a file of an {@link InMemoryFileSystem}.
+ *
+ * <p>A {@link MappedByteBuffer} can't be made out of heap memory, so
+ * {@link #map} is not supported. {@link #readOnlyView} gives the same
+ * copy-free access to the contents of the file, and is what
+ * {@link ByteContents} uses for these channels.
+ *
+ * <p>Locks are granted right away: they only exclude other processes, and
+ * no other process can see an in-memory file.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+final class InMemoryFileChannel extends FileChannel {
+
+  private static final int TRANSFER_CHUNK = 64 * 1024;
+
+  private final InMemoryFileSystem.RegularFile file;
+  private final boolean readable;
+  private final boolean writable;
+  private final boolean append;
+  private long position;
+
+  InMemoryFileChannel(InMemoryFileSystem.RegularFile file, boolean readable,
+      boolean writable, boolean append) {
+    this.file = file;
+    this.readable = readable;
+    this.writable = writable;
+    this.append = append;
+  }
+
+  /**
+   * Returns a read-only view of {@code size} bytes of the file from
+   * {@code position}: a snapshot of them as they are now, which later writes
+   * and truncations of the file don't change. The bytes are not copied
+   * here; the next write to the file copies its contents first instead.
+   */
+  ByteBuffer readOnlyView(long position, long size) throws IOException {
+    checkOpen();
+    if (!readable) {
+      throw new NonReadableChannelException();
+    }
+    return file.view(position, size);
+  }
+
+  @Override public int read(ByteBuffer dst) throws IOException {
+    checkOpen();
+    if (!readable) {
+      throw new NonReadableChannelException();
+    }
+    synchronized (file) {
+      int read = file.read(position, dst);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+  }
+
+  @Override public long read(ByteBuffer[] dsts, int offset, int length)
+      throws IOException {
+    long result = 0;
+    for (int i = offset; i < offset + length; i++) {
+      if (!dsts[i].hasRemaining()) {
+        continue;
+      }
+      int read = read(dsts[i]);
+      if (read < 0) {
+        return (result == 0) ? -1 : result;
+      }
+      result += read;
+      if (dsts[i].hasRemaining()) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  @Override public int write(ByteBuffer src) throws IOException {
+    checkOpen();
+    if (!writable) {
+      throw new NonWritableChannelException();
+    }
+    synchronized (file) {
+      if (append) {
+        position = file.size();
+      }
+      int written = file.write(position, src);
+      position += written;
+      return written;
+    }
+  }
+
+  @Override public long write(ByteBuffer[] srcs, int offset, int length)
+      throws IOException {
+    long result = 0;
+    for (int i = offset; i < offset + length; i++) {
+      result += write(srcs[i]);
+    }
+    return result;
+  }
+
+  @Override public long position() throws IOException {
+    checkOpen();
+    synchronized (file) {
+      return position;
+    }
+  }
+
+  @Override public FileChannel position(long newPosition) throws IOException {
+    checkOpen();
+    if (newPosition < 0) {
+      throw new IllegalArgumentException("negative position: " + newPosition);
+    }
+    synchronized (file) {
+      position = newPosition;
+    }
+    return this;
+  }
+
+  @Override public long size() throws IOException {
+    checkOpen();
+    return file.size();
+  }
+
+  @Override public FileChannel truncate(long size) throws IOException {
+    checkOpen();
+    if (size < 0) {
+      throw new IllegalArgumentException("negative size: " + size);
+    }
+    if (!writable) {
+      throw new NonWritableChannelException();
+    }
+    synchronized (file) {
+      file.truncate(size);
+      position = Math.min(position, size);
+    }
+    return this;
+  }
+
+  /** Does nothing, since there is no storage device to write to. */
+  @Override public void force(boolean metaData) throws IOException {
+    checkOpen();
+  }
+
+  @Override public long transferTo(
+      long position, long count, WritableByteChannel target)
+      throws IOException {
+    checkOpen();
+    if (!readable) {
+      throw new NonReadableChannelException();
+    }
+    long end = Math.min(position + count, file.size());
+    long transferred = 0;
+    while (position + transferred < end) {
+      ByteBuffer chunk = file.view(position + transferred,
+          Math.min(TRANSFER_CHUNK, end - position - transferred));
+      int written = target.write(chunk);
+      transferred += written;
+      if (chunk.hasRemaining()) {
+        break;
+      }
+    }
+    return transferred;
+  }
+
+  @Override public long transferFrom(
+      ReadableByteChannel src, long position, long count) throws IOException {
+    checkOpen();
+    if (!writable) {
+      throw new NonWritableChannelException();
+    }
+    if (position > file.size()) {
+      return 0;
+    }
+    ByteBuffer buffer =
+        ByteBuffer.allocate((int) Math.min(TRANSFER_CHUNK, count));
+    long transferred = 0;
+    while (transferred < count) {
+      buffer.clear();
+      buffer.limit((int) Math.min(buffer.capacity(), count - transferred));
+      int read = src.read(buffer);
+      if (read <= 0) {
+        break;
+      }
+      buffer.flip();
+      synchronized (file) {
+        file.write(position + transferred, buffer);
+      }
+      transferred += read;
+    }
+    return transferred;
+  }
+
+  @Override public int read(ByteBuffer dst, long position) throws IOException {
+    checkOpen();
+    if (!readable) {
+      throw new NonReadableChannelException();
+    }
+    synchronized (file) {
+      return file.read(position, dst);
+    }
+  }
+
+  @Override public int write(ByteBuffer src, long position)
+      throws IOException {
+    checkOpen();
+    if (!writable) {
+      throw new NonWritableChannelException();
+    }
+    synchronized (file) {
+      return file.write(position, src);
+    }
+  }
+
+  /**
+   * Unsupported, since a {@link MappedByteBuffer} can't be made out of heap
+   * memory.
+   */
+  @Override public MappedByteBuffer map(MapMode mode, long position, long size) {
+    throw new UnsupportedOperationException(
+        "in-memory files can't be memory-mapped");
+  }
+
+  @Override public FileLock lock(long position, long size, boolean shared)
+      throws IOException {
+    checkOpen();
+    return new Lock(this, position, size, shared);
+  }
+
+  @Override public FileLock tryLock(long position, long size, boolean shared)
+      throws IOException {
+    return lock(position, size, shared);
+  }
+
+  @Override protected void implCloseChannel() {
+    // Nothing to release
+  }
+
+  private void checkOpen() throws IOException {
+    if (!isOpen()) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  private static final class Lock extends FileLock {
+
+    private volatile boolean valid = true;
+
+    Lock(FileChannel channel, long position, long size, boolean shared) {
+      super(channel, position, size, shared);
+    }
+
+    @Override public boolean isValid() {
+      return valid && channel().isOpen();
+    }
+
+    @Override public void release() {
+      valid = false;
+    }
+  }
+}
@@ -0,0 +1,589 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link FileSystem} whose files live on the heap, so that tests of code
+ * that takes a {@link Path} run at memory speed, and need no recursive
+ * deletion afterwards:
+ *
+ * <pre>
+ * {@code @Test}
+ * public void writesReport() throws Exception {
+ *   Path dir = InMemoryFileSystem.create(this).getPath("/reports");
+ *   new ReportWriter(dir).write(REPORT);
+ *   assertContentsEqual(GOLDEN, dir.resolve("report.txt"));
+ * }
+ * </pre>
+ *
+ * <p>Paths are Unix-like, and relative ones are resolved against the root.
+ * Files and directories are supported, along with the {@code basic} file
+ * attribute view and {@link java.nio.channels.FileChannel}s, but not links,
+ * file stores, watch services, or memory-mapping (see
+ * {@link InMemoryFileChannel}).
+ *
+ * <p>Closing the file system discards all of its files at once, however
+ * many there are, by dropping the reference to its root directory.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class InMemoryFileSystem extends FileSystem {
+
+  private static final AtomicLong ids = new AtomicLong();
+
+  private final String id = "fs" + ids.incrementAndGet();
+  private final InMemoryFileSystemProvider provider;
+
+  /** Guarded by {@code this}; null once closed. */
+  private Directory root = new Directory();
+
+  private InMemoryFileSystem(InMemoryFileSystemProvider provider) {
+    this.provider = provider;
+  }
+
+  /**
+   * Returns a new, empty file system, which is closed, and its files
+   * discarded, when {@code accepter} runs its {@link TearDown}s.
+   */
+  public static InMemoryFileSystem create(TearDownAccepter accepter) {
+    final InMemoryFileSystem result = newFileSystem();
+    accepter.addTearDown(new TearDown() {
+      public void tearDown() {
+        result.close();
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Returns a new, empty file system, to be {@linkplain #close() closed} by
+   * the caller.
+   */
+  public static InMemoryFileSystem newFileSystem() {
+    return new InMemoryFileSystem(InMemoryFileSystemProvider.INSTANCE);
+  }
+
+  String id() {
+    return id;
+  }
+
+  @Override public InMemoryFileSystemProvider provider() {
+    return provider;
+  }
+
+  @Override public synchronized void close() {
+    root = null;
+  }
+
+  @Override public synchronized boolean isOpen() {
+    return root != null;
+  }
+
+  @Override public boolean isReadOnly() {
+    return false;
+  }
+
+  @Override public String getSeparator() {
+    return "/";
+  }
+
+  @Override public Iterable<Path> getRootDirectories() {
+    return Collections.<Path>singletonList(getPath("/"));
+  }
+
+  @Override public Iterable<FileStore> getFileStores() {
+    return Collections.emptyList();
+  }
+
+  @Override public Set<String> supportedFileAttributeViews() {
+    return Collections.singleton("basic");
+  }
+
+  @Override public InMemoryPath getPath(String first, String... more) {
+    return InMemoryPath.parse(this, first, more);
+  }
+
+  /**
+   * Supports the {@code glob} and {@code regex} syntaxes, as described by
+   * {@link FileSystem#getPathMatcher}.
+   */
+  @Override public PathMatcher getPathMatcher(String syntaxAndPattern) {
+    int colon = syntaxAndPattern.indexOf(':');
+    if (colon <= 0) {
+      throw new IllegalArgumentException(
+          "expected syntax:pattern, but was: " + syntaxAndPattern);
+    }
+    String syntax = syntaxAndPattern.substring(0, colon);
+    String pattern = syntaxAndPattern.substring(colon + 1);
+    final Pattern regex;
+    if (syntax.equalsIgnoreCase("regex")) {
+      regex = Pattern.compile(pattern);
+    } else if (syntax.equalsIgnoreCase("glob")) {
+      regex = Pattern.compile(globToRegex(pattern));
+    } else {
+      throw new UnsupportedOperationException("unsupported syntax: " + syntax);
+    }
+    return new PathMatcher() {
+      public boolean matches(Path path) {
+        return regex.matcher(path.toString()).matches();
+      }
+    };
+  }
+
+  @Override public UserPrincipalLookupService getUserPrincipalLookupService() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override public WatchService newWatchService() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override public String toString() {
+    return InMemoryFileSystemProvider.SCHEME + "://" + id;
+  }
+
+  // Operations of InMemoryFileSystemProvider, on normalized absolute paths
+
+  synchronized Node lookup(InMemoryPath path) throws IOException {
+    Node node = checkOpen();
+    for (String name : absolute(path).names()) {
+      if (!(node instanceof Directory)) {
+        throw new NoSuchFileException(path.toString());
+      }
+      node = ((Directory) node).entries.get(name);
+      if (node == null) {
+        throw new NoSuchFileException(path.toString());
+      }
+    }
+    return node;
+  }
+
+  synchronized RegularFile open(InMemoryPath path, boolean create,
+      boolean createNew, boolean truncate) throws IOException {
+    InMemoryPath absolute = absolute(path);
+    String name = fileName(absolute);
+    Directory parent = parent(absolute);
+    Node node = parent.entries.get(name);
+    if (node == null) {
+      if (!create && !createNew) {
+        throw new NoSuchFileException(path.toString());
+      }
+      RegularFile file = new RegularFile();
+      parent.add(name, file);
+      return file;
+    }
+    if (createNew) {
+      throw new FileAlreadyExistsException(path.toString());
+    }
+    if (node instanceof Directory) {
+      throw new FileSystemException(path.toString(), null, "Is a directory");
+    }
+    RegularFile file = (RegularFile) node;
+    if (truncate) {
+      synchronized (file) {
+        file.truncate(0);
+      }
+    }
+    return file;
+  }
+
+  synchronized void createDirectory(InMemoryPath path) throws IOException {
+    InMemoryPath absolute = absolute(path);
+    String name = fileName(absolute);
+    Directory parent = parent(absolute);
+    if (parent.entries.containsKey(name)) {
+      throw new FileAlreadyExistsException(path.toString());
+    }
+    parent.add(name, new Directory());
+  }
+
+  synchronized List<String> list(InMemoryPath dir) throws IOException {
+    Node node = lookup(dir);
+    if (!(node instanceof Directory)) {
+      throw new NotDirectoryException(dir.toString());
+    }
+    return new ArrayList<String>(((Directory) node).entries.keySet());
+  }
+
+  synchronized void delete(InMemoryPath path) throws IOException {
+    InMemoryPath absolute = absolute(path);
+    String name = fileName(absolute);
+    Directory parent = parent(absolute);
+    Node node = parent.entries.get(name);
+    if (node == null) {
+      throw new NoSuchFileException(path.toString());
+    }
+    if (node instanceof Directory && !((Directory) node).entries.isEmpty()) {
+      throw new DirectoryNotEmptyException(path.toString());
+    }
+    parent.remove(name);
+  }
+
+  synchronized void copy(InMemoryPath source, InMemoryPath target,
+      boolean move, CopyOption... options) throws IOException {
+    List<CopyOption> optionList = Arrays.asList(options);
+    InMemoryPath absoluteSource = absolute(source);
+    InMemoryPath absoluteTarget = absolute(target);
+    Node node = lookup(absoluteSource);
+    if (absoluteSource.equals(absoluteTarget)) {
+      return;
+    }
+    if (move && node instanceof Directory
+        && absoluteTarget.startsWith(absoluteSource)) {
+      throw new FileSystemException(source.toString(), target.toString(),
+          "Can't move a directory into itself");
+    }
+    String name = fileName(absoluteTarget);
+    Directory parent = parent(absoluteTarget);
+    Node existing = parent.entries.get(name);
+    if (existing != null) {
+      if (!optionList.contains(StandardCopyOption.REPLACE_EXISTING)) {
+        throw new FileAlreadyExistsException(target.toString());
+      }
+      if (existing instanceof Directory
+          && !((Directory) existing).entries.isEmpty()) {
+        throw new DirectoryNotEmptyException(target.toString());
+      }
+    }
+    Node copy;
+    if (move) {
+      parent(absoluteSource).remove(fileName(absoluteSource));
+      copy = node;
+    } else {
+      copy = node.copy(optionList.contains(StandardCopyOption.COPY_ATTRIBUTES));
+    }
+    parent.add(name, copy);
+  }
+
+  private InMemoryPath absolute(InMemoryPath path) {
+    if (path.getFileSystem() != this) {
+      throw new ProviderMismatchException();
+    }
+    return path.toAbsolutePath().normalize();
+  }
+
+  private Directory checkOpen() {
+    if (root == null) {
+      throw new ClosedFileSystemException();
+    }
+    return root;
+  }
+
+  private Directory parent(InMemoryPath absolute) throws IOException {
+    InMemoryPath parentPath = absolute.getParent();
+    if (parentPath == null) {
+      throw new FileSystemException(absolute.toString(), null,
+          "The root directory can't be created, replaced or deleted");
+    }
+    Node parent = lookup(parentPath);
+    if (!(parent instanceof Directory)) {
+      throw new NotDirectoryException(parentPath.toString());
+    }
+    return (Directory) parent;
+  }
+
+  private static String fileName(InMemoryPath absolute) throws IOException {
+    String[] names = absolute.names();
+    if (names.length == 0) {
+      throw new FileSystemException(absolute.toString(), null,
+          "The root directory can't be created, replaced or deleted");
+    }
+    return names[names.length - 1];
+  }
+
+  /**
+   * Translates a glob, as described by {@link FileSystem#getPathMatcher},
+   * into a regex.
+   */
+  static String globToRegex(String glob) {
+    StringBuilder result = new StringBuilder();
+    boolean inGroup = false;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      switch (c) {
+        case '*':
+          if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+            result.append(".*");
+            i++;
+          } else {
+            result.append("[^/]*");
+          }
+          break;
+        case '?':
+          result.append("[^/]");
+          break;
+        case '{':
+          result.append("(?:");
+          inGroup = true;
+          break;
+        case '}':
+          result.append(')');
+          inGroup = false;
+          break;
+        case ',':
+          result.append(inGroup ? "|" : ",");
+          break;
+        case '[':
+          result.append('[');
+          if (i + 1 < glob.length() && glob.charAt(i + 1) == '!') {
+            result.append('^');
+            i++;
+          }
+          for (i++; i < glob.length() && glob.charAt(i) != ']'; i++) {
+            char d = glob.charAt(i);
+            result.append((d == '[' || d == '\\' || d == '^') ? "\\" + d : d);
+          }
+          result.append(']');
+          break;
+        case '\\':
+          if (++i < glob.length()) {
+            result.append(Pattern.quote(String.valueOf(glob.charAt(i))));
+          }
+          break;
+        default:
+          result.append(Character.isLetterOrDigit(c)
+              ? String.valueOf(c)
+              : Pattern.quote(String.valueOf(c)));
+      }
+    }
+    return result.toString();
+  }
+
+  /**
+   * A file or directory.
+   */
+  abstract static class Node {
+
+    volatile FileTime creationTime;
+    volatile FileTime lastModifiedTime;
+    volatile FileTime lastAccessTime;
+
+    Node() {
+      creationTime = lastModifiedTime = lastAccessTime = now();
+    }
+
+    abstract Node copy(boolean copyAttributes);
+
+    abstract long size();
+
+    BasicFileAttributes attributes() {
+      final boolean directory = this instanceof Directory;
+      final long size = size();
+      final FileTime creation = creationTime;
+      final FileTime modified = lastModifiedTime;
+      final FileTime accessed = lastAccessTime;
+      final Object key = this;
+      return new BasicFileAttributes() {
+        public FileTime lastModifiedTime() {
+          return modified;
+        }
+
+        public FileTime lastAccessTime() {
+          return accessed;
+        }
+
+        public FileTime creationTime() {
+          return creation;
+        }
+
+        public boolean isRegularFile() {
+          return !directory;
+        }
+
+        public boolean isDirectory() {
+          return directory;
+        }
+
+        public boolean isSymbolicLink() {
+          return false;
+        }
+
+        public boolean isOther() {
+          return false;
+        }
+
+        public long size() {
+          return size;
+        }
+
+        public Object fileKey() {
+          return key;
+        }
+      };
+    }
+
+    <T extends Node> T withAttributesOf(Node other, boolean copyAttributes) {
+      if (copyAttributes) {
+        creationTime = other.creationTime;
+        lastModifiedTime = other.lastModifiedTime;
+        lastAccessTime = other.lastAccessTime;
+      }
+      @SuppressWarnings("unchecked")
+      T result = (T) this;
+      return result;
+    }
+
+    static FileTime now() {
+      return FileTime.fromMillis(System.currentTimeMillis());
+    }
+  }
+
+  /**
+   * A directory, guarded by its {@link InMemoryFileSystem}.
+   */
+  static final class Directory extends Node {
+
+    final TreeMap<String, Node> entries = new TreeMap<String, Node>();
+
+    void add(String name, Node node) {
+      entries.put(name, node);
+      lastModifiedTime = now();
+    }
+
+    void remove(String name) {
+      entries.remove(name);
+      lastModifiedTime = now();
+    }
+
+    @Override Directory copy(boolean copyAttributes) {
+      return new Directory().withAttributesOf(this, copyAttributes);
+    }
+
+    @Override long size() {
+      return 0;
+    }
+  }
+
+  /**
+   * A regular file. Its contents are guarded by itself.
+   */
+  static final class RegularFile extends Node {
+
+    /** The largest array size that all JVMs allow. */
+    private static final int MAX_SIZE = Integer.MAX_VALUE - 8;
+
+    private byte[] data = new byte[0];
+    private int size;
+    /**
+     * Whether {@link #view} handed {@link #data} out, so that it must be
+     * copied before being written to.
+     */
+    private boolean shared;
+
+    @Override synchronized RegularFile copy(boolean copyAttributes) {
+      RegularFile result = new RegularFile();
+      result.data = Arrays.copyOf(data, size);
+      result.size = size;
+      return result.withAttributesOf(this, copyAttributes);
+    }
+
+    @Override synchronized long size() {
+      return size;
+    }
+
+    /**
+     * Reads from {@code position} into {@code dst}, returning how many bytes
+     * were read, or {@code -1} if {@code position} is at or past the end.
+     */
+    synchronized int read(long position, ByteBuffer dst) {
+      lastAccessTime = now();
+      if (position >= size) {
+        return -1;
+      }
+      int length = (int) Math.min(dst.remaining(), size - position);
+      dst.put(data, (int) position, length);
+      return length;
+    }
+
+    /**
+     * Writes {@code src} at {@code position}, filling any gap past the end
+     * with zeros, and returns how many bytes were written.
+     */
+    synchronized int write(long position, ByteBuffer src) throws IOException {
+      int length = src.remaining();
+      long end = position + length;
+      if (end > MAX_SIZE) {
+        throw new IOException("in-memory files are limited to "
+            + MAX_SIZE + " bytes");
+      }
+      if (end > data.length) {
+        data = Arrays.copyOf(data,
+            (int) Math.min(MAX_SIZE, Math.max(end, 2L * data.length)));
+        shared = false;
+      } else if (shared) {
+        data = data.clone();
+        shared = false;
+      }
+      if (position > size) {
+        Arrays.fill(data, size, (int) position, (byte) 0);
+      }
+      src.get(data, (int) position, length);
+      size = (int) Math.max(size, end);
+      lastModifiedTime = now();
+      return length;
+    }
+
+    synchronized void truncate(long newSize) {
+      if (newSize < size) {
+        size = (int) newSize;
+        lastModifiedTime = now();
+      }
+    }
+
+    /**
+     * Returns a read-only view of the contents from {@code position}, of at
+     * most {@code length} bytes, as they are now. The contents are not
+     * copied unless, and until, the file is next written to.
+     */
+    synchronized ByteBuffer view(long position, long length) {
+      lastAccessTime = now();
+      shared = true;
+      int start = (int) Math.min(position, size);
+      int end = (int) Math.min(position + length, size);
+      return ByteBuffer.wrap(data, start, end - start).slice()
+          .asReadOnlyBuffer();
+    }
+  }
+}
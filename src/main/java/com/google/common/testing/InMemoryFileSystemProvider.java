@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The provider of all {@link InMemoryFileSystem}s. It is not installed, so
+ * in-memory file systems can only be created through
+ * {@link InMemoryFileSystem}, and their paths only obtained from them.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+final class InMemoryFileSystemProvider extends FileSystemProvider {
+
+  static final String SCHEME = "memory";
+
+  static final InMemoryFileSystemProvider INSTANCE =
+      new InMemoryFileSystemProvider();
+
+  private static final String[] BASIC_ATTRIBUTES = {"lastModifiedTime",
+      "lastAccessTime", "creationTime", "size", "isRegularFile",
+      "isDirectory", "isSymbolicLink", "isOther", "fileKey"};
+
+  private InMemoryFileSystemProvider() { }
+
+  @Override public String getScheme() {
+    return SCHEME;
+  }
+
+  @Override public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+    throw new UnsupportedOperationException(
+        "use InMemoryFileSystem.create or InMemoryFileSystem.newFileSystem");
+  }
+
+  @Override public FileSystem getFileSystem(URI uri) {
+    throw new FileSystemNotFoundException(uri.toString());
+  }
+
+  @Override public Path getPath(URI uri) {
+    throw new FileSystemNotFoundException(uri.toString());
+  }
+
+  @Override public SeekableByteChannel newByteChannel(Path path,
+      Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+      throws IOException {
+    return newFileChannel(path, options, attrs);
+  }
+
+  @Override public InMemoryFileChannel newFileChannel(Path path,
+      Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+      throws IOException {
+    InMemoryPath file = check(path);
+    boolean append = options.contains(StandardOpenOption.APPEND);
+    boolean writable = append || options.contains(StandardOpenOption.WRITE);
+    boolean readable = options.contains(StandardOpenOption.READ) || !writable;
+    if (append && readable) {
+      throw new IllegalArgumentException("READ + APPEND not allowed");
+    }
+    boolean truncate =
+        writable && options.contains(StandardOpenOption.TRUNCATE_EXISTING);
+    if (append && truncate) {
+      throw new IllegalArgumentException("APPEND + TRUNCATE_EXISTING not allowed");
+    }
+    return new InMemoryFileChannel(file.getFileSystem().open(file,
+        writable && options.contains(StandardOpenOption.CREATE),
+        writable && options.contains(StandardOpenOption.CREATE_NEW),
+        truncate), readable, writable, append);
+  }
+
+  @Override public DirectoryStream<Path> newDirectoryStream(final Path dir,
+      final DirectoryStream.Filter<? super Path> filter) throws IOException {
+    final List<String> names = check(dir).getFileSystem().list(check(dir));
+    return new DirectoryStream<Path>() {
+      private boolean iterated;
+      private boolean closed;
+
+      public Iterator<Path> iterator() {
+        if (iterated || closed) {
+          throw new IllegalStateException("already iterated, or closed");
+        }
+        iterated = true;
+        final Iterator<String> remaining = names.iterator();
+        return new Iterator<Path>() {
+          private Path next;
+
+          public boolean hasNext() {
+            while (next == null && !closed && remaining.hasNext()) {
+              Path candidate = dir.resolve(remaining.next());
+              try {
+                if (filter.accept(candidate)) {
+                  next = candidate;
+                }
+              } catch (IOException e) {
+                throw new DirectoryIteratorException(e);
+              }
+            }
+            return next != null;
+          }
+
+          public Path next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            Path result = next;
+            next = null;
+            return result;
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      public void close() {
+        closed = true;
+      }
+    };
+  }
+
+  @Override public void createDirectory(Path dir, FileAttribute<?>... attrs)
+      throws IOException {
+    check(dir).getFileSystem().createDirectory(check(dir));
+  }
+
+  @Override public void delete(Path path) throws IOException {
+    check(path).getFileSystem().delete(check(path));
+  }
+
+  @Override public void copy(Path source, Path target, CopyOption... options)
+      throws IOException {
+    sameFileSystem(source, target).copy(
+        check(source), check(target), false, options);
+  }
+
+  @Override public void move(Path source, Path target, CopyOption... options)
+      throws IOException {
+    sameFileSystem(source, target).copy(
+        check(source), check(target), true, options);
+  }
+
+  @Override public boolean isSameFile(Path path, Path path2)
+      throws IOException {
+    if (path.equals(path2)) {
+      return true;
+    }
+    if (!(path2 instanceof InMemoryPath)
+        || check(path).getFileSystem() != check(path2).getFileSystem()) {
+      return false;
+    }
+    return check(path).getFileSystem().lookup(check(path))
+        == check(path2).getFileSystem().lookup(check(path2));
+  }
+
+  @Override public boolean isHidden(Path path) {
+    Path name = check(path).getFileName();
+    return name != null && name.toString().startsWith(".");
+  }
+
+  @Override public FileStore getFileStore(Path path) {
+    throw new UnsupportedOperationException(
+        "in-memory file systems have no file stores");
+  }
+
+  /** Everyone can do anything with in-memory files that exist. */
+  @Override public void checkAccess(Path path, AccessMode... modes)
+      throws IOException {
+    check(path).getFileSystem().lookup(check(path));
+  }
+
+  @Override public <V extends FileAttributeView> V getFileAttributeView(
+      Path path, Class<V> type, LinkOption... options) {
+    if (type != BasicFileAttributeView.class) {
+      return null;
+    }
+    final InMemoryPath file = check(path);
+    return type.cast(new BasicFileAttributeView() {
+      public String name() {
+        return "basic";
+      }
+
+      public BasicFileAttributes readAttributes() throws IOException {
+        return file.getFileSystem().lookup(file).attributes();
+      }
+
+      public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime,
+          FileTime createTime) throws IOException {
+        InMemoryFileSystem.Node node = file.getFileSystem().lookup(file);
+        if (lastModifiedTime != null) {
+          node.lastModifiedTime = lastModifiedTime;
+        }
+        if (lastAccessTime != null) {
+          node.lastAccessTime = lastAccessTime;
+        }
+        if (createTime != null) {
+          node.creationTime = createTime;
+        }
+      }
+    });
+  }
+
+  @Override public <A extends BasicFileAttributes> A readAttributes(
+      Path path, Class<A> type, LinkOption... options) throws IOException {
+    if (type != BasicFileAttributes.class) {
+      throw new UnsupportedOperationException(
+          "only basic file attributes are supported");
+    }
+    return type.cast(check(path).getFileSystem().lookup(check(path))
+        .attributes());
+  }
+
+  @Override public Map<String, Object> readAttributes(
+      Path path, String attributes, LinkOption... options) throws IOException {
+    BasicFileAttributes basic =
+        readAttributes(path, BasicFileAttributes.class, options);
+    List<String> names = new ArrayList<String>();
+    for (String name : basicNames(attributes).split(",")) {
+      if (name.equals("*")) {
+        names.addAll(Arrays.asList(BASIC_ATTRIBUTES));
+      } else if (Arrays.asList(BASIC_ATTRIBUTES).contains(name)) {
+        names.add(name);
+      } else {
+        throw new IllegalArgumentException("unknown attribute: " + name);
+      }
+    }
+    Map<String, Object> result = new LinkedHashMap<String, Object>();
+    for (String name : names) {
+      result.put(name, basicAttribute(basic, name));
+    }
+    return result;
+  }
+
+  @Override public void setAttribute(Path path, String attribute, Object value,
+      LinkOption... options) throws IOException {
+    String name = basicNames(attribute);
+    BasicFileAttributeView view =
+        getFileAttributeView(path, BasicFileAttributeView.class, options);
+    FileTime time = (FileTime) value;
+    if (name.equals("lastModifiedTime")) {
+      view.setTimes(time, null, null);
+    } else if (name.equals("lastAccessTime")) {
+      view.setTimes(null, time, null);
+    } else if (name.equals("creationTime")) {
+      view.setTimes(null, null, time);
+    } else {
+      throw new IllegalArgumentException("can't set attribute: " + attribute);
+    }
+  }
+
+  /** Strips the {@code basic:} view name, rejecting any other view. */
+  private static String basicNames(String attributes) {
+    int colon = attributes.indexOf(':');
+    if (colon < 0) {
+      return attributes;
+    }
+    if (!attributes.substring(0, colon).equals("basic")) {
+      throw new UnsupportedOperationException(
+          "only basic file attributes are supported: " + attributes);
+    }
+    return attributes.substring(colon + 1);
+  }
+
+  private static Object basicAttribute(BasicFileAttributes basic, String name) {
+    if (name.equals("lastModifiedTime")) {
+      return basic.lastModifiedTime();
+    } else if (name.equals("lastAccessTime")) {
+      return basic.lastAccessTime();
+    } else if (name.equals("creationTime")) {
+      return basic.creationTime();
+    } else if (name.equals("size")) {
+      return basic.size();
+    } else if (name.equals("isRegularFile")) {
+      return basic.isRegularFile();
+    } else if (name.equals("isDirectory")) {
+      return basic.isDirectory();
+    } else if (name.equals("isSymbolicLink")) {
+      return basic.isSymbolicLink();
+    } else if (name.equals("isOther")) {
+      return basic.isOther();
+    }
+    return basic.fileKey();
+  }
+
+  private static InMemoryPath check(Path path) {
+    if (!(path instanceof InMemoryPath)) {
+      throw new ProviderMismatchException();
+    }
+    return (InMemoryPath) path;
+  }
+
+  private static InMemoryFileSystem sameFileSystem(Path source, Path target) {
+    InMemoryFileSystem result = check(source).getFileSystem();
+    if (check(target).getFileSystem() != result) {
+      throw new ProviderMismatchException(
+          "can't copy or move between in-memory file systems");
+    }
+    return result;
+  }
+}
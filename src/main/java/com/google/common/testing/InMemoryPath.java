@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A {@link Path} of an {@link InMemoryFileSystem}. Paths are Unix-like: the
+ * separator is {@code /}, and there is a single root.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+final class InMemoryPath implements Path {
+
+  private static final String[] NO_NAMES = new String[0];
+
+  private final InMemoryFileSystem fileSystem;
+  private final boolean absolute;
+  private final String[] names;
+
+  private InMemoryPath(
+      InMemoryFileSystem fileSystem, boolean absolute, String[] names) {
+    this.fileSystem = fileSystem;
+    this.absolute = absolute;
+    this.names = names;
+  }
+
+  static InMemoryPath parse(
+      InMemoryFileSystem fileSystem, String first, String... more) {
+    StringBuilder joined = new StringBuilder(first);
+    for (String name : more) {
+      if (!name.isEmpty()) {
+        if (joined.length() > 0) {
+          joined.append('/');
+        }
+        joined.append(name);
+      }
+    }
+    String path = joined.toString();
+    if (path.indexOf('\0') >= 0) {
+      throw new InvalidPathException(path, "Nul character not allowed");
+    }
+    List<String> names = new ArrayList<String>();
+    for (String name : path.split("/")) {
+      if (!name.isEmpty()) {
+        names.add(name);
+      }
+    }
+    return new InMemoryPath(fileSystem, path.startsWith("/"),
+        names.toArray(new String[names.size()]));
+  }
+
+  /** Returns the names of this path, which must not be modified. */
+  String[] names() {
+    return names;
+  }
+
+  public InMemoryFileSystem getFileSystem() {
+    return fileSystem;
+  }
+
+  public boolean isAbsolute() {
+    return absolute;
+  }
+
+  public InMemoryPath getRoot() {
+    return absolute ? new InMemoryPath(fileSystem, true, NO_NAMES) : null;
+  }
+
+  public InMemoryPath getFileName() {
+    if (names.length == 0) {
+      return absolute ? null : this;
+    }
+    return relative(names.length - 1, names.length);
+  }
+
+  public InMemoryPath getParent() {
+    if (names.length == 0 || (names.length == 1 && !absolute)) {
+      return null;
+    }
+    return new InMemoryPath(fileSystem, absolute,
+        Arrays.copyOf(names, names.length - 1));
+  }
+
+  public int getNameCount() {
+    return names.length;
+  }
+
+  public InMemoryPath getName(int index) {
+    return subpath(index, index + 1);
+  }
+
+  public InMemoryPath subpath(int beginIndex, int endIndex) {
+    if (beginIndex < 0 || endIndex > names.length || beginIndex >= endIndex) {
+      throw new IllegalArgumentException(
+          "invalid subpath [" + beginIndex + ", " + endIndex + ") of " + this);
+    }
+    return relative(beginIndex, endIndex);
+  }
+
+  public boolean startsWith(Path other) {
+    if (!(other instanceof InMemoryPath)) {
+      return false;
+    }
+    InMemoryPath that = (InMemoryPath) other;
+    return that.fileSystem == fileSystem && that.absolute == absolute
+        && that.names.length <= names.length
+        && Arrays.equals(that.names, Arrays.copyOf(names, that.names.length));
+  }
+
+  public boolean startsWith(String other) {
+    return startsWith(fileSystem.getPath(other));
+  }
+
+  public boolean endsWith(Path other) {
+    if (!(other instanceof InMemoryPath)) {
+      return false;
+    }
+    InMemoryPath that = (InMemoryPath) other;
+    if (that.fileSystem != fileSystem) {
+      return false;
+    }
+    if (that.absolute) {
+      return equals(that);
+    }
+    int offset = names.length - that.names.length;
+    return offset >= 0 && Arrays.equals(that.names,
+        Arrays.copyOfRange(names, offset, names.length));
+  }
+
+  public boolean endsWith(String other) {
+    return endsWith(fileSystem.getPath(other));
+  }
+
+  public InMemoryPath normalize() {
+    List<String> result = new ArrayList<String>(names.length);
+    for (String name : names) {
+      if (name.equals(".")) {
+        continue;
+      } else if (name.equals("..")) {
+        if (!result.isEmpty() && !result.get(result.size() - 1).equals("..")) {
+          result.remove(result.size() - 1);
+        } else if (!absolute) {
+          result.add(name);
+        }
+      } else {
+        result.add(name);
+      }
+    }
+    return new InMemoryPath(
+        fileSystem, absolute, result.toArray(new String[result.size()]));
+  }
+
+  public InMemoryPath resolve(Path other) {
+    InMemoryPath that = check(other);
+    if (that.absolute) {
+      return that;
+    }
+    if (that.names.length == 0) {
+      return this;
+    }
+    String[] result = Arrays.copyOf(names, names.length + that.names.length);
+    System.arraycopy(that.names, 0, result, names.length, that.names.length);
+    return new InMemoryPath(fileSystem, absolute, result);
+  }
+
+  public InMemoryPath resolve(String other) {
+    return resolve(fileSystem.getPath(other));
+  }
+
+  public Path resolveSibling(Path other) {
+    InMemoryPath parent = getParent();
+    return (parent == null) ? check(other) : parent.resolve(other);
+  }
+
+  public Path resolveSibling(String other) {
+    return resolveSibling(fileSystem.getPath(other));
+  }
+
+  public InMemoryPath relativize(Path other) {
+    InMemoryPath that = check(other);
+    if (that.absolute != absolute) {
+      throw new IllegalArgumentException(
+          "can't relativize " + that + " against " + this);
+    }
+    int common = 0;
+    while (common < names.length && common < that.names.length
+        && names[common].equals(that.names[common])) {
+      common++;
+    }
+    List<String> result = new ArrayList<String>();
+    for (int i = common; i < names.length; i++) {
+      result.add("..");
+    }
+    result.addAll(Arrays.asList(that.names).subList(common, that.names.length));
+    return new InMemoryPath(
+        fileSystem, false, result.toArray(new String[result.size()]));
+  }
+
+  public URI toUri() {
+    try {
+      return new URI(InMemoryFileSystemProvider.SCHEME, fileSystem.id(),
+          toAbsolutePath().toString(), null, null);
+    } catch (URISyntaxException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /** The working directory of an {@link InMemoryFileSystem} is its root. */
+  public InMemoryPath toAbsolutePath() {
+    return absolute ? this : new InMemoryPath(fileSystem, true, names);
+  }
+
+  /**
+   * Since an {@link InMemoryFileSystem} has no links, this is the absolute,
+   * normalized path, if a file exists there.
+   */
+  public InMemoryPath toRealPath(LinkOption... options) throws IOException {
+    InMemoryPath result = toAbsolutePath().normalize();
+    fileSystem.lookup(result);
+    return result;
+  }
+
+  /**
+   * Unsupported, since an {@link InMemoryFileSystem} is not the default file
+   * system.
+   */
+  public File toFile() {
+    throw new UnsupportedOperationException(
+        "in-memory paths have no java.io.File equivalent");
+  }
+
+  public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events,
+      WatchEvent.Modifier... modifiers) {
+    throw new UnsupportedOperationException();
+  }
+
+  public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) {
+    throw new UnsupportedOperationException();
+  }
+
+  public Iterator<Path> iterator() {
+    List<Path> result = new ArrayList<Path>(names.length);
+    for (int i = 0; i < names.length; i++) {
+      result.add(getName(i));
+    }
+    return result.iterator();
+  }
+
+  public int compareTo(Path other) {
+    return toString().compareTo(check(other).toString());
+  }
+
+  @Override public boolean equals(Object object) {
+    if (!(object instanceof InMemoryPath)) {
+      return false;
+    }
+    InMemoryPath that = (InMemoryPath) object;
+    return that.fileSystem == fileSystem && that.absolute == absolute
+        && Arrays.equals(that.names, names);
+  }
+
+  @Override public int hashCode() {
+    return Arrays.hashCode(names) * 31 + (absolute ? 1 : 0);
+  }
+
+  @Override public String toString() {
+    StringBuilder result = new StringBuilder();
+    if (absolute) {
+      result.append('/');
+    }
+    for (int i = 0; i < names.length; i++) {
+      if (i > 0) {
+        result.append('/');
+      }
+      result.append(names[i]);
+    }
+    return result.toString();
+  }
+
+  private InMemoryPath relative(int beginIndex, int endIndex) {
+    return new InMemoryPath(fileSystem, false,
+        Arrays.copyOfRange(names, beginIndex, endIndex));
+  }
+
+  private InMemoryPath check(Path other) {
+    if (!(other instanceof InMemoryPath)
+        || ((InMemoryPath) other).fileSystem != fileSystem) {
+      throw new ProviderMismatchException();
+    }
+    return (InMemoryPath) other;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+/**
+ * A fixture that is only built the first time a test {@linkplain #get uses}
+ * it, so that a base test class can offer many fixtures, and each test only
+ * pays for those it needs:
+ *
+ * <pre>
+ * public abstract class ServerTestCase extends TearDownTestCase {
+ *   protected final LazyFixture&lt;Server&gt; server = LazyFixture.create(this,
+ *       new LazyFixture.Builder&lt;Server&gt;() {
+ *         public Server build(TearDownAccepter accepter) throws Exception {
+ *           final Server server = Server.start();
+ *           accepter.addTearDown(new TearDown() {
+ *             public void tearDown() {
+ *               server.stop();
+ *             }
+ *           });
+ *           return server;
+ *         }
+ *       });
+ * }
+ * </pre>
+ *
+ * <p>The {@link Builder} registers what undoes the fixture with the
+ * accepter it is given, which is the one the fixture was created against,
+ * so a fixture that is never used registers nothing either. The fixture is
+ * built at most once, even if several threads use it at once; if building
+ * it fails, the next use tries again.
+ *
+ * <p>A fixture first used during a {@link StressRun} is still built once
+ * for the whole test, and torn down with it, rather than at the end of that
+ * run.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class LazyFixture<T> {
+
+  /** Builds a fixture. */
+  public interface Builder<T> {
+    /**
+     * Builds the fixture, registering what undoes it with
+     * {@code accepter}.
+     */
+    T build(TearDownAccepter accepter) throws Exception;
+  }
+
+  private final TearDownAccepter accepter;
+  private final Builder<T> builder;
+  private volatile boolean built;
+  private T value;
+
+  private LazyFixture(TearDownAccepter accepter, Builder<T> builder) {
+    this.accepter = accepter;
+    this.builder = builder;
+  }
+
+  /**
+   * Creates a fixture that {@code builder} builds, against {@code accepter},
+   * the first time it is used.
+   */
+  public static <T> LazyFixture<T> create(
+      TearDownAccepter accepter, Builder<T> builder) {
+    return new LazyFixture<T>(accepter, builder);
+  }
+
+  /**
+   * Returns the fixture, building it if this is its first use.
+   *
+   * @throws RuntimeException if building the fixture threw a checked
+   *     exception, which is its cause
+   */
+  public T get() {
+    if (!built) {
+      synchronized (this) {
+        if (!built) {
+          TearDownStack run = StressRun.suspend();
+          try {
+            value = builder.build(accepter);
+          } catch (RuntimeException e) {
+            throw e;
+          } catch (Exception e) {
+            throw new RuntimeException("could not build fixture", e);
+          } finally {
+            StressRun.resume(run);
+          }
+          built = true;
+        }
+      }
+    }
+    return value;
+  }
+
+  /** Returns whether the fixture was built yet. */
+  public boolean isBuilt() {
+    return built;
+  }
+
+  @Override public String toString() {
+    return built ? "LazyFixture[" + value + "]" : "LazyFixture[not built]";
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Finds resources that a test acquired and did not release by the time its
+ * {@link TearDown}s ran: live threads, open file descriptors (where
+ * {@code /proc/self/fd} exists) and direct or mapped buffer memory. Such
+ * leaks pile up over a test run until late tests slow down or run out of
+ * file descriptors, far from the test that caused them.
+ *
+ * <p>Use {@link com.google.common.testing.junit4.LeakDetectionRule} for
+ * JUnit 4 tests.
+ *
+ * <p>Direct and mapped buffers are only freed once garbage collected, so
+ * buffer pool growth may be reported for a test that merely left its
+ * buffers to the garbage collector.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class LeakDetector {
+
+  /**
+   * What to do about leaks.
+   */
+  public enum Mode {
+    /** Don't look for leaks. */
+    OFF,
+    /** Log leaks as warnings. */
+    WARN,
+    /** Fail the test that leaked. */
+    FAIL,
+  }
+
+  /**
+   * The system property that sets the default {@link Mode}, by name (case
+   * doesn't matter). If unset, the default is {@link Mode#WARN}.
+   */
+  public static final String MODE_PROPERTY =
+      "com.google.common.testing.LeakDetector.mode";
+
+  /**
+   * The system property that sets how often tests are checked by default:
+   * if {@code N}, one in every {@code N} tests is. If unset, all are.
+   */
+  public static final String SAMPLE_EVERY_PROPERTY =
+      "com.google.common.testing.LeakDetector.sampleEvery";
+
+  /**
+   * How long to wait for new threads to finish before calling them leaked,
+   * as a thread is often still winding down right after being told to stop.
+   */
+  static final long THREAD_GRACE_MILLIS = 100;
+
+  private static final Path FDS = Paths.get("/proc/self/fd");
+
+  private static final Logger logger =
+      Logger.getLogger(LeakDetector.class.getName());
+
+  private static final AtomicLong tests = new AtomicLong();
+
+  private LeakDetector() { }
+
+  /**
+   * Returns the {@link Mode} set by the {@value #MODE_PROPERTY} system
+   * property.
+   */
+  public static Mode defaultMode() {
+    String mode = System.getProperty(MODE_PROPERTY);
+    return (mode == null)
+        ? Mode.WARN
+        : Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+  }
+
+  /**
+   * Returns the sampling rate set by the {@value #SAMPLE_EVERY_PROPERTY}
+   * system property.
+   */
+  public static int defaultSampleEvery() {
+    return Integer.getInteger(SAMPLE_EVERY_PROPERTY, 1);
+  }
+
+  /**
+   * Counts a test, returning whether it is one of every {@code sampleEvery}
+   * tests, counted across the whole JVM, that should be checked.
+   */
+  public static boolean shouldSample(int sampleEvery) {
+    if (sampleEvery < 1) {
+      throw new IllegalArgumentException(
+          "sampleEvery must be positive: " + sampleEvery);
+    }
+    return tests.getAndIncrement() % sampleEvery == 0;
+  }
+
+  /**
+   * Reports the {@code leaks} of {@code test}, as {@code mode} says, if there
+   * are any.
+   *
+   * @throws AssertionError if {@code mode} is {@link Mode#FAIL}
+   */
+  public static void report(Mode mode, String test, List<String> leaks) {
+    if (mode == Mode.OFF || leaks.isEmpty()) {
+      return;
+    }
+    StringBuilder message = new StringBuilder(test)
+        .append(" leaked ").append(leaks.size())
+        .append(" resources past its tear-down:");
+    for (String leak : leaks) {
+      message.append("\n  ").append(leak);
+    }
+    if (mode == Mode.FAIL) {
+      throw new AssertionError(message.toString());
+    }
+    logger.warning(message.toString());
+  }
+
+  /**
+   * The resources in use at some point in time.
+   */
+  public static final class Snapshot {
+
+    private final Set<Thread> threads;
+    private final Map<String, String> fds;
+    private final Map<String, long[]> bufferPools;
+
+    private Snapshot() {
+      threads = liveThreads();
+      fds = openFds();
+      bufferPools = bufferPoolUsage();
+    }
+
+    /** Returns the resources in use now. */
+    public static Snapshot take() {
+      return new Snapshot();
+    }
+
+    /**
+     * Returns a description of each resource in use now that was not when
+     * this snapshot was taken, or an empty list if there is none.
+     */
+    public List<String> findLeaks() {
+      List<String> result = new ArrayList<String>();
+      long deadline = System.currentTimeMillis() + THREAD_GRACE_MILLIS;
+      for (Thread thread : liveThreads()) {
+        if (threads.contains(thread)) {
+          continue;
+        }
+        try {
+          thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+          result.add("thread \"" + thread.getName() + "\" ("
+              + thread.getState() + (thread.isDaemon() ? ", daemon)" : ")"));
+        }
+      }
+      for (Map.Entry<String, String> fd : openFds().entrySet()) {
+        if (!fd.getValue().equals(fds.get(fd.getKey()))) {
+          result.add("file descriptor " + fd.getKey() + " -> " + fd.getValue());
+        }
+      }
+      for (Map.Entry<String, long[]> pool : bufferPoolUsage().entrySet()) {
+        long[] before = bufferPools.get(pool.getKey());
+        long[] after = pool.getValue();
+        if (before != null && after[1] > before[1]) {
+          result.add(pool.getKey() + " buffer memory grew by "
+              + CostMeasurements.formatBytes(after[1] - before[1]) + " ("
+              + (after[0] - before[0]) + " buffers)");
+        }
+      }
+      return result;
+    }
+
+    private static Set<Thread> liveThreads() {
+      ThreadGroup root = Thread.currentThread().getThreadGroup();
+      while (root.getParent() != null) {
+        root = root.getParent();
+      }
+      Thread[] threads;
+      int count;
+      do {
+        threads = new Thread[root.activeCount() * 2 + 1];
+        count = root.enumerate(threads, true);
+      } while (count == threads.length);
+      Set<Thread> result = new HashSet<Thread>();
+      for (int i = 0; i < count; i++) {
+        result.add(threads[i]);
+      }
+      return result;
+    }
+
+    /**
+     * Returns what each open file descriptor points to, by number, or an
+     * empty map where {@code /proc/self/fd} doesn't exist.
+     */
+    private static Map<String, String> openFds() {
+      if (!Files.isDirectory(FDS)) {
+        return Collections.emptyMap();
+      }
+      Map<String, String> result = new HashMap<String, String>();
+      try {
+        DirectoryStream<Path> stream = Files.newDirectoryStream(FDS);
+        try {
+          for (Path fd : stream) {
+            try {
+              String target = Files.readSymbolicLink(fd).toString();
+              // Skip the descriptor of this very listing
+              if (!target.endsWith("/fd")) {
+                result.put(fd.getFileName().toString(), target);
+              }
+            } catch (IOException e) {
+              // Closed while we were listing
+            }
+          }
+        } finally {
+          stream.close();
+        }
+      } catch (IOException e) {
+        return Collections.emptyMap();
+      }
+      return result;
+    }
+
+    /** Returns the {count, memory used} of each buffer pool, by name. */
+    private static Map<String, long[]> bufferPoolUsage() {
+      Map<String, long[]> result = new HashMap<String, long[]>();
+      for (BufferPoolMXBean pool
+          : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+        result.put(pool.getName(),
+            new long[] {pool.getCount(), pool.getMemoryUsed()});
+      }
+      return result;
+    }
+  }
+}
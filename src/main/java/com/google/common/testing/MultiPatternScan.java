@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The result of looking for many regular expressions in a single
+ * {@link CharSequence} at once. This is what backs the multi-pattern
+ * assertions of {@link com.google.common.testing.junit3.JUnitAsserts} and
+ * {@link com.google.common.testing.junit4.JUnitAsserts}, e.g.
+ * {@code assertNotContainsAnyRegex}, and is framework agnostic.
+ *
+ * <p>Rather than rescanning the input once per pattern, the patterns are
+ * split in two groups, each of which is looked for in a single pass:
+ *
+ * <ul>
+ *  <li>pure literals -- patterns with no regex metacharacters, or wholly
+ *    wrapped by {@link Pattern#quote} -- are fed to an Aho-Corasick
+ *    automaton
+ *  <li>all other patterns are combined in one alternation, each in its own
+ *    named group. Patterns that use back-references, or can't be combined for
+ *    some other reason, are scanned on their own
+ * </ul>
+ *
+ * <p>For every pattern, the position of its first (leftmost) occurrence is
+ * recorded. Each regex pass is subject to the current {@link RegexBudget}.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class MultiPatternScan {
+
+  private static final Pattern QUOTED =
+      Pattern.compile("\\\\Q(.*?)\\\\E", Pattern.DOTALL);
+  private static final Pattern METACHARACTERS =
+      Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+  private static final Pattern BACK_REFERENCE =
+      Pattern.compile("\\\\(\\d|k<)");
+
+  private final List<String> patterns;
+  private final Map<String, Integer> positions;
+
+  private MultiPatternScan(
+      List<String> patterns, Map<String, Integer> positions) {
+    this.patterns = patterns;
+    this.positions = positions;
+  }
+
+  /**
+   * Looks for each of {@code regexes} in {@code input}, in a single pass over
+   * {@code input} for the literals and another for the real regexes.
+   *
+   * @throws RegexBudget.ExceededException if a regex pass took longer than
+   *     the current {@link RegexBudget}; its message names the regexes
+   */
+  public static MultiPatternScan scan(
+      CharSequence input, Collection<String> regexes) {
+    return scan(input, regexes, false);
+  }
+
+  /**
+   * Like {@link #scan(CharSequence, Collection)}, but if
+   * {@code stopAtFirst} is true, stops looking as soon as any one of the
+   * patterns was found. In that case, which of the patterns were found is
+   * unspecified beyond the fact that at least one was.
+   */
+  public static MultiPatternScan scan(
+      CharSequence input, Collection<String> regexes, boolean stopAtFirst) {
+    Object event = FlightRecorderEvents.beginComparison();
+    List<String> patterns = Collections.unmodifiableList(
+        new ArrayList<String>(new LinkedHashSet<String>(regexes)));
+    int[] starts = new int[patterns.size()];
+    List<Integer> literalIndexes = new ArrayList<Integer>();
+    List<String> literals = new ArrayList<String>();
+    List<Integer> regexIndexes = new ArrayList<Integer>();
+    for (int i = 0; i < patterns.size(); i++) {
+      starts[i] = -1;
+      String literal = asLiteral(patterns.get(i));
+      if (literal != null) {
+        literalIndexes.add(i);
+        literals.add(literal);
+      } else {
+        regexIndexes.add(i);
+      }
+    }
+
+    int[] literalStarts =
+        new AhoCorasick(literals).firstStarts(input, stopAtFirst);
+    boolean foundAny = false;
+    for (int i = 0; i < literalStarts.length; i++) {
+      starts[literalIndexes.get(i)] = literalStarts[i];
+      foundAny |= literalStarts[i] >= 0;
+    }
+    if (!(stopAtFirst && foundAny)) {
+      scanRegexes(input, patterns, regexIndexes, starts, stopAtFirst);
+    }
+
+    Map<String, Integer> positions = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < patterns.size(); i++) {
+      if (starts[i] >= 0) {
+        positions.put(patterns.get(i), starts[i]);
+      }
+    }
+    FlightRecorderEvents.endComparison(event, "multi-pattern scan",
+        patterns.toString(), input.length());
+    return new MultiPatternScan(
+        patterns, Collections.unmodifiableMap(positions));
+  }
+
+  /**
+   * Returns all the distinct patterns that were looked for, in the order
+   * they were given.
+   */
+  public List<String> patterns() {
+    return patterns;
+  }
+
+  /**
+   * Returns the patterns that were found, in the order they were given,
+   * mapped to the index at which their first occurrence starts.
+   */
+  public Map<String, Integer> found() {
+    return positions;
+  }
+
+  /**
+   * Returns the patterns that were not found, in the order they were given.
+   */
+  public List<String> missing() {
+    List<String> result = new ArrayList<String>();
+    for (String pattern : patterns) {
+      if (!positions.containsKey(pattern)) {
+        result.add(pattern);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the index at which the first occurrence of {@code pattern}
+   * starts, or {@code -1} if it was not found.
+   */
+  public int start(String pattern) {
+    Integer result = positions.get(pattern);
+    return (result == null) ? -1 : result;
+  }
+
+  @Override public String toString() {
+    return "found:<" + positions + "> missing:<" + missing() + ">";
+  }
+
+  /**
+   * Returns the literal text {@code regex} stands for, or {@code null} if it
+   * is not a pure literal.
+   */
+  static String asLiteral(String regex) {
+    Matcher quoted = QUOTED.matcher(regex);
+    if (quoted.matches() && !quoted.group(1).contains("\\E")) {
+      return quoted.group(1);
+    }
+    return METACHARACTERS.matcher(regex).find() ? null : regex;
+  }
+
+  private static void scanRegexes(CharSequence input, List<String> patterns,
+      List<Integer> regexIndexes, int[] starts, boolean stopAtFirst) {
+    List<Integer> combinable = new ArrayList<Integer>();
+    for (int index : regexIndexes) {
+      if (BACK_REFERENCE.matcher(patterns.get(index)).find()) {
+        if (scanAlone(input, patterns, index, starts) && stopAtFirst) {
+          return;
+        }
+      } else {
+        combinable.add(index);
+      }
+    }
+
+    // Every time an alternative matches at "from", no remaining alternative
+    // can match before "from", so the search resumes there without it.
+    int from = 0;
+    while (!combinable.isEmpty() && from <= input.length()) {
+      Pattern combined;
+      try {
+        combined = combine(patterns, combinable);
+      } catch (PatternSyntaxException e) {
+        // e.g. two patterns declare the same named group
+        for (int index : combinable) {
+          if (scanAlone(input, patterns, index, starts) && stopAtFirst) {
+            return;
+          }
+        }
+        return;
+      }
+      Matcher matcher = find(combined, input, from,
+          combinedPatterns(patterns, combinable));
+      if (matcher == null) {
+        return;
+      }
+      from = matcher.start();
+      for (int i = 0; i < combinable.size(); i++) {
+        if (matcher.start(groupName(i)) >= 0) {
+          starts[combinable.remove(i)] = from;
+          break;
+        }
+      }
+      if (stopAtFirst) {
+        return;
+      }
+    }
+  }
+
+  private static boolean scanAlone(
+      CharSequence input, List<String> patterns, int index, int[] starts) {
+    String regex = patterns.get(index);
+    Matcher matcher = find(PatternCache.compile(regex), input, 0, regex);
+    if (matcher != null) {
+      starts[index] = matcher.start();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns a {@link Matcher} of {@code pattern} that found it in
+   * {@code input} at or after {@code from}, or {@code null} if it did not.
+   *
+   * @throws RegexBudget.ExceededException naming {@code regex}, what
+   *     {@code pattern} was made of, if this took longer than the current
+   *     {@link RegexBudget}
+   */
+  private static Matcher find(
+      Pattern pattern, CharSequence input, int from, String regex) {
+    RegexBudget.Guard guard = RegexBudget.guard(input);
+    Matcher matcher = pattern.matcher((guard == null) ? input : guard);
+    try {
+      return matcher.find(from) ? matcher : null;
+    } catch (RegexBudget.ExceededException e) {
+      throw new RegexBudget.ExceededException(
+          "regex:<" + regex + "> " + e.getMessage());
+    } finally {
+      if (guard != null) {
+        guard.disarm();
+      }
+    }
+  }
+
+  private static String combinedPatterns(
+      List<String> patterns, List<Integer> indexes) {
+    List<String> result = new ArrayList<String>(indexes.size());
+    for (int index : indexes) {
+      result.add(patterns.get(index));
+    }
+    return result.toString();
+  }
+
+  private static Pattern combine(List<String> patterns, List<Integer> indexes) {
+    StringBuilder regex = new StringBuilder();
+    for (int i = 0; i < indexes.size(); i++) {
+      if (i > 0) {
+        regex.append('|');
+      }
+      regex.append("(?<").append(groupName(i)).append(">(?:")
+          .append(patterns.get(indexes.get(i))).append("))");
+    }
+    return PatternCache.compile(regex.toString());
+  }
+
+  private static String groupName(int i) {
+    return "multiPatternScan" + i;
+  }
+
+  /**
+   * A classic Aho-Corasick automaton over {@code char}s, which finds the
+   * first occurrence of each of a set of literals in a single pass.
+   */
+  private static final class AhoCorasick {
+
+    private final List<String> literals;
+    private final Node root = new Node();
+
+    AhoCorasick(List<String> literals) {
+      this.literals = literals;
+      for (int i = 0; i < literals.size(); i++) {
+        Node node = root;
+        String literal = literals.get(i);
+        for (int j = 0; j < literal.length(); j++) {
+          char c = literal.charAt(j);
+          Node next = node.next.get(c);
+          if (next == null) {
+            next = new Node();
+            node.next.put(c, next);
+          }
+          node = next;
+        }
+        node.outputs.add(i);
+      }
+      buildFailureLinks();
+    }
+
+    private void buildFailureLinks() {
+      Queue<Node> queue = new ArrayDeque<Node>();
+      for (Node child : root.next.values()) {
+        child.fail = root;
+        queue.add(child);
+      }
+      while (!queue.isEmpty()) {
+        Node node = queue.remove();
+        for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+          Node child = entry.getValue();
+          Node fail = node.fail;
+          while (fail != root && !fail.next.containsKey(entry.getKey())) {
+            fail = fail.fail;
+          }
+          Node target = fail.next.get(entry.getKey());
+          child.fail = (target == null || target == child) ? root : target;
+          child.outputs.addAll(child.fail.outputs);
+          queue.add(child);
+        }
+      }
+    }
+
+    int[] firstStarts(CharSequence input, boolean stopAtFirst) {
+      int[] result = new int[literals.size()];
+      int remaining = literals.size();
+      for (int i = 0; i < result.length; i++) {
+        result[i] = -1;
+      }
+      for (int output : root.outputs) {
+        // the empty literal
+        result[output] = 0;
+        remaining--;
+      }
+      Node node = root;
+      for (int i = 0; i < input.length() && remaining > 0; i++) {
+        if (stopAtFirst && remaining < literals.size()) {
+          break;
+        }
+        char c = input.charAt(i);
+        while (node != root && !node.next.containsKey(c)) {
+          node = node.fail;
+        }
+        Node next = node.next.get(c);
+        node = (next == null) ? root : next;
+        for (int output : node.outputs) {
+          if (result[output] < 0) {
+            result[output] = i + 1 - literals.get(output).length();
+            remaining--;
+          }
+        }
+      }
+      return result;
+    }
+
+    private static final class Node {
+      final Map<Character, Node> next = new HashMap<Character, Node>();
+      final List<Integer> outputs = new ArrayList<Integer>();
+      Node fail;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The compiled regexes of the assertions of
+ * {@link com.google.common.testing.junit3.JUnitAsserts} and
+ * {@link com.google.common.testing.junit4.JUnitAsserts}, so that a regex
+ * asserted in a loop, or by every test of a suite, is compiled once. The
+ * {@value #MAX_PATTERNS} most recently used ones are kept.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class PatternCache {
+
+  public static final int MAX_PATTERNS = 256;
+
+  private static final Map<String, Pattern> patterns =
+      new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(
+            Map.Entry<String, Pattern> eldest) {
+          return size() > MAX_PATTERNS;
+        }
+      };
+
+  private static long hits;
+  private static long misses;
+
+  private PatternCache() { }
+
+  /**
+   * Returns {@code regex} compiled, as by {@link Pattern#compile(String)}.
+   */
+  public static Pattern compile(String regex) {
+    synchronized (patterns) {
+      Pattern result = patterns.get(regex);
+      if (result != null) {
+        hits++;
+        return result;
+      }
+    }
+    // Outside the lock, since it may take long, or throw
+    Pattern result = Pattern.compile(regex);
+    synchronized (patterns) {
+      misses++;
+      patterns.put(regex, result);
+    }
+    return result;
+  }
+
+  /** Returns how many regexes were found already compiled. */
+  public static long getHits() {
+    synchronized (patterns) {
+      return hits;
+    }
+  }
+
+  /** Returns how many regexes had to be compiled. */
+  public static long getMisses() {
+    synchronized (patterns) {
+      return misses;
+    }
+  }
+}
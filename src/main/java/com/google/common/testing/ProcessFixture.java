@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps track of the processes a test starts, and, at tear-down, stops them
+ * along with all their descendants:
+ *
+ * <pre>
+ *   ProcessFixture processes = ProcessFixture.create(this);
+ *   Process server = processes.start(new ProcessBuilder("server", "--port=0"));
+ * </pre>
+ *
+ * <p>All the processes are asked to terminate at once, and then given a
+ * single grace period, shared by all of them, to do so; whatever is left is
+ * then killed forcibly. Stopping many processes thus takes about as long as
+ * stopping the slowest one, rather than as long as stopping each of them
+ * in turn.
+ *
+ * <p>The descendants of a process are those it has when tear-down starts: a
+ * process whose parent already exited is no longer known to be one of them.
+ * Processes are told apart by their start time too, so a process that reused
+ * the process id of one that exited is left alone.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class ProcessFixture implements TearDown {
+
+  /** How long processes are given to terminate when not told otherwise. */
+  public static final Duration DEFAULT_GRACE_PERIOD = Duration.ofSeconds(5);
+
+  /** How long forcibly killed processes are given to be gone. */
+  static final Duration KILL_TIMEOUT = Duration.ofSeconds(10);
+
+  private final Duration gracePeriod;
+  private final Set<ProcessHandle> processes =
+      new LinkedHashSet<ProcessHandle>();
+
+  private ProcessFixture(Duration gracePeriod) {
+    this.gracePeriod = gracePeriod;
+  }
+
+  /**
+   * Creates a fixture that stops its processes, within
+   * {@link #DEFAULT_GRACE_PERIOD}, when {@code accepter} tears down.
+   */
+  public static ProcessFixture create(TearDownAccepter accepter) {
+    return create(accepter, DEFAULT_GRACE_PERIOD);
+  }
+
+  /**
+   * Creates a fixture that stops its processes, giving them
+   * {@code gracePeriod} to terminate, when {@code accepter} tears down.
+   */
+  public static ProcessFixture create(
+      TearDownAccepter accepter, Duration gracePeriod) {
+    if (gracePeriod.isNegative()) {
+      throw new IllegalArgumentException(
+          "negative grace period: " + gracePeriod);
+    }
+    ProcessFixture result = new ProcessFixture(gracePeriod);
+    accepter.addTearDown(result);
+    return result;
+  }
+
+  /** Starts a process with {@code builder}, and keeps track of it. */
+  public Process start(ProcessBuilder builder) throws IOException {
+    Process result = builder.start();
+    track(result.toHandle());
+    return result;
+  }
+
+  /** Keeps track of {@code process}, which was started some other way. */
+  public synchronized void track(ProcessHandle process) {
+    processes.add(process);
+  }
+
+  /**
+   * Don't call this method directly -- it fullfils the {@link TearDown}
+   * interface.
+   *
+   * @throws IllegalStateException if some processes are still running even
+   *     after being killed
+   */
+  public void tearDown()
+      throws InterruptedException, ExecutionException {
+    List<ProcessHandle> roots;
+    synchronized (this) {
+      roots = new ArrayList<ProcessHandle>(processes);
+      processes.clear();
+    }
+    List<ProcessHandle> stopping = stop(roots, gracePeriod);
+    if (!stopping.isEmpty()) {
+      throw new IllegalStateException(
+          "processes still running after being killed: " + stopping);
+    }
+  }
+
+  /**
+   * Asks {@code roots} and all their descendants to terminate, gives them
+   * {@code gracePeriod} to do so, and then kills those still running,
+   * waiting up to {@link #KILL_TIMEOUT} for them to be gone.
+   *
+   * @return the processes that are still running even then
+   */
+  static List<ProcessHandle> stop(List<ProcessHandle> roots,
+      Duration gracePeriod) throws InterruptedException, ExecutionException {
+    // Before stopping anything, since orphans are no longer descendants
+    List<ProcessHandle> tree = new ArrayList<ProcessHandle>();
+    for (ProcessHandle root : roots) {
+      if (root.isAlive()) {
+        tree.add(root);
+        root.descendants().forEach(tree::add);
+      }
+    }
+    for (ProcessHandle process : tree) {
+      if (!process.supportsNormalTermination() || gracePeriod.isZero()) {
+        process.destroyForcibly();
+      } else {
+        process.destroy();
+      }
+    }
+    List<ProcessHandle> running = awaitExit(tree, gracePeriod);
+    for (ProcessHandle process : running) {
+      process.destroyForcibly();
+    }
+    return awaitExit(running, KILL_TIMEOUT);
+  }
+
+  /**
+   * Waits up to {@code timeout}, in all, for {@code processes} to exit,
+   * returning those that are still running.
+   */
+  private static List<ProcessHandle> awaitExit(List<ProcessHandle> processes,
+      Duration timeout) throws InterruptedException, ExecutionException {
+    if (processes.isEmpty()) {
+      return processes;
+    }
+    CompletableFuture<?>[] exits = new CompletableFuture<?>[processes.size()];
+    for (int i = 0; i < exits.length; i++) {
+      exits[i] = processes.get(i).onExit();
+    }
+    try {
+      CompletableFuture.allOf(exits)
+          .get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      // Some are still running
+    }
+    List<ProcessHandle> result = new ArrayList<ProcessHandle>();
+    for (ProcessHandle process : processes) {
+      if (process.isAlive()) {
+        result.add(process);
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An optional limit on how long the regex assertions of
+ * {@link com.google.common.testing.junit3.JUnitAsserts} and
+ * {@link com.google.common.testing.junit4.JUnitAsserts} may spend on a single
+ * match, so that a pattern that backtracks catastrophically against a long
+ * input fails the test rather than burning CPU for hours.
+ *
+ * <p>The budget is enforced by matching against a {@link Guard}, a
+ * {@link CharSequence} that counts every character read by the regex engine
+ * as a step. Every so often it also checks the clock, and whether the
+ * current thread was interrupted, e.g. by a JUnit timeout.
+ *
+ * <p>There is no budget by default. It can be set with {@link #setTimeout}
+ * and {@link #setMaxSteps}, or with the {@value #TIMEOUT_MILLIS_PROPERTY} and
+ * {@value #MAX_STEPS_PROPERTY} system properties. A value of {@code 0} means
+ * "no limit".
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class RegexBudget {
+
+  public static final String TIMEOUT_MILLIS_PROPERTY =
+      "com.google.common.testing.RegexBudget.timeoutMillis";
+
+  public static final String MAX_STEPS_PROPERTY =
+      "com.google.common.testing.RegexBudget.maxSteps";
+
+  /** The clock and interrupt status are checked once every this many steps. */
+  private static final int CHECK_INTERVAL_MASK = 1024 - 1;
+
+  private static volatile long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(
+      Long.getLong(TIMEOUT_MILLIS_PROPERTY, 0));
+
+  private static volatile long maxSteps = Long.getLong(MAX_STEPS_PROPERTY, 0);
+
+  private RegexBudget() { }
+
+  /**
+   * Sets how long a single regex match may take. {@code 0} means no limit.
+   *
+   * @throws IllegalArgumentException if {@code timeout} is negative
+   */
+  public static void setTimeout(long timeout, TimeUnit unit) {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("timeout can't be negative");
+    }
+    timeoutNanos = unit.toNanos(timeout);
+  }
+
+  /**
+   * Returns how long a single regex match may take, or {@code 0} if there is
+   * no limit.
+   */
+  public static long getTimeout(TimeUnit unit) {
+    return unit.convert(timeoutNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Sets how many characters a single regex match may read, counting every
+   * re-read. {@code 0} means no limit.
+   *
+   * @throws IllegalArgumentException if {@code maxSteps} is negative
+   */
+  public static void setMaxSteps(long maxSteps) {
+    if (maxSteps < 0) {
+      throw new IllegalArgumentException("maxSteps can't be negative");
+    }
+    RegexBudget.maxSteps = maxSteps;
+  }
+
+  /**
+   * Returns how many characters a single regex match may read, or {@code 0}
+   * if there is no limit.
+   */
+  public static long getMaxSteps() {
+    return maxSteps;
+  }
+
+  /**
+   * Returns a {@link Guard} that enforces the current budget on matches
+   * against {@code input}, starting now, or {@code null} if there is no
+   * budget, or {@code input} is {@code null}.
+   */
+  public static Guard guard(CharSequence input) {
+    long timeoutNanos = RegexBudget.timeoutNanos;
+    long maxSteps = RegexBudget.maxSteps;
+    if (input == null || (timeoutNanos == 0 && maxSteps == 0)) {
+      return null;
+    }
+    return new Guard(input, timeoutNanos, maxSteps);
+  }
+
+  /**
+   * A {@link CharSequence} that throws {@link ExceededException} from
+   * {@link #charAt} once its budget is exhausted, until it is
+   * {@link #disarm disarmed}.
+   */
+  public static final class Guard implements CharSequence {
+
+    private final CharSequence delegate;
+    private final long start = System.nanoTime();
+    private final long timeoutNanos;
+    private final long maxSteps;
+    private long steps;
+    private boolean armed = true;
+
+    Guard(CharSequence delegate, long timeoutNanos, long maxSteps) {
+      this.delegate = delegate;
+      this.timeoutNanos = timeoutNanos;
+      this.maxSteps = maxSteps;
+    }
+
+    public char charAt(int index) {
+      if (armed) {
+        step();
+      }
+      return delegate.charAt(index);
+    }
+
+    public int length() {
+      return delegate.length();
+    }
+
+    /**
+     * Returns the subsequence of the guarded sequence itself, so e.g.
+     * {@link java.util.regex.MatchResult#group()} is never guarded.
+     */
+    public CharSequence subSequence(int start, int end) {
+      return delegate.subSequence(start, end);
+    }
+
+    @Override public String toString() {
+      return delegate.toString();
+    }
+
+    /**
+     * Stops enforcing the budget, e.g. so that the {@link
+     * java.util.regex.Matcher} that used this can be handed to a test.
+     */
+    public void disarm() {
+      armed = false;
+    }
+
+    private void step() {
+      steps++;
+      if (maxSteps > 0 && steps > maxSteps) {
+        throw exceeded("more than " + maxSteps + " steps");
+      }
+      if ((steps & CHECK_INTERVAL_MASK) == 0) {
+        if (timeoutNanos > 0 && System.nanoTime() - start > timeoutNanos) {
+          throw exceeded("more than "
+              + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+        }
+        if (Thread.currentThread().isInterrupted()) {
+          throw exceeded("until its thread was interrupted");
+        }
+      }
+    }
+
+    private ExceededException exceeded(String what) {
+      armed = false;
+      return new ExceededException("took " + what + " (" + steps
+          + " steps in "
+          + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+          + "ms) against an input of length:<" + delegate.length()
+          + ">, which usually means catastrophic backtracking");
+    }
+  }
+
+  /**
+   * Thrown by a {@link Guard} whose budget was exhausted.
+   */
+  public static final class ExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    ExceededException(String message) {
+      super(message);
+    }
+  }
+}
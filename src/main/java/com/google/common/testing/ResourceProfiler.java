@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures what each test costs -- wall time, CPU time of the thread running
+ * it, bytes it allocated, and garbage collections that happened meanwhile --
+ * and keeps the results in a JVM-wide registry, which is written out as CSV
+ * (or JSON, if the file name ends in {@code .json}) when the JVM exits.
+ * Comparing these files across runs shows which tests became more
+ * expensive, which JUnit's own reports, having only wall time, don't.
+ *
+ * <p>Use {@link com.google.common.testing.junit4.ResourceProfilingRule} for
+ * JUnit 4 tests. JUnit 3 tests that extend
+ * {@link com.google.common.testing.junit3.TearDownTestCase} are profiled
+ * when the {@value #ENABLED_PROPERTY} system property is {@code true}.
+ *
+ * <p>The results are written to the file named by the
+ * {@value #OUTPUT_PROPERTY} system property, or {@value #DEFAULT_OUTPUT} in
+ * the current directory. Nothing is written if no test was profiled.
+ *
+ * <p>CPU time and allocated bytes are those of the current thread, and are
+ * {@code -1} where the JVM can't measure them. GC counts and times are
+ * JVM-wide, so they are only meaningful when tests don't run in parallel.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class ResourceProfiler {
+
+  public static final String ENABLED_PROPERTY =
+      "com.google.common.testing.ResourceProfiler.enabled";
+
+  public static final String OUTPUT_PROPERTY =
+      "com.google.common.testing.ResourceProfiler.output";
+
+  public static final String DEFAULT_OUTPUT = "resource-profiles.csv";
+
+  private static final Logger logger =
+      Logger.getLogger(ResourceProfiler.class.getName());
+
+  private static final ThreadMXBean threads =
+      ManagementFactory.getThreadMXBean();
+
+  private static final Queue<Profile> profiles =
+      new ConcurrentLinkedQueue<Profile>();
+
+  private static final AtomicBoolean dumpScheduled = new AtomicBoolean();
+
+  private ResourceProfiler() { }
+
+  /**
+   * Whether tests that are not explicitly profiled should be, according to
+   * the {@value #ENABLED_PROPERTY} system property.
+   */
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(ENABLED_PROPERTY);
+  }
+
+  /**
+   * Starts measuring the current thread. Call {@link Measurement#stop} from
+   * the same thread when the test is done.
+   */
+  public static Measurement start() {
+    return new Measurement();
+  }
+
+  /**
+   * Returns the profiles of all tests recorded so far, in the order they
+   * finished.
+   */
+  public static List<Profile> getProfiles() {
+    return new ArrayList<Profile>(profiles);
+  }
+
+  /**
+   * Forgets all the profiles recorded so far.
+   */
+  public static void clear() {
+    profiles.clear();
+  }
+
+  /**
+   * Writes all the profiles recorded so far to {@code out}, as CSV with a
+   * header line.
+   */
+  public static void writeCsv(Appendable out) throws IOException {
+    out.append("test,wallNanos,cpuNanos,allocatedBytes,gcCount,gcMillis\n");
+    for (Profile profile : profiles) {
+      out.append('"').append(profile.test.replace("\"", "\"\"")).append('"')
+          .append(',').append(String.valueOf(profile.wallNanos))
+          .append(',').append(String.valueOf(profile.cpuNanos))
+          .append(',').append(String.valueOf(profile.allocatedBytes))
+          .append(',').append(String.valueOf(profile.gcCount))
+          .append(',').append(String.valueOf(profile.gcMillis))
+          .append('\n');
+    }
+  }
+
+  /**
+   * Writes all the profiles recorded so far to {@code out}, as a JSON array
+   * of objects.
+   */
+  public static void writeJson(Appendable out) throws IOException {
+    out.append('[');
+    String separator = "\n";
+    for (Profile profile : profiles) {
+      out.append(separator)
+          .append("  {\"test\": \"").append(jsonEscape(profile.test))
+          .append("\", \"wallNanos\": ").append(String.valueOf(profile.wallNanos))
+          .append(", \"cpuNanos\": ").append(String.valueOf(profile.cpuNanos))
+          .append(", \"allocatedBytes\": ")
+          .append(String.valueOf(profile.allocatedBytes))
+          .append(", \"gcCount\": ").append(String.valueOf(profile.gcCount))
+          .append(", \"gcMillis\": ").append(String.valueOf(profile.gcMillis))
+          .append('}');
+      separator = ",\n";
+    }
+    out.append("\n]\n");
+  }
+
+  static void record(Profile profile) {
+    profiles.add(profile);
+    if (dumpScheduled.compareAndSet(false, true)) {
+      Runtime.getRuntime().addShutdownHook(new Thread("ResourceProfiler dump") {
+        @Override public void run() {
+          dump();
+        }
+      });
+    }
+  }
+
+  private static void dump() {
+    if (profiles.isEmpty()) {
+      return;
+    }
+    String output = System.getProperty(OUTPUT_PROPERTY, DEFAULT_OUTPUT);
+    try {
+      Writer writer = new FileWriter(output);
+      try {
+        if (output.endsWith(".json")) {
+          writeJson(writer);
+        } else {
+          writeCsv(writer);
+        }
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "could not write resource profiles to " + output, e);
+    }
+  }
+
+  private static String jsonEscape(String s) {
+    StringBuilder result = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '"' || c == '\\') {
+        result.append('\\').append(c);
+      } else if (c < 0x20) {
+        result.append(String.format("\\u%04x", (int) c));
+      } else {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+
+  static long currentThreadCpuTime() {
+    return threads.isCurrentThreadCpuTimeSupported()
+        ? threads.getCurrentThreadCpuTime()
+        : -1;
+  }
+
+  static long currentThreadAllocatedBytes() {
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunThreads =
+          (com.sun.management.ThreadMXBean) threads;
+      if (sunThreads.isThreadAllocatedMemorySupported()
+          && sunThreads.isThreadAllocatedMemoryEnabled()) {
+        return sunThreads.getThreadAllocatedBytes(
+            Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  private static long[] gcCountAndMillis() {
+    long count = 0;
+    long millis = 0;
+    for (GarbageCollectorMXBean gc
+        : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return new long[] {count, millis};
+  }
+
+  private static long delta(long start, long end) {
+    return (start < 0 || end < 0) ? -1 : end - start;
+  }
+
+  /**
+   * The resources used by the current thread from when it was
+   * {@linkplain ResourceProfiler#start() started}.
+   */
+  public static final class Measurement {
+
+    private final long startNanos = System.nanoTime();
+    private final long startCpuNanos = currentThreadCpuTime();
+    private final long startAllocatedBytes = currentThreadAllocatedBytes();
+    private final long[] startGc = gcCountAndMillis();
+
+    private Measurement() { }
+
+    /**
+     * Stops measuring, and records the result under the name {@code test}.
+     */
+    public Profile stop(String test) {
+      long[] endGc = gcCountAndMillis();
+      Profile result = new Profile(test,
+          System.nanoTime() - startNanos,
+          delta(startCpuNanos, currentThreadCpuTime()),
+          delta(startAllocatedBytes, currentThreadAllocatedBytes()),
+          endGc[0] - startGc[0],
+          endGc[1] - startGc[1]);
+      record(result);
+      return result;
+    }
+  }
+
+  /**
+   * What a single test cost.
+   */
+  public static final class Profile {
+
+    public final String test;
+    public final long wallNanos;
+    public final long cpuNanos;
+    public final long allocatedBytes;
+    public final long gcCount;
+    public final long gcMillis;
+
+    Profile(String test, long wallNanos, long cpuNanos, long allocatedBytes,
+        long gcCount, long gcMillis) {
+      this.test = test;
+      this.wallNanos = wallNanos;
+      this.cpuNanos = cpuNanos;
+      this.allocatedBytes = allocatedBytes;
+      this.gcCount = gcCount;
+      this.gcMillis = gcMillis;
+    }
+
+    @Override public String toString() {
+      return test + ": wall=" + wallNanos + "ns cpu=" + cpuNanos
+          + "ns allocated=" + allocatedBytes + "B gc=" + gcCount + " ("
+          + gcMillis + "ms)";
+    }
+  }
+}
@@ -23,19 +23,25 @@ import java.util.logging.Logger;
  * Simple utility for when you want to create a {@link TearDown} that may throw 
  * an exception but should not fail a test when it does. Use it just like a
  * {@link TearDown}, except override {@link #sloppyTearDown()} instead.
- * 
+ *
+ * <p>Exceptions are logged in full only the first time; alike ones thrown
+ * later are counted, and the counts are logged when the JVM exits. See
+ * {@link FailureLog}.
+ *
  * @author Luiz-Otavio Zorzella
  */
 public abstract class SloppyTearDown implements TearDown {
 
   public static final Logger logger = Logger.getLogger(SloppyTearDown.class.getName());
 
+  static final FailureLog failures =
+      new FailureLog(logger, Level.INFO, "exception thrown during tearDown");
+
   public final void tearDown() {
     try {
       sloppyTearDown(); 
     } catch (Throwable t) {
-      logger.log(Level.INFO,
-          "exception thrown during tearDown: " + t.getMessage(), t);
+      failures.log(t);
     }
   }
   
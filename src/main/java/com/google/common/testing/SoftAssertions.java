@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+/**
+ * Records assertion failures instead of letting them stop a test, and
+ * reports all of them at once, at tear-down time. This saves a
+ * fix-and-rerun cycle per failure on tests that check many independent
+ * properties. Example:
+ *
+ * <pre>
+ * {@code @Test}
+ * public void scenario() throws Exception {
+ *   SoftAssertions soft = SoftAssertions.create(this);
+ *   Result result = runScenario();
+ *   soft.check(() -&gt; assertContainsRegex("done", result.log()));
+ *   soft.check(() -&gt; assertNotContainsAnyRegex(FORBIDDEN, result.log()));
+ *   soft.check(() -&gt; assertContentsEqual(GOLDEN, result.output()));
+ * }
+ * </pre>
+ *
+ * <p>Any {@link AssertionError} thrown by a check -- which includes all
+ * failures from {@link com.google.common.testing.junit3.JUnitAsserts},
+ * {@link com.google.common.testing.junit4.JUnitAsserts} and JUnit itself --
+ * is recorded; any other exception is propagated as usual. The messages of
+ * {@code JUnitAsserts} failures are already bounded by {@link Abbreviator},
+ * and identical failures (e.g. the same check failing the same way in a
+ * loop) are grouped as in {@link FailureGroups}, so recording many failures
+ * stays cheap. Unlike for tear-downs, failures whose messages differ only by
+ * numbers are kept apart, since those numbers are usually what tells the
+ * failed checks apart.
+ *
+ * <p>At tear-down, if anything was recorded, a single exception is thrown,
+ * which is a {@link ClusterException} if more than one check failed. Since
+ * JUnit 3's {@link com.google.common.testing.junit3.TearDownTestCase} only
+ * logs exceptions thrown by its {@link TearDown}s, JUnit 3 tests should call
+ * {@link #verify()} at the end of the test instead.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class SoftAssertions {
+
+  /**
+   * A check that may fail by throwing an {@link AssertionError}.
+   */
+  public interface Check {
+    void run() throws Exception;
+  }
+
+  private FailureGroups failures = new FailureGroups(false);
+
+  private SoftAssertions() { }
+
+  /**
+   * Returns a new {@link SoftAssertions} whose failures are reported when
+   * {@code accepter} runs its {@link TearDown}s.
+   */
+  public static SoftAssertions create(TearDownAccepter accepter) {
+    final SoftAssertions result = new SoftAssertions();
+    accepter.addTearDown(new TearDown() {
+      public void tearDown() {
+        result.verify();
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Runs {@code check}, recording rather than throwing any
+   * {@link AssertionError} it throws.
+   *
+   * @throws Exception whatever {@code check} throws, except for
+   *     {@link AssertionError}s
+   */
+  public void check(Check check) throws Exception {
+    try {
+      check.run();
+    } catch (AssertionError e) {
+      synchronized (this) {
+        failures.add(e);
+      }
+    }
+  }
+
+  /**
+   * Returns how many checks failed since this was created, or since the last
+   * call to {@link #verify()}.
+   */
+  public synchronized int failureCount() {
+    return failures.total();
+  }
+
+  /**
+   * Throws the failures recorded since this was created, or since the last
+   * call to {@link #verify()}, if there were any; and forgets them.
+   */
+  public void verify() {
+    FailureGroups toReport;
+    synchronized (this) {
+      if (failures.isEmpty()) {
+        return;
+      }
+      toReport = failures;
+      failures = new FailureGroups(false);
+    }
+    if (toReport.total() == 1) {
+      // Keep it a test failure, rather than an error wrapping one
+      throw (AssertionError) toReport.exemplars().get(0);
+    }
+    throw ClusterException.create(toReport);
+  }
+}
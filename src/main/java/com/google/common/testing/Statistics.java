@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Live statistics of this library, e.g. for watching whether a long-running
+ * soak test piles up tear-downs or log records. They can be read directly,
+ * or through JMX once {@linkplain #register registered} with the platform
+ * MBean server under {@value #OBJECT_NAME} -- which happens as soon as
+ * any is recorded if the {@value #JMX_PROPERTY} system property is
+ * {@code true}.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class Statistics implements StatisticsMXBean {
+
+  public static final String OBJECT_NAME =
+      "com.google.common.testing:type=Statistics";
+
+  public static final String JMX_PROPERTY =
+      "com.google.common.testing.Statistics.jmx";
+
+  private static final Statistics INSTANCE = new Statistics();
+
+  private static final AtomicLong tearDownsRegistered = new AtomicLong();
+  private static final AtomicLong tearDownsRun = new AtomicLong();
+  private static final AtomicLong tearDownsFailed = new AtomicLong();
+  private static final AtomicLong tearDownNanos = new AtomicLong();
+  private static final AtomicLong pendingTearDowns = new AtomicLong();
+  private static final AtomicLong logRecordsPublished = new AtomicLong();
+  private static final AtomicLong logRecordsDropped = new AtomicLong();
+
+  /** The live handlers, which are forgotten once garbage collected. */
+  private static final Map<TestLogHandler, Boolean> handlers =
+      new WeakHashMap<TestLogHandler, Boolean>();
+
+  static {
+    if (Boolean.getBoolean(JMX_PROPERTY)) {
+      register();
+    }
+  }
+
+  private Statistics() { }
+
+  /** Returns the statistics. */
+  public static Statistics get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Registers the statistics with the platform MBean server, unless they
+   * already are.
+   */
+  public static void register() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+    } catch (InstanceAlreadyExistsException e) {
+      // Already registered
+    } catch (JMException e) {
+      throw new IllegalStateException(
+          "could not register " + OBJECT_NAME, e);
+    }
+  }
+
+  static void tearDownAdded() {
+    tearDownsRegistered.incrementAndGet();
+    pendingTearDowns.incrementAndGet();
+  }
+
+  static void tearDownsTaken(int count) {
+    pendingTearDowns.addAndGet(-count);
+  }
+
+  static void tearDownRan(long nanos, boolean failed) {
+    tearDownsRun.incrementAndGet();
+    tearDownNanos.addAndGet(nanos);
+    if (failed) {
+      tearDownsFailed.incrementAndGet();
+    }
+  }
+
+  static void register(TestLogHandler handler) {
+    synchronized (handlers) {
+      handlers.put(handler, Boolean.TRUE);
+    }
+  }
+
+  static void logRecordPublished() {
+    logRecordsPublished.incrementAndGet();
+  }
+
+  static void logRecordDropped() {
+    logRecordsDropped.incrementAndGet();
+  }
+
+  public long getTearDownsRegistered() {
+    return tearDownsRegistered.get();
+  }
+
+  public long getTearDownsRun() {
+    return tearDownsRun.get();
+  }
+
+  public long getTearDownsFailed() {
+    return tearDownsFailed.get();
+  }
+
+  public long getTearDownMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(tearDownNanos.get());
+  }
+
+  public long getPendingTearDowns() {
+    return pendingTearDowns.get();
+  }
+
+  public long getLogRecordsPublished() {
+    return logRecordsPublished.get();
+  }
+
+  public long getLogRecordsRetained() {
+    long result = 0;
+    for (TestLogHandler handler : liveHandlers()) {
+      result += handler.recordsRetained();
+    }
+    return result;
+  }
+
+  public long getLogBytesRetained() {
+    long result = 0;
+    for (TestLogHandler handler : liveHandlers()) {
+      result += handler.bytesRetained();
+    }
+    return result;
+  }
+
+  public long getLogRecordsDropped() {
+    return logRecordsDropped.get();
+  }
+
+  public double getPatternCacheHitRate() {
+    long hits = PatternCache.getHits();
+    long lookups = hits + PatternCache.getMisses();
+    return (lookups == 0) ? 0 : (double) hits / lookups;
+  }
+
+  private static List<TestLogHandler> liveHandlers() {
+    synchronized (handlers) {
+      return new ArrayList<TestLogHandler>(handlers.keySet());
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+/**
+ * The live statistics of this library that {@link Statistics} exposes
+ * through JMX. All counts are since the JVM started.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public interface StatisticsMXBean {
+
+  /** How many tear-downs were added to {@link TearDownStack}s. */
+  long getTearDownsRegistered();
+
+  /** How many tear-downs {@link TearDownStack}s ran. */
+  long getTearDownsRun();
+
+  /** How many of the tear-downs that ran threw. */
+  long getTearDownsFailed();
+
+  /** How long, in all, the tear-downs that ran took, in milliseconds. */
+  long getTearDownMillis();
+
+  /**
+   * How many tear-downs were added to {@link TearDownStack}s and not run
+   * yet, including those of stacks that were dropped without being run.
+   */
+  long getPendingTearDowns();
+
+  /** How many records were published to {@link TestLogHandler}s. */
+  long getLogRecordsPublished();
+
+  /** How many records live {@link TestLogHandler}s hold. */
+  long getLogRecordsRetained();
+
+  /**
+   * A rough estimate of the memory held by the records of live
+   * {@link TestLogHandler}s, in bytes.
+   */
+  long getLogBytesRetained();
+
+  /**
+   * How many records bounded {@link TestLogHandler}s dropped to make room
+   * for newer ones.
+   */
+  long getLogRecordsDropped();
+
+  /**
+   * The fraction of the regexes asserted by {@code JUnitAsserts} that were
+   * found already compiled in the {@link PatternCache}, or {@code 0} if none
+   * were asserted.
+   */
+  double getPatternCacheHitRate();
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Runs a test body concurrently on several threads, over several rounds,
+ * to shake out races. In each round, all threads are released at once by a
+ * {@link CyclicBarrier}, run the body once, and wait for each other before
+ * the next round starts.
+ *
+ * <p>Each run of the body gets its own {@link TearDownStack}, which is run
+ * right after it, on the same thread. While the body runs,
+ * {@link #currentTearDownAccepter()} returns that stack, which is how the
+ * {@code addTearDown} methods of
+ * {@link com.google.common.testing.junit3.TearDownTestCase} and
+ * {@link com.google.common.testing.junit4.TearDownMethodRule} find it.
+ *
+ * <p>All rounds run even if some runs fail. Failures of all runs, and of
+ * their {@link TearDown}s, are then thrown together: alike failures, such as
+ * the same assertion failing on every thread, are grouped as by
+ * {@link FailureGroups}. The duration and throughput of each round are
+ * logged.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class StressRun {
+
+  /**
+   * The code to run concurrently.
+   */
+  public interface Body {
+    void run() throws Throwable;
+  }
+
+  private static final Logger logger =
+      Logger.getLogger(StressRun.class.getName());
+
+  private static final ThreadLocal<TearDownStack> currentStack =
+      new ThreadLocal<TearDownStack>();
+
+  private StressRun() { }
+
+  /**
+   * Returns the {@link TearDownStack} of the run of a {@link Body} going on
+   * in the current thread, or {@code null} if there is none.
+   */
+  public static TearDownAccepter currentTearDownAccepter() {
+    return currentStack.get();
+  }
+
+  /**
+   * Makes {@link #currentTearDownAccepter()} return {@code null} on the
+   * current thread until {@link #resume} is called with the result, so that
+   * {@link TearDown}s registered meanwhile outlive the current run.
+   */
+  static TearDownStack suspend() {
+    TearDownStack result = currentStack.get();
+    currentStack.remove();
+    return result;
+  }
+
+  /** Undoes {@link #suspend()}, given what it returned. */
+  static void resume(TearDownStack stack) {
+    if (stack != null) {
+      currentStack.set(stack);
+    }
+  }
+
+  /**
+   * Runs {@code body} on {@code threads} threads at once, {@code rounds}
+   * times, returning statistics about each round.
+   *
+   * @throws Throwable what the single failing run of {@code body}, or its
+   *     {@link TearDown}s, threw; or a {@link ClusterException} if there was
+   *     more than one failure
+   */
+  public static List<RoundStats> run(int threads, final int rounds,
+      final Body body) throws Throwable {
+    if (threads < 1 || rounds < 1) {
+      throw new IllegalArgumentException(
+          "threads and rounds must be positive: " + threads + ", " + rounds);
+    }
+    final FailureGroups failures = new FailureGroups();
+    final List<RoundStats> stats = new ArrayList<RoundStats>(rounds);
+    final AtomicInteger roundFailures = new AtomicInteger();
+    final long[] roundStart = new long[1];
+    final int threadCount = threads;
+    final CyclicBarrier start = new CyclicBarrier(threads, new Runnable() {
+      public void run() {
+        roundStart[0] = System.nanoTime();
+      }
+    });
+    final CyclicBarrier end = new CyclicBarrier(threads, new Runnable() {
+      public void run() {
+        RoundStats round = new RoundStats(stats.size() + 1, threadCount,
+            System.nanoTime() - roundStart[0], roundFailures.getAndSet(0));
+        stats.add(round);
+        logger.info(round.toString());
+      }
+    });
+    List<Thread> workers = new ArrayList<Thread>(threads);
+    for (int i = 0; i < threads; i++) {
+      workers.add(new Thread("StressRun-" + i) {
+        @Override public void run() {
+          try {
+            for (int round = 0; round < rounds; round++) {
+              start.await();
+              if (!runOnce(body)) {
+                roundFailures.incrementAndGet();
+              }
+              end.await();
+            }
+          } catch (InterruptedException e) {
+            addFailure(e);
+          } catch (BrokenBarrierException e) {
+            addFailure(e);
+          }
+        }
+
+        /** Returns whether {@code body} and its tear-downs succeeded. */
+        private boolean runOnce(Body body) {
+          TearDownStack stack = new TearDownStack();
+          currentStack.set(stack);
+          boolean succeeded = true;
+          try {
+            body.run();
+          } catch (Throwable t) {
+            addFailure(t);
+            succeeded = false;
+          } finally {
+            currentStack.remove();
+            try {
+              stack.runTearDown();
+            } catch (ClusterException e) {
+              synchronized (failures) {
+                failures.addAll(e);
+              }
+              succeeded = false;
+            } catch (Throwable t) {
+              addFailure(t);
+              succeeded = false;
+            }
+          }
+          return succeeded;
+        }
+
+        private void addFailure(Throwable t) {
+          synchronized (failures) {
+            failures.add(t);
+          }
+        }
+      });
+    }
+    for (Thread worker : workers) {
+      worker.start();
+    }
+    try {
+      for (Thread worker : workers) {
+        worker.join();
+      }
+    } catch (InterruptedException e) {
+      for (Thread worker : workers) {
+        worker.interrupt();
+      }
+      throw e;
+    }
+    synchronized (failures) {
+      if (failures.total() == 1) {
+        throw failures.exemplars().get(0);
+      } else if (!failures.isEmpty()) {
+        throw ClusterException.create(failures);
+      }
+    }
+    return Collections.unmodifiableList(stats);
+  }
+
+  /**
+   * What happened during a round.
+   */
+  public static final class RoundStats {
+
+    /** The number of the round, starting at 1. */
+    public final int round;
+
+    /** How many times the body ran, one per thread. */
+    public final int runs;
+
+    /** How long it took from the start of the round to the end of all runs. */
+    public final long nanos;
+
+    /** How many runs failed. */
+    public final int failures;
+
+    RoundStats(int round, int runs, long nanos, int failures) {
+      this.round = round;
+      this.runs = runs;
+      this.nanos = nanos;
+      this.failures = failures;
+    }
+
+    /** Returns how many runs completed per second during the round. */
+    public double throughput() {
+      return (nanos == 0) ? Double.POSITIVE_INFINITY : runs * 1e9 / nanos;
+    }
+
+    @Override public String toString() {
+      return String.format(Locale.ROOT,
+          "round %d: %d runs in %s (%.1f runs/s), %d failed", round, runs,
+          CostMeasurements.formatNanos(nanos), throughput(), failures);
+    }
+  }
+}
@@ -0,0 +1,583 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A journal of {@link TearDown}s that still have to run, kept on disk so
+ * that what they would have cleaned up is reclaimed even if the JVM dies
+ * before they run, e.g. because it ran out of memory or was killed by a
+ * timeout:
+ *
+ * <pre>
+ *   Path dir = Files.createTempDirectory("index");
+ *   TearDownJournal.getDefault().deleteOnTearDown(this, dir);
+ * </pre>
+ *
+ * <p>Each JVM appends to a file of its own in the journal directory, named
+ * by the {@value #DIR_PROPERTY} system property or, by default,
+ * {@value #DEFAULT_DIR}-<i>user name</i> in the temporary directory, which
+ * only its owner may access: a line when a durable
+ * {@link TearDown} is registered, describing what it cleans up, and another
+ * once it ran. The first time a JVM uses the {@linkplain #getDefault default
+ * journal}, it {@linkplain #recoverOrphans recovers} the files of JVMs that
+ * are no longer running, cleaning up, in parallel, what their
+ * {@link TearDown}s didn't. Processes are killed first, since they may be
+ * using the files to delete. Only the journals of the current user are
+ * recovered, since whoever can write one can have it delete files and kill
+ * processes.
+ *
+ * <p>Lines are written straight to the file, without buffering, so that
+ * they survive the death of the JVM; they do not necessarily survive that
+ * of the machine. Processes are only killed if they are the same ones --
+ * down to the time they started -- that were registered, so that a process
+ * that reused the process id of a dead one is not killed by mistake; if
+ * when either started isn't known, the process is left running, and a
+ * warning logged. Lock files are released by deleting them.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class TearDownJournal {
+
+  public static final String DIR_PROPERTY =
+      "com.google.common.testing.TearDownJournal.dir";
+
+  public static final String DEFAULT_DIR = "tl4j-teardown-journal";
+
+  /** What a durable {@link TearDown} cleans up. */
+  enum Kind {
+    /** Deletes a file, or a directory and all it contains. */
+    DELETE_PATH,
+    /**
+     * Kills a process and all its descendants. The argument is the process
+     * id and the time it started, in epoch milliseconds.
+     */
+    KILL_PROCESS
+  }
+
+  private static final Logger logger =
+      Logger.getLogger(TearDownJournal.class.getName());
+
+  private static final String SUFFIX = ".journal";
+
+  private static final long KILL_TIMEOUT_SECONDS = 10;
+
+  private static final Set<PosixFilePermission> OWNER_ONLY =
+      PosixFilePermissions.fromString("rwx------");
+
+  private static TearDownJournal defaultJournal;
+
+  private final Path dir;
+  private final String owner;
+  private final Path file;
+  private final Map<Long, String> pending = new LinkedHashMap<Long, String>();
+  private FileChannel channel;
+  private long nextId;
+  private int recovered;
+
+  /**
+   * Creates the journal of the process {@code pid} that started at
+   * {@code startMillis}, in {@code dir}.
+   */
+  TearDownJournal(Path dir, long pid, long startMillis) {
+    this.dir = dir;
+    this.owner = pid + "-" + startMillis;
+    this.file = dir.resolve(owner + SUFFIX);
+  }
+
+  /**
+   * Opens the journal of this JVM in {@code dir}, which is created, only
+   * accessible by its owner, if it doesn't exist yet. Its file is only
+   * created when the first durable {@link TearDown} is registered.
+   */
+  public static TearDownJournal open(Path dir) throws IOException {
+    if (isPosix(dir)) {
+      Files.createDirectories(dir,
+          PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+    } else {
+      Files.createDirectories(dir);
+    }
+    ProcessHandle self = ProcessHandle.current();
+    return new TearDownJournal(dir, self.pid(), startMillis(self));
+  }
+
+  /**
+   * Returns the journal of this JVM in the directory named by the
+   * {@value #DIR_PROPERTY} system property, recovering the journals left
+   * there by dead JVMs the first time it is called. The journal file is
+   * removed when the JVM exits, unless some of its {@link TearDown}s never
+   * ran.
+   *
+   * @throws IllegalStateException if the directory can't be created, or if
+   *     it is the default one and another user owns it
+   */
+  public static synchronized TearDownJournal getDefault() {
+    if (defaultJournal == null) {
+      String property = System.getProperty(DIR_PROPERTY);
+      Path dir = (property != null) ? Paths.get(property)
+          : Paths.get(System.getProperty("java.io.tmpdir"), DEFAULT_DIR + "-"
+              + System.getProperty("user.name").replaceAll("[^\\w.-]", "_"));
+      try {
+        defaultJournal = open(dir);
+        if (property == null) {
+          makePrivate(dir);
+        }
+      } catch (IOException e) {
+        throw new IllegalStateException(
+            "could not create the tear-down journal directory " + dir, e);
+      }
+      defaultJournal.recoverOrphans();
+      final TearDownJournal journal = defaultJournal;
+      Runtime.getRuntime().addShutdownHook(new Thread("TearDownJournal close") {
+        @Override public void run() {
+          journal.close();
+        }
+      });
+    }
+    return defaultJournal;
+  }
+
+  /**
+   * Registers a {@link TearDown} with {@code accepter} that deletes
+   * {@code path} -- a file, or a directory and all it contains -- and
+   * journals it, so that it is deleted even if the JVM dies first.
+   */
+  public void deleteOnTearDown(TearDownAccepter accepter, final Path path) {
+    final long id = record(Kind.DELETE_PATH, path.toAbsolutePath().toString());
+    accepter.addTearDown(new TearDown() {
+      public void tearDown() throws IOException {
+        delete(path);
+        done(id);
+      }
+    });
+  }
+
+  /**
+   * Registers a {@link TearDown} with {@code accepter} that kills
+   * {@code process} and all its descendants, and journals it, so that they
+   * are killed even if the JVM dies first.
+   */
+  public void killOnTearDown(
+      TearDownAccepter accepter, final ProcessHandle process) {
+    final long id = record(
+        Kind.KILL_PROCESS, process.pid() + " " + startMillis(process));
+    accepter.addTearDown(new TearDown() {
+      public void tearDown() throws Exception {
+        kill(process);
+        done(id);
+      }
+    });
+  }
+
+  /**
+   * Cleans up what the journals of JVMs that are no longer running say their
+   * {@link TearDown}s didn't, in parallel. A journal is first renamed after
+   * this JVM, so that no other JVM recovers it at the same time, and so that
+   * what this JVM fails to clean up is tried again after it died. Failures
+   * are logged.
+   *
+   * @return how many things were cleaned up
+   */
+  public int recoverOrphans() {
+    UserPrincipal user;
+    try {
+      user = currentUser(dir);
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "could not look up the current user, so not "
+          + "recovering the tear-down journals in " + dir, e);
+      return 0;
+    }
+    List<Path> orphans = new ArrayList<Path>();
+    try {
+      DirectoryStream<Path> journals =
+          Files.newDirectoryStream(dir, "*" + SUFFIX);
+      try {
+        for (Path journal : journals) {
+          if (!belongsTo(journal, user)) {
+            continue;
+          }
+          Path claimed = claim(journal);
+          if (claimed != null) {
+            orphans.add(claimed);
+          }
+        }
+      } finally {
+        journals.close();
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "could not list tear-down journals in " + dir, e);
+      return 0;
+    }
+    int result = 0;
+    for (Path orphan : orphans) {
+      result += recover(orphan);
+    }
+    return result;
+  }
+
+  /**
+   * Closes this journal, removing its file unless some of its
+   * {@link TearDown}s never ran.
+   */
+  public synchronized void close() {
+    if (channel == null) {
+      return;
+    }
+    try {
+      channel.close();
+      channel = null;
+      if (pending.isEmpty()) {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "could not close tear-down journal " + file, e);
+    }
+  }
+
+  /** Returns the file this journal is kept in. */
+  Path getFile() {
+    return file;
+  }
+
+  private synchronized long record(Kind kind, String argument) {
+    long id = nextId++;
+    String line = "ADD\t" + id + "\t" + kind + "\t" + escape(argument);
+    append(line);
+    pending.put(id, line);
+    return id;
+  }
+
+  private synchronized void done(long id) {
+    append("DONE\t" + id);
+    pending.remove(id);
+  }
+
+  private void append(String line) {
+    try {
+      if (channel == null) {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      }
+      ByteBuffer bytes =
+          ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+      while (bytes.hasRemaining()) {
+        channel.write(bytes);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "could not write to tear-down journal " + file, e);
+    }
+  }
+
+  /**
+   * Renames {@code journal} after this JVM if the JVM it belongs to is no
+   * longer running, returning its new name, or {@code null} if it's not an
+   * orphan or another JVM claimed it first.
+   */
+  private Path claim(Path journal) {
+    String name = journal.getFileName().toString();
+    String[] owner = name.substring(0, name.length() - SUFFIX.length())
+        .split("-");
+    if (owner.length < 2) {
+      return null;
+    }
+    try {
+      long pid = Long.parseLong(owner[0]);
+      long start = Long.parseLong(owner[1]);
+      if (isRunning(pid, start)) {
+        return null;
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    Path claimed;
+    synchronized (this) {
+      claimed = dir.resolve(this.owner + "-r" + recovered++ + SUFFIX);
+    }
+    try {
+      Files.move(journal, claimed, StandardCopyOption.ATOMIC_MOVE);
+      return claimed;
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /** Cleans up what {@code journal} lists, returning how much it did. */
+  private int recover(Path journal) {
+    Map<Long, String[]> entries = new LinkedHashMap<Long, String[]>();
+    try {
+      for (String line
+          : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+        String[] fields = line.split("\t", -1);
+        try {
+          if (fields[0].equals("ADD") && fields.length == 4) {
+            Kind.valueOf(fields[2]);
+            entries.put(Long.parseLong(fields[1]), fields);
+          } else if (fields[0].equals("DONE") && fields.length == 2) {
+            entries.remove(Long.parseLong(fields[1]));
+          }
+        } catch (IllegalArgumentException e) {
+          // A line cut short by the death of its JVM
+        }
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "could not read tear-down journal " + journal, e);
+      return 0;
+    }
+    List<String[]> failed = new ArrayList<String[]>();
+    int result = 0;
+    for (final Kind kind : Kind.values()) {
+      List<String[]> ofKind = new ArrayList<String[]>();
+      for (String[] entry : entries.values()) {
+        if (Kind.valueOf(entry[2]) == kind) {
+          ofKind.add(entry);
+        }
+      }
+      if (ofKind.isEmpty()) {
+        continue;
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(
+          Math.min(ofKind.size(), Runtime.getRuntime().availableProcessors()));
+      try {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (final String[] entry : ofKind) {
+          futures.add(executor.submit(new Callable<Void>() {
+            public Void call() throws Exception {
+              cleanUp(kind, unescape(entry[3]));
+              return null;
+            }
+          }));
+        }
+        for (int i = 0; i < ofKind.size(); i++) {
+          try {
+            futures.get(i).get();
+            result++;
+          } catch (ExecutionException e) {
+            logger.log(Level.WARNING, "could not clean up " + kind + " "
+                + unescape(ofKind.get(i)[3]) + " left by " + journal,
+                e.getCause());
+            failed.add(ofKind.get(i));
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.add(ofKind.get(i));
+          }
+        }
+      } finally {
+        executor.shutdown();
+      }
+    }
+    try {
+      if (failed.isEmpty()) {
+        Files.delete(journal);
+      } else {
+        List<String> lines = new ArrayList<String>();
+        for (String[] entry : failed) {
+          lines.add(String.join("\t", entry));
+        }
+        Files.write(journal, lines, StandardCharsets.UTF_8);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "could not update tear-down journal " + journal, e);
+    }
+    return result;
+  }
+
+  /**
+   * Whether {@code journal} belongs to {@code user}, logging it if it
+   * belongs to someone else. A journal that another JVM just claimed does
+   * not count.
+   */
+  private static boolean belongsTo(Path journal, UserPrincipal user) {
+    UserPrincipal owner;
+    try {
+      owner = Files.getOwner(journal, LinkOption.NOFOLLOW_LINKS);
+    } catch (IOException e) {
+      return false;
+    }
+    if (!owner.equals(user)) {
+      logger.warning("not recovering tear-down journal " + journal
+          + ", which belongs to " + owner.getName() + ", not to "
+          + user.getName());
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Makes sure that {@code dir} belongs to the current user, and that no one
+   * else may access it, since whoever can write journals to it can have them
+   * delete files and kill processes.
+   */
+  private static void makePrivate(Path dir) throws IOException {
+    UserPrincipal owner = Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS);
+    UserPrincipal user = currentUser(dir);
+    if (!owner.equals(user)) {
+      throw new IOException(dir + " belongs to " + owner.getName()
+          + ", not to " + user.getName());
+    }
+    if (isPosix(dir)) {
+      Files.setPosixFilePermissions(dir, OWNER_ONLY);
+    }
+  }
+
+  private static UserPrincipal currentUser(Path dir) throws IOException {
+    return dir.getFileSystem().getUserPrincipalLookupService()
+        .lookupPrincipalByName(System.getProperty("user.name"));
+  }
+
+  private static boolean isPosix(Path dir) {
+    return dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+  }
+
+  private static void cleanUp(Kind kind, String argument) throws Exception {
+    switch (kind) {
+      case DELETE_PATH:
+        delete(Paths.get(argument));
+        break;
+      case KILL_PROCESS:
+        String[] process = argument.split(" ");
+        long pid = Long.parseLong(process[0]);
+        long start = Long.parseLong(process[1]);
+        Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+        if (!handle.isPresent()) {
+          break;
+        }
+        long actual = startMillis(handle.get());
+        if (actual == 0 || start == 0) {
+          logger.warning("not killing process " + pid + ", since when it "
+              + "started is unknown, so it may not be the one registered");
+        } else if (actual == start) {
+          kill(handle.get());
+        }
+        break;
+      default:
+        throw new AssertionError(kind);
+    }
+  }
+
+  /** Deletes {@code path} and, if it's a directory, all it contains. */
+  static void delete(Path path) throws IOException {
+    try {
+      Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+        @Override public FileVisitResult visitFile(
+            Path file, BasicFileAttributes attributes) throws IOException {
+          Files.deleteIfExists(file);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override public FileVisitResult postVisitDirectory(
+            Path directory, IOException e) throws IOException {
+          if (e != null) {
+            throw e;
+          }
+          Files.deleteIfExists(directory);
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    } catch (NoSuchFileException e) {
+      // Already deleted
+    }
+  }
+
+  /**
+   * Forcibly kills {@code process} and its descendants, waiting for
+   * {@code process} to be gone.
+   */
+  static void kill(ProcessHandle process)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    Object[] descendants = process.descendants().toArray();
+    process.destroyForcibly();
+    for (Object descendant : descendants) {
+      ((ProcessHandle) descendant).destroyForcibly();
+    }
+    process.onExit().get(KILL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Whether the process {@code pid} that started at {@code startMillis} may
+   * still be running. If when either started isn't known, it is assumed to
+   * be, so that the journal of a live JVM is never recovered.
+   */
+  private static boolean isRunning(long pid, long startMillis) {
+    Optional<ProcessHandle> handle = ProcessHandle.of(pid);
+    if (!handle.isPresent() || !handle.get().isAlive()) {
+      return false;
+    }
+    long actual = startMillis(handle.get());
+    return actual == 0 || startMillis == 0 || actual == startMillis;
+  }
+
+  /** Returns when {@code process} started, or {@code 0} if unknown. */
+  static long startMillis(ProcessHandle process) {
+    Optional<Instant> start = process.info().startInstant();
+    return start.isPresent() ? start.get().toEpochMilli() : 0;
+  }
+
+  private static String escape(String s) {
+    return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n")
+        .replace("\r", "\\r");
+  }
+
+  private static String unescape(String s) {
+    StringBuilder result = new StringBuilder(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c == '\\' && i + 1 < s.length()) {
+        char next = s.charAt(++i);
+        result.append((next == 't') ? '\t' : (next == 'n') ? '\n'
+            : (next == 'r') ? '\r' : next);
+      } else {
+        result.append(c);
+      }
+    }
+    return result.toString();
+  }
+}
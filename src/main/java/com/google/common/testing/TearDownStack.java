@@ -16,14 +16,14 @@
 
 package com.google.common.testing;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * A {@code TearDownStack} contains a stack of {@link TearDown} instances.
+ * {@link TearDown}s can be added to it from several threads at once, e.g. by
+ * tests running in parallel that share it.
  *
  * @author Kevin Bourrillion
  */
@@ -32,6 +32,9 @@ public class TearDownStack implements TearDownAccepter {
   public static final Logger logger
       = Logger.getLogger(TearDownStack.class.getName());
 
+  static final FailureLog failures =
+      new FailureLog(logger, Level.INFO, "exception thrown during tearDown");
+
   final LinkedList<TearDown> stack = new LinkedList<TearDown>();
 
   private final boolean suppressThrows; 
@@ -45,28 +48,52 @@ public class TearDownStack implements TearDownAccepter {
   }
   
   public final void addTearDown(TearDown tearDown) {
-    stack.addFirst(tearDown);
+    synchronized (stack) {
+      stack.addFirst(tearDown);
+    }
+    Statistics.tearDownAdded();
   }
 
   /**
    * Causes teardown to execute.
+   *
+   * <p>Unless {@code suppressThrows}, any exceptions thrown are rethrown at
+   * the end through a {@link ClusterException}, in which alike exceptions are
+   * grouped and counted rather than all kept; see {@link FailureGroups}.
+   * Otherwise they are logged, alike ones in full only the first time; see
+   * {@link FailureLog}.
+   *
+   * <p>{@link TearDown}s added while this runs, e.g. by a fixture first used
+   * by another {@link TearDown}, run too, before those added earlier.
    */
   public final void runTearDown() {
-    List<Throwable> exceptions = new ArrayList<Throwable>();
-    for (TearDown tearDown : stack) {
+    FailureGroups exceptions = new FailureGroups();
+    while (true) {
+      TearDown tearDown;
+      synchronized (stack) {
+        tearDown = stack.pollFirst();
+      }
+      if (tearDown == null) {
+        break;
+      }
+      Statistics.tearDownsTaken(1);
+      Object event = FlightRecorderEvents.beginTearDown();
+      long start = System.nanoTime();
       try {
         tearDown.tearDown();
+        Statistics.tearDownRan(System.nanoTime() - start, false);
+        FlightRecorderEvents.endTearDown(event, tearDown, null);
       } catch (Throwable t) {
+        Statistics.tearDownRan(System.nanoTime() - start, true);
+        FlightRecorderEvents.endTearDown(event, tearDown, t);
         if (suppressThrows) {
-          TearDownStack.logger.log(Level.INFO,
-              "exception thrown during tearDown: " + t.getMessage(), t);
+          failures.log(t);
         } else {
           exceptions.add(t);
         }
       }
     }
-    stack.clear();
-    if ((!suppressThrows) && (exceptions.size() > 0)) {
+    if ((!suppressThrows) && !exceptions.isEmpty()) {
       throw ClusterException.create(exceptions);
     }
   }
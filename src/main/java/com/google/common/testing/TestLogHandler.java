@@ -18,6 +18,7 @@ package com.google.common.testing;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
@@ -52,26 +53,74 @@ import java.util.logging.LogRecord;
  */
 public class TestLogHandler extends Handler {
 
+  /**
+   * A rough estimate of the memory held by a record, besides the characters
+   * of its message.
+   */
+  static final long RECORD_OVERHEAD_BYTES = 112;
+
   /** We will keep a private list of all logged records */
-  private final List<LogRecord> list =
-      Collections.synchronizedList(new ArrayList<LogRecord>());
+  private final LinkedList<LogRecord> list = new LinkedList<LogRecord>();
+
+  private final int maxRecords;
+  /** Guarded by list. */
+  private long bytesRetained;
+
+  private final FlightRecorderEvents.LogBursts bursts =
+      new FlightRecorderEvents.LogBursts(getClass().getName());
+
+  /** Creates a handler that keeps all the records it is given. */
+  public TestLogHandler() {
+    this(Integer.MAX_VALUE);
+  }
 
   /**
-   * Adds the most recently logged record to our list.
+   * Creates a handler that keeps only the latest {@code maxRecords} records
+   * it is given, e.g. for a long-running test that logs without end.
+   */
+  public TestLogHandler(int maxRecords) {
+    if (maxRecords < 1) {
+      throw new IllegalArgumentException(
+          "maxRecords must be positive: " + maxRecords);
+    }
+    this.maxRecords = maxRecords;
+    Statistics.register(this);
+  }
+
+  /**
+   * Adds the most recently logged record to our list, dropping the oldest
+   * one if there are more than {@code maxRecords}.
    */
   @Override
   public void publish(LogRecord record) {
-    list.add(record);
+    bursts.published();
+    Statistics.logRecordPublished();
+    synchronized (list) {
+      list.add(record);
+      bytesRetained += estimateBytes(record);
+      if (list.size() > maxRecords) {
+        bytesRetained -= estimateBytes(list.removeFirst());
+        Statistics.logRecordDropped();
+      }
+    }
   }
 
   @Override
-  public void flush() { }
+  public void flush() {
+    bursts.end();
+  }
 
   @Override
-  public void close() { }
+  public void close() {
+    bursts.end();
+  }
 
   public void clear() {
-    list.clear();
+    bursts.end();
+    synchronized (list) {
+      list.clear();
+      bytesRetained = 0;
+    }
   }
 
   /**
@@ -79,7 +128,31 @@ public class TestLogHandler extends Handler {
    * @return unmodifiable LogRecord list of all logged records
    */
   public List<LogRecord> getStoredLogRecords() {
-    List<LogRecord> result = new ArrayList<LogRecord>(list);
+    bursts.end();
+    List<LogRecord> result;
+    synchronized (list) {
+      result = new ArrayList<LogRecord>(list);
+    }
     return Collections.unmodifiableList(result);
   }
+
+  /** Returns how many records this handler holds. */
+  int recordsRetained() {
+    synchronized (list) {
+      return list.size();
+    }
+  }
+
+  /** Returns a rough estimate of the memory held by this handler's records. */
+  long bytesRetained() {
+    synchronized (list) {
+      return bytesRetained;
+    }
+  }
+
+  private static long estimateBytes(LogRecord record) {
+    String message = record.getMessage();
+    return RECORD_OVERHEAD_BYTES
+        + ((message == null) ? 0 : 2L * message.length());
+  }
 }
@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * How long each test took the last time it ran, kept in a file across runs,
+ * so that tests can be scheduled by how long they will probably take:
+ * slowest first, so that a slow test doesn't start last, and spread evenly
+ * across parallel workers, so that they all finish at about the same time.
+ * Tests are named {@code <test class name>.<test method name>}; the
+ * {@code [<index>]} that JUnit's {@code Parameterized} runner appends to
+ * method names is ignored, so that all the parameter sets of a test share
+ * its timing, whichever name it is recorded or looked up by.
+ *
+ * <p>The file has a line per test, with its duration in nanoseconds and its
+ * name separated by a tab. A test that was never timed is assumed to be as
+ * slow as the slowest test that was, so that it is scheduled early rather
+ * than late.
+ *
+ * <p>JUnit 4 tests are timed, tear-down included, by
+ * {@link com.google.common.testing.junit4.TearDownMethodRule} when the
+ * {@value #ENABLED_PROPERTY} system property is {@code true}, and scheduled
+ * by {@link com.google.common.testing.junit4.DurationOrderedSuite}. Both use
+ * the {@linkplain #getDefault default timings}, kept in the file named by the
+ * {@value #FILE_PROPERTY} system property, or {@value #DEFAULT_FILE} in the
+ * current directory.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class TestTimings {
+
+  public static final String ENABLED_PROPERTY =
+      "com.google.common.testing.TestTimings.enabled";
+
+  public static final String FILE_PROPERTY =
+      "com.google.common.testing.TestTimings.file";
+
+  public static final String DEFAULT_FILE = "test-timings.txt";
+
+  private static final Logger logger =
+      Logger.getLogger(TestTimings.class.getName());
+
+  private static TestTimings defaultTimings;
+
+  private final File file;
+  private final Map<String, Long> nanos = new HashMap<String, Long>();
+  private final Map<String, Long> recorded = new HashMap<String, Long>();
+  private long slowest;
+
+  private TestTimings(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Loads the timings kept in {@code file}. There are none if {@code file}
+   * doesn't exist yet.
+   */
+  public static TestTimings load(File file) throws IOException {
+    TestTimings result = new TestTimings(file);
+    result.putAll(read(file));
+    return result;
+  }
+
+  /**
+   * Whether tests should be timed, according to the
+   * {@value #ENABLED_PROPERTY} system property.
+   */
+  public static boolean isEnabled() {
+    return Boolean.getBoolean(ENABLED_PROPERTY);
+  }
+
+  /**
+   * Returns the JVM-wide timings, loaded from the file named by the
+   * {@value #FILE_PROPERTY} system property the first time this is called.
+   * Timings recorded in them are saved back to that file when the JVM exits.
+   * If the file can't be read, this logs why and starts afresh.
+   */
+  public static synchronized TestTimings getDefault() {
+    if (defaultTimings == null) {
+      File file = new File(System.getProperty(FILE_PROPERTY, DEFAULT_FILE));
+      try {
+        defaultTimings = load(file);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "could not read test timings from " + file, e);
+        defaultTimings = new TestTimings(file);
+      }
+      final TestTimings timings = defaultTimings;
+      Runtime.getRuntime().addShutdownHook(new Thread("TestTimings save") {
+        @Override public void run() {
+          try {
+            timings.save();
+          } catch (IOException e) {
+            logger.log(Level.WARNING,
+                "could not write test timings to " + timings.file, e);
+          }
+        }
+      });
+    }
+    return defaultTimings;
+  }
+
+  /** Records that {@code test} took {@code nanos} nanoseconds. */
+  public synchronized void record(String test, long nanos) {
+    String key = key(test);
+    recorded.put(key, nanos);
+    put(key, nanos);
+  }
+
+  /**
+   * Returns how many nanoseconds {@code test} will probably take: as long as
+   * it took the last time, or as long as the slowest test did if it was
+   * never timed.
+   */
+  public synchronized long estimateNanos(String test) {
+    Long result = nanos.get(key(test));
+    return (result != null) ? result : slowest;
+  }
+
+  /** Returns {@code test} without the parameter index it may end with. */
+  private static String key(String test) {
+    int index = test.lastIndexOf('[');
+    return (index > 0 && test.endsWith("]")) ? test.substring(0, index) : test;
+  }
+
+  /**
+   * Returns a comparator that orders tests by their {@linkplain #estimateNanos
+   * estimated duration}, slowest first, and then by name.
+   */
+  public Comparator<String> slowestFirst() {
+    return new Comparator<String>() {
+      public int compare(String a, String b) {
+        long difference = estimateNanos(b) - estimateNanos(a);
+        return (difference < 0) ? -1 : (difference > 0) ? 1 : a.compareTo(b);
+      }
+    };
+  }
+
+  /**
+   * Splits {@code tests} among {@code workers} workers, so that they all
+   * finish at about the same time. Each test, slowest first, goes to the
+   * worker with the least work so far (or, on a tie, with the fewest tests,
+   * so that tests never timed are spread evenly). The split only depends on
+   * the tests and their timings, so workers that each compute it agree on
+   * it.
+   *
+   * @return a list of {@code workers} lists of tests, each slowest first
+   */
+  public List<List<String>> partition(Collection<String> tests, int workers) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("workers must be positive: " + workers);
+    }
+    List<String> sorted = new ArrayList<String>(tests);
+    Collections.sort(sorted, slowestFirst());
+    final List<List<String>> result = new ArrayList<List<String>>(workers);
+    final long[] loads = new long[workers];
+    PriorityQueue<Integer> leastLoaded = new PriorityQueue<Integer>(workers,
+        new Comparator<Integer>() {
+          public int compare(Integer a, Integer b) {
+            if (loads[a] != loads[b]) {
+              return (loads[a] < loads[b]) ? -1 : 1;
+            }
+            int sizes = result.get(a).size() - result.get(b).size();
+            return (sizes != 0) ? sizes : a - b;
+          }
+        });
+    for (int i = 0; i < workers; i++) {
+      result.add(new ArrayList<String>());
+      leastLoaded.add(i);
+    }
+    for (String test : sorted) {
+      int worker = leastLoaded.poll();
+      result.get(worker).add(test);
+      loads[worker] += estimateNanos(test);
+      leastLoaded.add(worker);
+    }
+    return result;
+  }
+
+  /**
+   * Writes the timings recorded since these were loaded back to their file.
+   * Timings other JVMs saved to it meanwhile are kept, unless this JVM timed
+   * the same tests; the file is replaced atomically where the file system
+   * allows it, so that it is never seen half-written.
+   */
+  public synchronized void save() throws IOException {
+    if (recorded.isEmpty()) {
+      return;
+    }
+    Map<String, Long> merged = new TreeMap<String, Long>(read(file));
+    merged.putAll(recorded);
+    File parent = file.getAbsoluteFile().getParentFile();
+    File temp = File.createTempFile(file.getName(), ".tmp", parent);
+    try {
+      Writer writer = new OutputStreamWriter(
+          new FileOutputStream(temp), StandardCharsets.UTF_8);
+      try {
+        for (Map.Entry<String, Long> entry : merged.entrySet()) {
+          writer.append(String.valueOf(entry.getValue())).append('\t')
+              .append(entry.getKey()).append('\n');
+        }
+      } finally {
+        writer.close();
+      }
+      try {
+        Files.move(temp.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        Files.move(temp.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+
+  private void putAll(Map<String, Long> timings) {
+    for (Map.Entry<String, Long> entry : timings.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void put(String test, long testNanos) {
+    nanos.put(test, testNanos);
+    slowest = Math.max(slowest, testNanos);
+  }
+
+  /** Reads the timings in {@code file}, skipping lines it can't parse. */
+  private static Map<String, Long> read(File file) throws IOException {
+    Map<String, Long> result = new HashMap<String, Long>();
+    BufferedReader reader;
+    try {
+      reader = new BufferedReader(new InputStreamReader(
+          new FileInputStream(file), StandardCharsets.UTF_8));
+    } catch (FileNotFoundException e) {
+      return result;
+    }
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        if (tab < 0) {
+          continue;
+        }
+        try {
+          result.put(line.substring(tab + 1),
+              Long.parseLong(line.substring(0, tab)));
+        } catch (NumberFormatException e) {
+          // Not a timing line
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return result;
+  }
+}
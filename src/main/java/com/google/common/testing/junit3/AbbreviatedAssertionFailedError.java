@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit3;
+
+import com.google.common.testing.Abbreviator;
+
+import junit.framework.AssertionFailedError;
+
+import java.util.function.Supplier;
+
+/**
+ * The {@link AssertionFailedError} thrown by {@link JUnitAsserts} when its
+ * message describes a value through {@link Abbreviator}, and may therefore
+ * only show part of it. The whole value is still available through
+ * {@link #getValueSupplier()}.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public class AbbreviatedAssertionFailedError extends AssertionFailedError {
+
+  private static final long serialVersionUID = 1L;
+
+  private final transient Supplier<?> valueSupplier;
+
+  public AbbreviatedAssertionFailedError(
+      String message, Supplier<?> valueSupplier) {
+    super(message);
+    this.valueSupplier = valueSupplier;
+  }
+
+  /**
+   * Returns a supplier of the value described in this error's message, in
+   * full. This is {@code null} if this error was deserialized.
+   */
+  public Supplier<?> getValueSupplier() {
+    return valueSupplier;
+  }
+}
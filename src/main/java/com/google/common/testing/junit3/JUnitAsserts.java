@@ -16,12 +16,31 @@
 
 package com.google.common.testing.junit3;
 
+import com.google.common.testing.Abbreviator;
+import com.google.common.testing.ByteContents;
+import com.google.common.testing.CostMeasurements;
+import com.google.common.testing.FlightRecorderEvents;
+import com.google.common.testing.MultiPatternScan;
+import com.google.common.testing.PatternCache;
+import com.google.common.testing.RegexBudget;
+
 import junit.framework.Assert;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.function.Supplier;
 import java.util.regex.MatchResult;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -54,23 +73,49 @@ public final class JUnitAsserts {
     assertNotEqual(null, unexpected, actual);
   }
 
+  /**
+   * Variant of {@link #assertNotEqual(String,Object,Object)} whose
+   * {@code message} is only computed if the assertion fails.
+   */
+  public static void assertNotEqualLazily(
+      Supplier<String> message, Object unexpected, Object actual) {
+    if (equal(unexpected, actual)) {
+      failEqual(get(message), unexpected);
+    }
+  }
+
   /**
    * Asserts that {@code expectedRegex} exactly matches {@code actual} and
    * fails with {@code message} if it does not.  The MatchResult is returned
    * in case the test needs access to any captured groups.  Note that you can
    * also use this for a literal string, by wrapping your expected string in
    * {@link Pattern#quote}.
+   *
+   * <p>{@code actual} can be any {@link CharSequence}, e.g. a
+   * {@link java.nio.CharBuffer} decoded from a memory-mapped file, so very
+   * large inputs need not be turned into a {@link String} first.
+   */
+  public static MatchResult assertMatchesRegex(
+      String message, String expectedRegex, CharSequence actual) {
+    return assertMatchesRegexLazily(constant(message), expectedRegex, actual);
+  }
+
+  /**
+   * Variant of {@link #assertMatchesRegex(String,String,CharSequence)} taking
+   * a {@link String}.
    */
   public static MatchResult assertMatchesRegex(
       String message, String expectedRegex, String actual) {
-    if (actual == null) {
-      failNotMatches(message, expectedRegex, null);
-    }
-    Matcher matcher = getMatcher(expectedRegex, actual);
-    if (!matcher.matches()) {
-      failNotMatches(message, expectedRegex, actual);
-    }
-    return matcher;
+    return assertMatchesRegex(message, expectedRegex, (CharSequence) actual);
+  }
+
+  /**
+   * Variant of {@link #assertMatchesRegex(String,String,CharSequence)} using a
+   * generic message.
+   */
+  public static MatchResult assertMatchesRegex(
+      String expectedRegex, CharSequence actual) {
+    return assertMatchesRegex(null, expectedRegex, actual);
   }
 
   /**
@@ -82,23 +127,54 @@ public final class JUnitAsserts {
     return assertMatchesRegex(null, expectedRegex, actual);
   }
 
+  /**
+   * Variant of {@link #assertMatchesRegex(String,String,CharSequence)} whose
+   * {@code message} is only computed if the assertion fails.
+   */
+  public static MatchResult assertMatchesRegexLazily(
+      Supplier<String> message, String expectedRegex, CharSequence actual) {
+    if (actual == null) {
+      failNotMatches(get(message), expectedRegex, null);
+    }
+    Matcher matcher = match(message, expectedRegex, actual, true);
+    if (matcher == null) {
+      failNotMatches(get(message), expectedRegex, actual);
+    }
+    return matcher;
+  }
+
   /**
    * Asserts that {@code expectedRegex} matches any substring of {@code actual}
    * and fails with {@code message} if it does not.  The Matcher is returned in
    * case the test needs access to any captured groups.  Note that you can also
    * use this for a literal string, by wrapping your expected string in
    * {@link Pattern#quote}.
+   *
+   * <p>{@code actual} can be any {@link CharSequence}, e.g. a
+   * {@link java.nio.CharBuffer} decoded from a memory-mapped file, so very
+   * large inputs need not be turned into a {@link String} first.
+   */
+  public static MatchResult assertContainsRegex(
+      String message, String expectedRegex, CharSequence actual) {
+    return assertContainsRegexLazily(constant(message), expectedRegex, actual);
+  }
+
+  /**
+   * Variant of {@link #assertContainsRegex(String,String,CharSequence)}
+   * taking a {@link String}.
    */
   public static MatchResult assertContainsRegex(
       String message, String expectedRegex, String actual) {
-    if (actual == null) {
-      failNotContainsRegex(message, expectedRegex, null);
-    }
-    Matcher matcher = getMatcher(expectedRegex, actual);
-    if (!matcher.find()) {
-      failNotContainsRegex(message, expectedRegex, actual);
-    }
-    return matcher;
+    return assertContainsRegex(message, expectedRegex, (CharSequence) actual);
+  }
+
+  /**
+   * Variant of {@link #assertContainsRegex(String,String,CharSequence)} using
+   * a generic message.
+   */
+  public static MatchResult assertContainsRegex(
+      String expectedRegex, CharSequence actual) {
+    return assertContainsRegex(null, expectedRegex, actual);
   }
 
   /**
@@ -110,18 +186,49 @@ public final class JUnitAsserts {
     return assertContainsRegex(null, expectedRegex, actual);
   }
 
+  /**
+   * Variant of {@link #assertContainsRegex(String,String,CharSequence)} whose
+   * {@code message} is only computed if the assertion fails.
+   */
+  public static MatchResult assertContainsRegexLazily(
+      Supplier<String> message, String expectedRegex, CharSequence actual) {
+    if (actual == null) {
+      failNotContainsRegex(get(message), expectedRegex, null);
+    }
+    Matcher matcher = match(message, expectedRegex, actual, false);
+    if (matcher == null) {
+      failNotContainsRegex(get(message), expectedRegex, actual);
+    }
+    return matcher;
+  }
+
   /**
    * Asserts that {@code unexpectedRegex} does not exactly match {@code actual},
    * and fails with {@code message} if it does. Note that you can also use
    * this for a literal string, by wrapping your expected string in
    * {@link Pattern#quote}.
    */
+  public static void assertNotMatchesRegex(
+      String message, String unexpectedRegex, CharSequence actual) {
+    assertNotMatchesRegexLazily(constant(message), unexpectedRegex, actual);
+  }
+
+  /**
+   * Variant of {@link #assertNotMatchesRegex(String,String,CharSequence)}
+   * taking a {@link String}.
+   */
   public static void assertNotMatchesRegex(
       String message, String unexpectedRegex, String actual) {
-    Matcher matcher = getMatcher(unexpectedRegex, actual);
-    if (matcher.matches()) {
-      failMatch(message, unexpectedRegex, actual);
-    }
+    assertNotMatchesRegex(message, unexpectedRegex, (CharSequence) actual);
+  }
+
+  /**
+   * Variant of {@link #assertNotMatchesRegex(String,String,CharSequence)}
+   * using a generic message.
+   */
+  public static void assertNotMatchesRegex(
+      String unexpectedRegex, CharSequence actual) {
+    assertNotMatchesRegex(null, unexpectedRegex, actual);
   }
 
   /**
@@ -133,18 +240,44 @@ public final class JUnitAsserts {
     assertNotMatchesRegex(null, unexpectedRegex, actual);
   }
 
+  /**
+   * Variant of {@link #assertNotMatchesRegex(String,String,CharSequence)}
+   * whose {@code message} is only computed if the assertion fails.
+   */
+  public static void assertNotMatchesRegexLazily(
+      Supplier<String> message, String unexpectedRegex, CharSequence actual) {
+    if (match(message, unexpectedRegex, actual, true) != null) {
+      failMatch(get(message), unexpectedRegex, actual);
+    }
+  }
+
   /**
    * Asserts that {@code unexpectedRegex} does not match any substring of
    * {@code actual}, and fails with {@code message} if it does.  Note that you
    * can also use this for a literal string, by wrapping your expected string
    * in {@link Pattern#quote}.
    */
+  public static void assertNotContainsRegex(
+      String message, String unexpectedRegex, CharSequence actual) {
+    assertNotContainsRegexLazily(constant(message), unexpectedRegex, actual);
+  }
+
+  /**
+   * Variant of {@link #assertNotContainsRegex(String,String,CharSequence)}
+   * taking a {@link String}.
+   */
   public static void assertNotContainsRegex(
       String message, String unexpectedRegex, String actual) {
-    Matcher matcher = getMatcher(unexpectedRegex, actual);
-    if (matcher.find()) {
-      failContainsRegex(message, unexpectedRegex, actual);
-    }
+    assertNotContainsRegex(message, unexpectedRegex, (CharSequence) actual);
+  }
+
+  /**
+   * Variant of {@link #assertNotContainsRegex(String,String,CharSequence)}
+   * using a generic message.
+   */
+  public static void assertNotContainsRegex(
+      String unexpectedRegex, CharSequence actual) {
+    assertNotContainsRegex(null, unexpectedRegex, actual);
   }
 
   /**
@@ -156,6 +289,302 @@ public final class JUnitAsserts {
     assertNotContainsRegex(null, unexpectedRegex, actual);
   }
 
+  /**
+   * Variant of {@link #assertNotContainsRegex(String,String,CharSequence)}
+   * whose {@code message} is only computed if the assertion fails.
+   */
+  public static void assertNotContainsRegexLazily(
+      Supplier<String> message, String unexpectedRegex, CharSequence actual) {
+    if (match(message, unexpectedRegex, actual, false) != null) {
+      failContainsRegex(get(message), unexpectedRegex, actual);
+    }
+  }
+
+  /**
+   * Asserts that each of {@code expectedRegexes} matches some substring of
+   * {@code actual}, and fails with {@code message}, listing the ones that do
+   * not, if any does not. {@code actual} is scanned once for all of them,
+   * rather than once per pattern; see {@link MultiPatternScan}. The scan is
+   * returned in case the test needs to know where each pattern was found.
+   */
+  public static MultiPatternScan assertContainsAllRegexes(
+      String message, Collection<String> expectedRegexes, CharSequence actual) {
+    if (actual == null) {
+      failWithMessage(message, "expected to contain all of regexes:<"
+          + expectedRegexes + "> but was:null");
+    }
+    MultiPatternScan scan = scan(message, expectedRegexes, actual, false);
+    if (!scan.missing().isEmpty()) {
+      failWithValue(message, "expected to contain all of regexes:<"
+          + scan.patterns() + "> but was missing:<" + scan.missing()
+          + "> (found:<" + scan.found() + ">) in:"
+          + Abbreviator.describe(actual), actual);
+    }
+    return scan;
+  }
+
+  /**
+   * Variant of
+   * {@link #assertContainsAllRegexes(String,Collection,CharSequence)} using a
+   * generic message.
+   */
+  public static MultiPatternScan assertContainsAllRegexes(
+      Collection<String> expectedRegexes, CharSequence actual) {
+    return assertContainsAllRegexes(null, expectedRegexes, actual);
+  }
+
+  /**
+   * Asserts that at least one of {@code expectedRegexes} matches some
+   * substring of {@code actual}, and fails with {@code message} if none does.
+   * {@code actual} is scanned once for all of them, and only until the first
+   * one is found; see {@link MultiPatternScan}.
+   */
+  public static MultiPatternScan assertContainsAnyRegex(
+      String message, Collection<String> expectedRegexes, CharSequence actual) {
+    if (actual == null) {
+      failWithMessage(message, "expected to contain any of regexes:<"
+          + expectedRegexes + "> but was:null");
+    }
+    MultiPatternScan scan = scan(message, expectedRegexes, actual, true);
+    if (scan.found().isEmpty()) {
+      failWithValue(message, "expected to contain any of regexes:<"
+          + scan.patterns() + "> but was:" + Abbreviator.describe(actual),
+          actual);
+    }
+    return scan;
+  }
+
+  /**
+   * Variant of
+   * {@link #assertContainsAnyRegex(String,Collection,CharSequence)} using a
+   * generic message.
+   */
+  public static MultiPatternScan assertContainsAnyRegex(
+      Collection<String> expectedRegexes, CharSequence actual) {
+    return assertContainsAnyRegex(null, expectedRegexes, actual);
+  }
+
+  /**
+   * Asserts that none of {@code unexpectedRegexes} matches any substring of
+   * {@code actual}, and fails with {@code message}, listing all the ones that
+   * do and where, if any does. {@code actual} is scanned once for all of
+   * them, rather than once per pattern; see {@link MultiPatternScan}.
+   */
+  public static void assertNotContainsAnyRegex(String message,
+      Collection<String> unexpectedRegexes, CharSequence actual) {
+    MultiPatternScan scan = scan(message, unexpectedRegexes, actual, false);
+    if (!scan.found().isEmpty()) {
+      failWithValue(message, "expected not to contain any of regexes:<"
+          + scan.patterns() + "> but found:<" + scan.found() + "> in:"
+          + Abbreviator.describe(actual), actual);
+    }
+  }
+
+  /**
+   * Variant of
+   * {@link #assertNotContainsAnyRegex(String,Collection,CharSequence)} using
+   * a generic message.
+   */
+  public static void assertNotContainsAnyRegex(
+      Collection<String> unexpectedRegexes, CharSequence actual) {
+    assertNotContainsAnyRegex(null, unexpectedRegexes, actual);
+  }
+
+  /**
+   * Asserts that {@code expectedRegex} matches a substring of at least one
+   * line read from {@code actual}, and fails with {@code message} if it does
+   * not. Lines are read one at a time, so {@code actual} is never held in
+   * memory as a whole; this also means that {@code expectedRegex} is never
+   * matched across line boundaries. The MatchResult of the first matching
+   * line is returned. {@code actual} is read up to that line, and is not
+   * closed.
+   */
+  public static MatchResult assertSomeLineContainsRegex(
+      String message, String expectedRegex, Reader actual)
+      throws IOException {
+    BufferedReader reader = buffered(actual);
+    Matcher matcher = PatternCache.compile(expectedRegex).matcher("");
+    long lineCount = 0;
+    long length = 0;
+    Object event = FlightRecorderEvents.beginComparison();
+    try {
+      for (String line; (line = reader.readLine()) != null; ) {
+        lineCount++;
+        length += line.length();
+        if (matchLine(
+            message, expectedRegex, matcher, line, lineCount, false)) {
+          return matcher;
+        }
+      }
+    } finally {
+      FlightRecorderEvents.endComparison(event, "line regex", expectedRegex,
+          length);
+    }
+    failWithMessage(message, "expected some line to contain regex:<"
+        + expectedRegex + "> but none of " + lineCount + " lines did");
+    return null;
+  }
+
+  /**
+   * Variant of {@link #assertSomeLineContainsRegex(String,String,Reader)}
+   * using a generic message.
+   */
+  public static MatchResult assertSomeLineContainsRegex(
+      String expectedRegex, Reader actual) throws IOException {
+    return assertSomeLineContainsRegex(null, expectedRegex, actual);
+  }
+
+  /**
+   * Variant of {@link #assertSomeLineContainsRegex(String,String,Reader)}
+   * that reads the UTF-8 file at {@code actual}.
+   */
+  public static MatchResult assertSomeLineContainsRegex(
+      String message, String expectedRegex, Path actual) throws IOException {
+    Reader reader = newReader(actual);
+    try {
+      return assertSomeLineContainsRegex(message, expectedRegex, reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Variant of {@link #assertSomeLineContainsRegex(String,String,Path)}
+   * using a generic message.
+   */
+  public static MatchResult assertSomeLineContainsRegex(
+      String expectedRegex, Path actual) throws IOException {
+    return assertSomeLineContainsRegex(null, expectedRegex, actual);
+  }
+
+  /**
+   * Asserts that {@code expectedRegex} exactly matches every line read from
+   * {@code actual}, and fails with {@code message}, reporting the first line
+   * that does not match, if it does not. Lines are read one at a time, so
+   * {@code actual} is never held in memory as a whole. {@code actual} is not
+   * closed.
+   */
+  public static void assertEveryLineMatchesRegex(
+      String message, String expectedRegex, Reader actual)
+      throws IOException {
+    BufferedReader reader = buffered(actual);
+    Matcher matcher = PatternCache.compile(expectedRegex).matcher("");
+    long lineNumber = 0;
+    long length = 0;
+    Object event = FlightRecorderEvents.beginComparison();
+    try {
+      for (String line; (line = reader.readLine()) != null; ) {
+        lineNumber++;
+        length += line.length();
+        if (!matchLine(
+            message, expectedRegex, matcher, line, lineNumber, true)) {
+          failWithValue(message, "expected every line to match regex:<"
+              + expectedRegex + "> but line " + lineNumber + " was:"
+              + Abbreviator.describe(line), line);
+        }
+      }
+    } finally {
+      FlightRecorderEvents.endComparison(event, "line regex", expectedRegex,
+          length);
+    }
+  }
+
+  /**
+   * Variant of {@link #assertEveryLineMatchesRegex(String,String,Reader)}
+   * using a generic message.
+   */
+  public static void assertEveryLineMatchesRegex(
+      String expectedRegex, Reader actual) throws IOException {
+    assertEveryLineMatchesRegex(null, expectedRegex, actual);
+  }
+
+  /**
+   * Variant of {@link #assertEveryLineMatchesRegex(String,String,Reader)}
+   * that reads the UTF-8 file at {@code actual}.
+   */
+  public static void assertEveryLineMatchesRegex(
+      String message, String expectedRegex, Path actual) throws IOException {
+    Reader reader = newReader(actual);
+    try {
+      assertEveryLineMatchesRegex(message, expectedRegex, reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Variant of {@link #assertEveryLineMatchesRegex(String,String,Path)}
+   * using a generic message.
+   */
+  public static void assertEveryLineMatchesRegex(
+      String expectedRegex, Path actual) throws IOException {
+    assertEveryLineMatchesRegex(null, expectedRegex, actual);
+  }
+
+  /**
+   * Asserts that {@code unexpectedRegex} does not match any substring of any
+   * line read from {@code actual}, and fails with {@code message}, reporting
+   * the first line that does match, if it does. Lines are read one at a time,
+   * so {@code actual} is never held in memory as a whole. {@code actual} is
+   * not closed.
+   */
+  public static void assertNoLineContainsRegex(
+      String message, String unexpectedRegex, Reader actual)
+      throws IOException {
+    BufferedReader reader = buffered(actual);
+    Matcher matcher = PatternCache.compile(unexpectedRegex).matcher("");
+    long lineNumber = 0;
+    long length = 0;
+    Object event = FlightRecorderEvents.beginComparison();
+    try {
+      for (String line; (line = reader.readLine()) != null; ) {
+        lineNumber++;
+        length += line.length();
+        if (matchLine(message, unexpectedRegex, matcher, line, lineNumber,
+            false)) {
+          failWithValue(message, "expected no line to contain regex:<"
+              + unexpectedRegex + "> but line " + lineNumber + " was:"
+              + Abbreviator.describe(line), line);
+        }
+      }
+    } finally {
+      FlightRecorderEvents.endComparison(event, "line regex",
+          unexpectedRegex, length);
+    }
+  }
+
+  /**
+   * Variant of {@link #assertNoLineContainsRegex(String,String,Reader)}
+   * using a generic message.
+   */
+  public static void assertNoLineContainsRegex(
+      String unexpectedRegex, Reader actual) throws IOException {
+    assertNoLineContainsRegex(null, unexpectedRegex, actual);
+  }
+
+  /**
+   * Variant of {@link #assertNoLineContainsRegex(String,String,Reader)}
+   * that reads the UTF-8 file at {@code actual}.
+   */
+  public static void assertNoLineContainsRegex(
+      String message, String unexpectedRegex, Path actual) throws IOException {
+    Reader reader = newReader(actual);
+    try {
+      assertNoLineContainsRegex(message, unexpectedRegex, reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Variant of {@link #assertNoLineContainsRegex(String,String,Path)}
+   * using a generic message.
+   */
+  public static void assertNoLineContainsRegex(
+      String unexpectedRegex, Path actual) throws IOException {
+    assertNoLineContainsRegex(null, unexpectedRegex, actual);
+  }
+
   /**
    * Asserts that {@code actual} contains precisely the elements
    * {@code expected}, and in the same order.
@@ -175,39 +604,308 @@ public final class JUnitAsserts {
     assertContentsInOrder((String) null, actual, expected);
   }
 
-  private static Matcher getMatcher(String expectedRegex, String actual) {
-    Pattern pattern = Pattern.compile(expectedRegex);
-    return pattern.matcher(actual);
+  /**
+   * Asserts that the remaining contents of {@code actual} are the same as the
+   * remaining contents of {@code expected}, and fails with {@code message} if
+   * they are not. The failure reports the first differing offset, along with
+   * a hex and text window around it. Neither buffer's position is modified.
+   */
+  public static void assertContentsEqual(
+      String message, ByteBuffer expected, ByteBuffer actual) {
+    long offset = ByteContents.mismatch(expected, actual);
+    if (offset >= 0) {
+      failWithMessage(message,
+          ByteContents.describeMismatch(expected, actual, offset));
+    }
+  }
+
+  /**
+   * Variant of {@link #assertContentsEqual(String,ByteBuffer,ByteBuffer)}
+   * using a generic message.
+   */
+  public static void assertContentsEqual(
+      ByteBuffer expected, ByteBuffer actual) {
+    assertContentsEqual(null, expected, actual);
+  }
+
+  /**
+   * Asserts that the entire contents of {@code actual} are the same as those
+   * of {@code expected}, and fails with {@code message} if they are not. The
+   * channels are compared through memory-mapped regions, so this uses a
+   * constant amount of heap, regardless of their size.
+   *
+   * @see #assertContentsEqual(String,ByteBuffer,ByteBuffer)
+   */
+  public static void assertContentsEqual(
+      String message, FileChannel expected, FileChannel actual)
+      throws IOException {
+    long offset = ByteContents.mismatch(expected, actual);
+    if (offset >= 0) {
+      failWithMessage(message,
+          ByteContents.describeMismatch(expected, actual, offset));
+    }
+  }
+
+  /**
+   * Variant of {@link #assertContentsEqual(String,FileChannel,FileChannel)}
+   * using a generic message.
+   */
+  public static void assertContentsEqual(
+      FileChannel expected, FileChannel actual) throws IOException {
+    assertContentsEqual(null, expected, actual);
+  }
+
+  /**
+   * Asserts that the file at {@code actual} has the same contents as the file
+   * at {@code expected}, and fails with {@code message} if it does not.
+   *
+   * @see #assertContentsEqual(String,FileChannel,FileChannel)
+   */
+  public static void assertContentsEqual(
+      String message, Path expected, Path actual) throws IOException {
+    FileChannel expectedChannel =
+        FileChannel.open(expected, StandardOpenOption.READ);
+    try {
+      FileChannel actualChannel =
+          FileChannel.open(actual, StandardOpenOption.READ);
+      try {
+        assertContentsEqual(message, expectedChannel, actualChannel);
+      } finally {
+        actualChannel.close();
+      }
+    } finally {
+      expectedChannel.close();
+    }
+  }
+
+  /**
+   * Variant of {@link #assertContentsEqual(String,Path,Path)} using a generic
+   * message.
+   */
+  public static void assertContentsEqual(Path expected, Path actual)
+      throws IOException {
+    assertContentsEqual(null, expected, actual);
+  }
+
+  /**
+   * Asserts that no run of {@code code} allocates more than {@code maxBytes}
+   * bytes, and fails with {@code message} if one does. {@code code} is run
+   * {@code iterations} times to warm it up, and then {@code iterations} times
+   * while measuring the bytes allocated by the current thread; the failure
+   * shows a histogram of the latter. Use a {@code maxBytes} of {@code 0} to
+   * guard a path that should not allocate at all.
+   *
+   * @throws UnsupportedOperationException if this JVM can't measure the bytes
+   *     allocated by a thread
+   * @see CostMeasurements#measureAllocations
+   */
+  public static void assertAllocatesAtMost(
+      String message, long maxBytes, int iterations, Runnable code) {
+    assertAllocatesAtMost(message, maxBytes, 100, iterations, code);
+  }
+
+  /**
+   * Asserts that at least {@code percentile} percent of the runs of
+   * {@code code} allocate at most {@code maxBytes} bytes, and fails with
+   * {@code message} if they do not. This tolerates the occasional run that
+   * allocates more for reasons of its own, e.g. a lazily grown buffer; a
+   * {@code percentile} of {@code 100} checks every run, as
+   * {@link #assertAllocatesAtMost(String,long,int,Runnable)} does.
+   *
+   * @throws IllegalArgumentException if {@code percentile} is not greater
+   *     than 0 and at most 100, or {@code iterations} is not positive
+   * @throws UnsupportedOperationException if this JVM can't measure the bytes
+   *     allocated by a thread
+   * @see CostMeasurements#measureAllocations
+   */
+  public static void assertAllocatesAtMost(String message, long maxBytes,
+      double percentile, int iterations, Runnable code) {
+    long[] allocations = CostMeasurements.measureAllocations(iterations, code);
+    long actual = CostMeasurements.percentile(allocations, percentile);
+    if (actual > maxBytes) {
+      String measured = (percentile == 100)
+          ? "each run to allocate at most " + maxBytes
+              + " bytes, but the worst of " + iterations + " runs allocated "
+          : "percentile " + percentile + " of " + iterations
+              + " runs to allocate at most " + maxBytes
+              + " bytes, but it allocated ";
+      failWithMessage(message, "expected " + measured + actual
+          + " bytes. Bytes allocated per run:"
+          + CostMeasurements.describeAllocations(allocations));
+    }
+  }
+
+  /**
+   * Variant of
+   * {@link #assertAllocatesAtMost(String,long,double,int,Runnable)} using a
+   * generic message.
+   */
+  public static void assertAllocatesAtMost(long maxBytes, double percentile,
+      int iterations, Runnable code) {
+    assertAllocatesAtMost(null, maxBytes, percentile, iterations, code);
+  }
+
+  /**
+   * Variant of {@link #assertAllocatesAtMost(String,long,int,Runnable)}
+   * using a generic message.
+   */
+  public static void assertAllocatesAtMost(
+      long maxBytes, int iterations, Runnable code) {
+    assertAllocatesAtMost(null, maxBytes, iterations, code);
+  }
+
+  /**
+   * Variant of {@link #assertAllocatesAtMost(String,long,int,Runnable)}
+   * measuring {@link CostMeasurements#DEFAULT_ITERATIONS} runs.
+   */
+  public static void assertAllocatesAtMost(
+      String message, long maxBytes, Runnable code) {
+    assertAllocatesAtMost(
+        message, maxBytes, CostMeasurements.DEFAULT_ITERATIONS, code);
+  }
+
+  /**
+   * Variant of {@link #assertAllocatesAtMost(String,long,int,Runnable)}
+   * measuring {@link CostMeasurements#DEFAULT_ITERATIONS} runs, using a
+   * generic message.
+   */
+  public static void assertAllocatesAtMost(long maxBytes, Runnable code) {
+    assertAllocatesAtMost(
+        null, maxBytes, CostMeasurements.DEFAULT_ITERATIONS, code);
+  }
+
+  /**
+   * Asserts that at least {@code percentile} percent of the runs of
+   * {@code code} complete within {@code duration}, and fails with
+   * {@code message} if they do not. {@code code} is run {@code iterations}
+   * times to warm it up, and then {@code iterations} times while measuring
+   * it; the failure shows a histogram of the latter.
+   *
+   * <p>Wall time depends on the machine and on its load, so leave a generous
+   * margin: this is meant to catch gross regressions, not to benchmark.
+   *
+   * @throws IllegalArgumentException if {@code percentile} is not greater
+   *     than 0 and at most 100, or {@code iterations} is not positive
+   * @see CostMeasurements#measureLatencies
+   */
+  public static void assertCompletesWithin(String message, Duration duration,
+      double percentile, int iterations, Runnable code) {
+    long[] latencies = CostMeasurements.measureLatencies(iterations, code);
+    long actual = CostMeasurements.percentile(latencies, percentile);
+    if (actual > duration.toNanos()) {
+      failWithMessage(message, "expected percentile " + percentile + " of "
+          + iterations + " runs to take at most "
+          + CostMeasurements.formatNanos(duration.toNanos()) + ", but it took "
+          + CostMeasurements.formatNanos(actual) + ". Time taken per run:"
+          + CostMeasurements.describeLatencies(latencies));
+    }
+  }
+
+  /**
+   * Variant of
+   * {@link #assertCompletesWithin(String,Duration,double,int,Runnable)}
+   * using a generic message.
+   */
+  public static void assertCompletesWithin(Duration duration,
+      double percentile, int iterations, Runnable code) {
+    assertCompletesWithin(null, duration, percentile, iterations, code);
+  }
+
+  /**
+   * Returns a {@link Matcher} of {@code regex} on which {@code matches()}
+   * (if {@code entirely}) or {@code find()} succeeded against {@code actual},
+   * or {@code null} if it did not. Fails with {@code message} if this took
+   * longer than the current {@link RegexBudget}.
+   */
+  private static Matcher match(Supplier<String> message, String regex,
+      CharSequence actual, boolean entirely) {
+    Object event = FlightRecorderEvents.beginComparison();
+    RegexBudget.Guard guard = RegexBudget.guard(actual);
+    Matcher matcher =
+        PatternCache.compile(regex).matcher((guard == null) ? actual : guard);
+    try {
+      boolean found = entirely ? matcher.matches() : matcher.find();
+      return found ? matcher : null;
+    } catch (RegexBudget.ExceededException e) {
+      failWithValue(get(message),
+          "regex:<" + regex + "> " + e.getMessage(), actual);
+      return null;
+    } finally {
+      if (guard != null) {
+        guard.disarm();
+      }
+      FlightRecorderEvents.endComparison(event, "regex", regex,
+          actual.length());
+    }
+  }
+
+  /**
+   * Scans {@code actual} for {@code regexes}, as by
+   * {@link MultiPatternScan#scan(CharSequence,Collection,boolean)}. Fails
+   * with {@code message} if this took longer than the current
+   * {@link RegexBudget}.
+   */
+  private static MultiPatternScan scan(String message,
+      Collection<String> regexes, CharSequence actual, boolean stopAtFirst) {
+    try {
+      return MultiPatternScan.scan(actual, regexes, stopAtFirst);
+    } catch (RegexBudget.ExceededException e) {
+      failWithValue(message, e.getMessage(), actual);
+      return null;
+    }
+  }
+
+  /**
+   * Resets {@code matcher}, of {@code regex}, to {@code line}, line number
+   * {@code lineNumber}, and returns whether {@code matches()} (if
+   * {@code entirely}) or {@code find()} succeeded. Fails with
+   * {@code message} if this took longer than the current
+   * {@link RegexBudget}.
+   */
+  private static boolean matchLine(String message, String regex,
+      Matcher matcher, String line, long lineNumber, boolean entirely) {
+    RegexBudget.Guard guard = RegexBudget.guard(line);
+    matcher.reset((guard == null) ? line : guard);
+    try {
+      return entirely ? matcher.matches() : matcher.find();
+    } catch (RegexBudget.ExceededException e) {
+      failWithValue(message, "regex:<" + regex + "> " + e.getMessage()
+          + " on line " + lineNumber, line);
+      return false;
+    } finally {
+      if (guard != null) {
+        guard.disarm();
+      }
+    }
   }
 
   private static void failEqual(String message, Object unexpected) {
-    failWithMessage(message, "expected not to be:<" + unexpected + ">");
+    failWithValue(message,
+        "expected not to be:" + Abbreviator.describe(unexpected), unexpected);
   }
 
   private static void failNotMatches(
-      String message, String expectedRegex, String actual) {
-    String actualDesc = (actual == null) ? "null" : ('<' + actual + '>');
-    failWithMessage(message, "expected to match regex:<" + expectedRegex
-        + "> but was:" + actualDesc);
+      String message, String expectedRegex, CharSequence actual) {
+    failWithValue(message, "expected to match regex:<" + expectedRegex
+        + "> but was:" + Abbreviator.describe(actual), actual);
   }
 
   private static void failNotContainsRegex(
-      String message, String expectedRegex, String actual) {
-    String actualDesc = (actual == null) ? "null" : ('<' + actual + '>');
-    failWithMessage(message, "expected to contain regex:<" + expectedRegex
-        + "> but was:" + actualDesc);
+      String message, String expectedRegex, CharSequence actual) {
+    failWithValue(message, "expected to contain regex:<" + expectedRegex
+        + "> but was:" + Abbreviator.describe(actual), actual);
   }
 
   private static void failMatch(
-      String message, String expectedRegex, String actual) {
-    failWithMessage(message, "expected not to match regex:<" + expectedRegex
-        + "> but was:<" + actual + '>');
+      String message, String expectedRegex, CharSequence actual) {
+    failWithValue(message, "expected not to match regex:<" + expectedRegex
+        + "> but was:" + Abbreviator.describe(actual), actual);
   }
 
   private static void failContainsRegex(
-      String message, String expectedRegex, String actual) {
-    failWithMessage(message, "expected not to contain regex:<" + expectedRegex
-        + "> but was:<" + actual + '>');
+      String message, String expectedRegex, CharSequence actual) {
+    failWithValue(message, "expected not to contain regex:<" + expectedRegex
+        + "> but was:" + Abbreviator.describe(actual), actual);
   }
 
   private static void failWithMessage(String userMessage, String ourMessage) {
@@ -216,6 +914,35 @@ public final class JUnitAsserts {
         : userMessage + ' ' + ourMessage);
   }
 
+  /**
+   * Like {@link #failWithMessage}, but attaches {@code value}, which
+   * {@code ourMessage} describes through {@link Abbreviator}, to the error.
+   */
+  private static void failWithValue(
+      String userMessage, String ourMessage, final Object value) {
+    throw new AbbreviatedAssertionFailedError((userMessage == null)
+        ? ourMessage
+        : userMessage + ' ' + ourMessage, () -> value);
+  }
+
+  private static String get(Supplier<String> message) {
+    return (message == null) ? null : message.get();
+  }
+
+  private static Supplier<String> constant(final String message) {
+    return (message == null) ? null : () -> message;
+  }
+
+  private static BufferedReader buffered(Reader reader) {
+    return (reader instanceof BufferedReader)
+        ? (BufferedReader) reader
+        : new BufferedReader(reader);
+  }
+
+  private static Reader newReader(Path path) throws IOException {
+    return Files.newBufferedReader(path, StandardCharsets.UTF_8);
+  }
+
   private static boolean equal(Object a, Object b) {
     return a == b || (a != null && a.equals(b));
   }
@@ -16,12 +16,17 @@
 
 package com.google.common.testing.junit3;
 
+import com.google.common.testing.ResourceProfiler;
+import com.google.common.testing.StressRun;
 import com.google.common.testing.TearDown;
 import com.google.common.testing.TearDownAccepter;
 import com.google.common.testing.TearDownStack;
 
 import junit.framework.TestCase;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 /**
  * A base class for test cases that require <b>reliable</b> tear-down.
  *
@@ -76,6 +81,13 @@ import junit.framework.TestCase;
  *
  * <p>Please see usage examples in {@link TearDownTestCaseTest}.
  *
+ * <p>Fixtures too expensive to build for each test can be built once for a
+ * whole suite by a {@link TearDownTestSetup}; see {@link #getSuiteSetup}.
+ *
+ * <p>If the {@value ResourceProfiler#ENABLED_PROPERTY} system property is
+ * {@code true}, what each test costs, including its set-up and tear-down, is
+ * recorded with {@link ResourceProfiler}.
+ *
  * @author Kevin Bourrillion
  */
 public abstract class TearDownTestCase extends TestCase implements TearDownAccepter {
@@ -99,11 +111,64 @@ public abstract class TearDownTestCase extends TestCase implements TearDownAccep
 
   final TearDownStack stack = new TearDownStack(true);
 
+  /** The {@link TearDownTestSetup}s running this test, innermost first. */
+  final List<TearDownTestSetup> suiteSetups =
+      new CopyOnWriteArrayList<TearDownTestSetup>();
+
+  private int stressThreads = 1;
+  private int stressRounds = 1;
+
   /**
    * Registers a TearDown implementor which will be run during {@link #tearDown()}
+   * or, if called from a test method being {@linkplain #runConcurrently run
+   * concurrently}, at the end of the current run.
    */
   public final void addTearDown(TearDown tearDown) {
-    stack.addTearDown(tearDown);
+    TearDownAccepter run = StressRun.currentTearDownAccepter();
+    if (run != null) {
+      run.addTearDown(tearDown);
+    } else {
+      stack.addTearDown(tearDown);
+    }
+  }
+
+  /**
+   * Makes the test method run on {@code threads} threads at once,
+   * {@code rounds} times, with {@link StressRun}, between a single
+   * {@link #setUp()} and tear-down. Call it from the constructor or from
+   * {@code setUp()}.
+   */
+  protected final void runConcurrently(int threads, int rounds) {
+    if (threads < 1 || rounds < 1) {
+      throw new IllegalArgumentException(
+          "threads and rounds must be positive: " + threads + ", " + rounds);
+    }
+    this.stressThreads = threads;
+    this.stressRounds = rounds;
+  }
+
+  /**
+   * Returns the innermost {@link TearDownTestSetup} of type {@code type} this
+   * test is being run by, to reach the fixtures it built, or {@code null} if
+   * this test is run without one.
+   */
+  protected final <T extends TearDownTestSetup> T getSuiteSetup(Class<T> type) {
+    for (TearDownTestSetup setup : suiteSetups) {
+      if (type.isInstance(setup)) {
+        return type.cast(setup);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns an accepter whose {@link TearDown}s run after all the tests of
+   * the suite, for fixtures this test builds but that later tests may share:
+   * that of the innermost {@link TearDownTestSetup} this test is being run
+   * by or, if it is run without one, this test itself.
+   */
+  protected final TearDownAccepter getSuiteTearDownAccepter() {
+    return suiteSetups.isEmpty() ? this : suiteSetups.get(0);
   }
 
   @Override protected final void tearDown() {
@@ -112,11 +177,24 @@ public abstract class TearDownTestCase extends TestCase implements TearDownAccep
 
   // Override to run setUp() inside the try block, not outside
   @Override public final void runBare() throws Throwable {
+    ResourceProfiler.Measurement measurement =
+        ResourceProfiler.isEnabled() ? ResourceProfiler.start() : null;
     try {
       setUp();
-      runTest();
+      if (stressThreads == 1 && stressRounds == 1) {
+        runTest();
+      } else {
+        StressRun.run(stressThreads, stressRounds, new StressRun.Body() {
+          public void run() throws Throwable {
+            runTest();
+          }
+        });
+      }
     } finally {
       tearDown();
+      if (measurement != null) {
+        measurement.stop(getClass().getName() + "." + getName());
+      }
     }
   }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit3;
+
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownAccepter;
+import com.google.common.testing.TearDownStack;
+
+import junit.extensions.TestDecorator;
+import junit.extensions.TestSetup;
+import junit.framework.Protectable;
+import junit.framework.Test;
+import junit.framework.TestResult;
+import junit.framework.TestSuite;
+
+import java.util.Enumeration;
+
+/**
+ * A {@link TestSetup} with reliable tear-down, for fixtures that are
+ * expensive enough to be shared by all the tests of a suite rather than
+ * built for each of them, such as a server. Override {@link #setUp()} to
+ * build them, and register what undoes them with {@link #addTearDown}, just
+ * as a {@link TearDownTestCase} would:
+ *
+ * <pre>
+ *   public static Test suite() {
+ *     return new ServerSetup(new TestSuite(FooTest.class));
+ *   }
+ *
+ *   static class ServerSetup extends TearDownTestSetup {
+ *     Server server;
+ *
+ *     ServerSetup(Test test) {
+ *       super(test);
+ *     }
+ *
+ *     {@code @Override} protected void setUp() throws Exception {
+ *       server = Server.start();
+ *       addTearDown(new TearDown() {
+ *         public void tearDown() {
+ *           server.stop();
+ *         }
+ *       });
+ *     }
+ *   }
+ * </pre>
+ *
+ * <p>The {@link TearDownTestCase}s this decorates, however deeply, reach it
+ * with {@link TearDownTestCase#getSuiteSetup}, and can register their own
+ * suite-wide tear-down with {@link TearDownTestCase#getSuiteTearDownAccepter}.
+ *
+ * <p>Unlike {@link TestSetup}, the tear-down runs even if {@link #setUp()}
+ * fails. Unlike {@link TearDownTestCase}, exceptions thrown by
+ * {@link TearDown}s are not only logged, but reported as an error of this
+ * suite, since they can't hide the failure of a test.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public class TearDownTestSetup extends TestSetup implements TearDownAccepter {
+
+  final TearDownStack stack = new TearDownStack();
+
+  /** Creates a setup that runs {@code test} between its set-up and tear-down. */
+  public TearDownTestSetup(Test test) {
+    super(test);
+  }
+
+  /**
+   * Registers a TearDown implementor which will be run after all the tests
+   * of this suite.
+   */
+  public final void addTearDown(TearDown tearDown) {
+    stack.addTearDown(tearDown);
+  }
+
+  /** Override to build the fixtures shared by the tests of this suite. */
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+  }
+
+  @Override protected final void tearDown() {
+    stack.runTearDown();
+  }
+
+  // Override to run setUp() inside the try block, not outside
+  @Override public void run(final TestResult result) {
+    link(getTest(), true);
+    try {
+      result.runProtected(this, new Protectable() {
+        public void protect() throws Exception {
+          try {
+            setUp();
+            basicRun(result);
+          } finally {
+            tearDown();
+          }
+        }
+      });
+    } finally {
+      link(getTest(), false);
+    }
+  }
+
+  /**
+   * Makes this setup reachable from (or, if not {@code add}, no longer from)
+   * the {@link TearDownTestCase}s in {@code test}.
+   */
+  private void link(Test test, boolean add) {
+    if (test instanceof TearDownTestCase) {
+      if (add) {
+        ((TearDownTestCase) test).suiteSetups.add(0, this);
+      } else {
+        ((TearDownTestCase) test).suiteSetups.remove(this);
+      }
+    } else if (test instanceof TestSuite) {
+      for (Enumeration<Test> tests = ((TestSuite) test).tests();
+          tests.hasMoreElements();) {
+        link(tests.nextElement(), add);
+      }
+    } else if (test instanceof TestDecorator) {
+      link(((TestDecorator) test).getTest(), add);
+    }
+  }
+}
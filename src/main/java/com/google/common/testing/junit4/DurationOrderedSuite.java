@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit4;
+
+import com.google.common.testing.TestTimings;
+
+import org.junit.runner.Description;
+import org.junit.runner.manipulation.Filter;
+import org.junit.runner.manipulation.NoTestsRemainException;
+import org.junit.runner.manipulation.Sorter;
+import org.junit.runners.Suite;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link Suite} that runs its tests slowest first, according to the
+ * {@linkplain TestTimings#getDefault default test timings}, and, when sharded
+ * across parallel workers, splits them so that all workers finish at about
+ * the same time. Usage:
+ *
+ * <pre>
+ *   {@code @RunWith(DurationOrderedSuite.class)}
+ *   {@code @SuiteClasses({FooTest.class, BarTest.class})}
+ *   public class AllTests {}
+ * </pre>
+ *
+ * <p>Each worker runs the same suite with the
+ * {@value #SHARD_COUNT_PROPERTY} system property set to the number of
+ * workers and {@value #SHARD_INDEX_PROPERTY} to its own index, from
+ * {@code 0}. Run with the {@value TestTimings#ENABLED_PROPERTY} system
+ * property set to {@code true} and tests that use a
+ * {@link TearDownMethodRule} record how long they take, so that the next run
+ * is scheduled better.
+ *
+ * <p>{@link #slowestFirst} and {@link #shard} do the same for any
+ * {@link org.junit.runner.Request}.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public class DurationOrderedSuite extends Suite {
+
+  public static final String SHARD_INDEX_PROPERTY =
+      "com.google.common.testing.junit4.DurationOrderedSuite.shardIndex";
+
+  public static final String SHARD_COUNT_PROPERTY =
+      "com.google.common.testing.junit4.DurationOrderedSuite.shardCount";
+
+  /**
+   * Called reflectively by JUnit on classes annotated with
+   * {@code @RunWith(DurationOrderedSuite.class)}.
+   */
+  public DurationOrderedSuite(Class<?> klass, RunnerBuilder builder)
+      throws InitializationError {
+    super(klass, builder);
+    TestTimings timings = TestTimings.getDefault();
+    sort(slowestFirst(timings));
+    int shards = Integer.getInteger(SHARD_COUNT_PROPERTY, 1);
+    if (shards > 1) {
+      int shard = Integer.getInteger(SHARD_INDEX_PROPERTY, 0);
+      try {
+        filter(shard(timings, getDescription(), shard, shards));
+      } catch (NoTestsRemainException e) {
+        // More shards than tests: this one has nothing to do
+      }
+    }
+  }
+
+  /**
+   * Returns a sorter that orders tests slowest first, and classes and
+   * suites by how long all their tests take together.
+   */
+  public static Sorter slowestFirst(final TestTimings timings) {
+    return new Sorter(new Comparator<Description>() {
+      public int compare(Description a, Description b) {
+        long difference = estimateNanos(timings, b) - estimateNanos(timings, a);
+        return (difference < 0) ? -1 : (difference > 0) ? 1
+            : a.getDisplayName().compareTo(b.getDisplayName());
+      }
+    });
+  }
+
+  /**
+   * Returns a filter that only keeps the tests of {@code root} that
+   * {@link TestTimings#partition} assigns to shard {@code shard} of
+   * {@code shards}.
+   */
+  public static Filter shard(TestTimings timings, Description root,
+      final int shard, final int shards) {
+    if (shard < 0 || shard >= shards) {
+      throw new IllegalArgumentException(
+          "shard " + shard + " is not in [0, " + shards + ")");
+    }
+    List<String> tests = new ArrayList<String>();
+    addTests(root, tests);
+    final Set<String> kept =
+        new HashSet<String>(timings.partition(tests, shards).get(shard));
+    return new Filter() {
+      @Override public boolean shouldRun(Description description) {
+        if (description.isTest()) {
+          return kept.contains(testName(description));
+        }
+        for (Description child : description.getChildren()) {
+          if (shouldRun(child)) {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      @Override public String describe() {
+        return "shard " + shard + " of " + shards;
+      }
+    };
+  }
+
+  /**
+   * Returns the name {@link TestTimings} knows the test {@code description}
+   * by: {@code <test class name>.<test method name>}. The method name of a
+   * parameterized test keeps its parameter index, so that each parameter set
+   * is sharded as a test of its own, while {@link TestTimings} ignores it.
+   */
+  static String testName(Description description) {
+    return (description.getMethodName() == null)
+        ? description.getDisplayName()
+        : description.getClassName() + "." + description.getMethodName();
+  }
+
+  private static long estimateNanos(
+      TestTimings timings, Description description) {
+    if (description.isTest()) {
+      return timings.estimateNanos(testName(description));
+    }
+    long result = 0;
+    for (Description child : description.getChildren()) {
+      result += estimateNanos(timings, child);
+    }
+    return result;
+  }
+
+  private static void addTests(Description description, List<String> tests) {
+    if (description.isTest()) {
+      tests.add(testName(description));
+    }
+    for (Description child : description.getChildren()) {
+      addTests(child, tests);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit4;
+
+import com.google.common.testing.LeakDetector;
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownAccepter;
+
+import org.junit.rules.MethodRule;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+import java.util.List;
+
+/**
+ * A {@link TearDownMethodRule} that also looks for resources which the test
+ * acquired and did not release by the time its {@link TearDown}s ran, with
+ * {@link LeakDetector}. Use it instead of {@link TearDownMethodRule}:
+ *
+ * <pre>
+ *   {@code @Rule} public final LeakDetectionRule leaks =
+ *       new LeakDetectionRule();
+ * </pre>
+ *
+ * <p>Leaks of a test that failed anyway are only logged, so as not to hide
+ * its failure.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class LeakDetectionRule implements MethodRule, TearDownAccepter {
+
+  private final TearDownMethodRule tearDownRule = new TearDownMethodRule();
+  private final LeakDetector.Mode mode;
+  private final int sampleEvery;
+
+  /**
+   * Creates a rule whose mode and sampling rate are set by the
+   * {@value LeakDetector#MODE_PROPERTY} and
+   * {@value LeakDetector#SAMPLE_EVERY_PROPERTY} system properties.
+   */
+  public LeakDetectionRule() {
+    this(LeakDetector.defaultMode(), LeakDetector.defaultSampleEvery());
+  }
+
+  /**
+   * Creates a rule that reports leaks as {@code mode} says, checking only
+   * one in every {@code sampleEvery} tests of the JVM, to keep its overhead
+   * low.
+   */
+  public LeakDetectionRule(LeakDetector.Mode mode, int sampleEvery) {
+    if (sampleEvery < 1) {
+      throw new IllegalArgumentException(
+          "sampleEvery must be positive: " + sampleEvery);
+    }
+    this.mode = mode;
+    this.sampleEvery = sampleEvery;
+  }
+
+  /**
+   * Registers a TearDown implementor which will be run after the test execution.
+   */
+  public final void addTearDown(TearDown tearDown) {
+    tearDownRule.addTearDown(tearDown);
+  }
+
+  /**
+   * Don't call this method directly -- it fullfils the {@link MethodRule}
+   * interface.
+   */
+  public Statement apply(Statement base, final FrameworkMethod method,
+      final Object target) {
+    final Statement withTearDown = tearDownRule.apply(base, method, target);
+    if (mode == LeakDetector.Mode.OFF
+        || !LeakDetector.shouldSample(sampleEvery)) {
+      return withTearDown;
+    }
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        LeakDetector.Snapshot before = LeakDetector.Snapshot.take();
+        boolean passed = false;
+        try {
+          withTearDown.evaluate();
+          passed = true;
+        } finally {
+          List<String> leaks = before.findLeaks();
+          LeakDetector.report(passed ? mode : LeakDetector.Mode.WARN,
+              target.getClass().getName() + "." + method.getName(), leaks);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit4;
+
+import com.google.common.testing.ResourceProfiler;
+
+import org.junit.rules.MethodRule;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+/**
+ * Records what each test costs with {@link ResourceProfiler}, under the name
+ * {@code <test class name>.<test method name>}. Usage:
+ *
+ * <pre>
+ *   {@code @Rule} public final ResourceProfilingRule profiler =
+ *       new ResourceProfilingRule();
+ * </pre>
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class ResourceProfilingRule implements MethodRule {
+
+  /**
+   * Don't call this method directly -- it fullfils the {@link MethodRule}
+   * interface.
+   */
+  public Statement apply(final Statement base, final FrameworkMethod method,
+      final Object target) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        ResourceProfiler.Measurement measurement = ResourceProfiler.start();
+        try {
+          base.evaluate();
+        } finally {
+          measurement.stop(
+              target.getClass().getName() + "." + method.getName());
+        }
+      }
+    };
+  }
+}
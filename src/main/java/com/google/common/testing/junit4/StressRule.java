@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit4;
+
+import com.google.common.testing.StressRun;
+
+import org.junit.rules.MethodRule;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+/**
+ * Runs each test concurrently on several threads, over several rounds, with
+ * {@link StressRun}. Usage:
+ *
+ * <pre>
+ *   {@code @Rule} public final StressRule stress = new StressRule(8, 100);
+ * </pre>
+ *
+ * <p>Every run includes the {@code @Before} and {@code @After} methods of
+ * the test, and all runs share the same test instance, so state of a run
+ * should be kept in local variables rather than in fields. A
+ * {@link TearDownTestCase#addTearDown} (or
+ * {@link TearDownMethodRule#addTearDown}) made during a run registers the
+ * {@link com.google.common.testing.TearDown} with that run's own stack,
+ * which is run at the end of the run.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class StressRule implements MethodRule {
+
+  private final int threads;
+  private final int rounds;
+
+  /**
+   * Creates a rule that runs each test on {@code threads} threads at once,
+   * {@code rounds} times.
+   */
+  public StressRule(int threads, int rounds) {
+    if (threads < 1 || rounds < 1) {
+      throw new IllegalArgumentException(
+          "threads and rounds must be positive: " + threads + ", " + rounds);
+    }
+    this.threads = threads;
+    this.rounds = rounds;
+  }
+
+  /**
+   * Don't call this method directly -- it fullfils the {@link MethodRule}
+   * interface.
+   */
+  public Statement apply(final Statement base, FrameworkMethod method,
+      Object target) {
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        StressRun.run(threads, rounds, new StressRun.Body() {
+          public void run() throws Throwable {
+            base.evaluate();
+          }
+        });
+      }
+    };
+  }
+}
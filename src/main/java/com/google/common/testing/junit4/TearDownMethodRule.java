@@ -2,16 +2,19 @@
 
 package com.google.common.testing.junit4;
 
+import com.google.common.testing.StressRun;
 import com.google.common.testing.TearDown;
 import com.google.common.testing.TearDownAccepter;
 import com.google.common.testing.TearDownStack;
+import com.google.common.testing.TestTimings;
 
 import org.junit.rules.MethodRule;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.Statement;
 
 /**
- * See {@link TearDownTestCase}.
+ * See {@link TearDownTestCase}. Records how long each test takes, tear-down
+ * included, in {@link TestTimings} when they are enabled.
  *
  * @author Luiz-Otavio "Z" Zorzella
  */
@@ -21,23 +24,40 @@ public final class TearDownMethodRule implements MethodRule, TearDownAccepter {
 
   /**
    * Registers a TearDown implementor which will be run after the test execution.
+   * If called during a {@link StressRun}, it is run at the end of the current
+   * run instead.
    */
   public final void addTearDown(TearDown tearDown) {
-    stack.addTearDown(tearDown);
+    TearDownAccepter run = StressRun.currentTearDownAccepter();
+    if (run != null) {
+      run.addTearDown(tearDown);
+    } else {
+      stack.addTearDown(tearDown);
+    }
   }
 
   /**
    * Don't call this method directly -- it fullfils the {@link MethodRule}
    * interface.
    */
-  public Statement apply(final Statement base, FrameworkMethod method, Object target) {
+  public Statement apply(final Statement base, final FrameworkMethod method,
+      final Object target) {
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
+        long start = System.nanoTime();
         try {
           base.evaluate();
         } finally {
-          stack.runTearDown();
+          try {
+            stack.runTearDown();
+          } finally {
+            if (TestTimings.isEnabled()) {
+              TestTimings.getDefault().record(
+                  target.getClass().getName() + "." + method.getName(),
+                  System.nanoTime() - start);
+            }
+          }
         }
       }
     };
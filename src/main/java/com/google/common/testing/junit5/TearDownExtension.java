@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit5;
+
+import com.google.common.testing.StressRun;
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownAccepter;
+import com.google.common.testing.TearDownStack;
+
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The JUnit Jupiter counterpart of
+ * {@link com.google.common.testing.junit4.TearDownMethodRule}: injects a
+ * {@link TearDownAccepter} into parameters of that type, whose
+ * {@link TearDown}s run when the test, the test class or the whole run is
+ * done, depending on the {@link Scope}. Usage:
+ *
+ * <pre>
+ *   {@code @ExtendWith(TearDownExtension.class)}
+ *   class FooTest {
+ *     {@code @Test} void foo(TearDownAccepter accepter) {
+ *       final Server server = Server.start();
+ *       accepter.addTearDown(new TearDown() {
+ *         public void tearDown() {
+ *           server.stop();
+ *         }
+ *       });
+ *       ...
+ *     }
+ *
+ *     {@code @BeforeAll} static void startDatabase(
+ *         {@code @TearDownScope(Scope.ENGINE)} TearDownAccepter accepter) {
+ *       ...
+ *     }
+ *   }
+ * </pre>
+ *
+ * <p>Each stack of {@link TearDown}s is kept in the
+ * {@link ExtensionContext.Store} of the context it belongs to, so tests that
+ * run concurrently never share one, and Jupiter runs it when that context is
+ * closed: after the {@code @AfterEach} methods of a test, after the
+ * {@code @AfterAll} methods of a class, and after all tests for the engine.
+ * All {@link TearDown}s run even if some fail, and the failures are then
+ * reported together, as by {@link TearDownStack#runTearDown}.
+ *
+ * @author Luiz-Otavio Zorzella
+ */
+public final class TearDownExtension implements ParameterResolver {
+
+  /** When the {@link TearDown}s of an injected accepter run. */
+  public enum Scope {
+    /** When the current test is done. */
+    TEST,
+    /** When all the tests of the current test class are done. */
+    CLASS,
+    /** When all the tests of the run are done. */
+    ENGINE
+  }
+
+  /**
+   * Picks the {@link Scope} of an injected {@link TearDownAccepter}. Without
+   * it, accepters injected into a test, or an {@code @BeforeEach} or
+   * {@code @AfterEach} method, are {@link Scope#TEST} scoped, and all others
+   * -- e.g. in a constructor or an {@code @BeforeAll} method --
+   * {@link Scope#CLASS} scoped.
+   */
+  @Documented
+  @Retention(RetentionPolicy.RUNTIME)
+  @Target(ElementType.PARAMETER)
+  public @interface TearDownScope {
+    Scope value();
+  }
+
+  private static final ExtensionContext.Namespace NAMESPACE =
+      ExtensionContext.Namespace.create(TearDownExtension.class);
+
+  /**
+   * Returns the accepter of {@code scope} for {@code context}, for other
+   * extensions to register {@link TearDown}s with.
+   */
+  public static TearDownAccepter getAccepter(
+      ExtensionContext context, Scope scope) {
+    ExtensionContext owner = context;
+    switch (scope) {
+      case TEST:
+        if (!context.getTestMethod().isPresent()) {
+          throw new IllegalStateException(
+              "no test is running in " + context.getDisplayName());
+        }
+        break;
+      case CLASS:
+        while (owner.getTestMethod().isPresent()) {
+          owner = owner.getParent().get();
+        }
+        if (!owner.getTestClass().isPresent()) {
+          throw new IllegalStateException(
+              "no test class is running in " + context.getDisplayName());
+        }
+        break;
+      default:
+        owner = context.getRoot();
+    }
+    // Keyed by context, since stores also look values up in their parents'
+    Stack stack = owner.getStore(NAMESPACE).getOrComputeIfAbsent(
+        owner.getUniqueId(), key -> new Stack(), Stack.class);
+    return (scope == Scope.TEST) ? stack.perTest : stack.stack;
+  }
+
+  public boolean supportsParameter(
+      ParameterContext parameterContext, ExtensionContext extensionContext) {
+    return parameterContext.getParameter().getType() == TearDownAccepter.class;
+  }
+
+  public TearDownAccepter resolveParameter(
+      ParameterContext parameterContext, ExtensionContext extensionContext) {
+    TearDownScope annotation =
+        parameterContext.findAnnotation(TearDownScope.class).orElse(null);
+    Scope scope = (annotation != null) ? annotation.value()
+        : extensionContext.getTestMethod().isPresent() ? Scope.TEST
+        : Scope.CLASS;
+    return getAccepter(extensionContext, scope);
+  }
+
+  private static final class Stack
+      implements ExtensionContext.Store.CloseableResource {
+
+    final TearDownStack stack = new TearDownStack();
+
+    /**
+     * Registers with the current {@link StressRun}, if there is one, like
+     * {@link com.google.common.testing.junit4.TearDownMethodRule}.
+     */
+    final TearDownAccepter perTest = new TearDownAccepter() {
+      public void addTearDown(TearDown tearDown) {
+        TearDownAccepter run = StressRun.currentTearDownAccepter();
+        if (run != null) {
+          run.addTearDown(tearDown);
+        } else {
+          stack.addTearDown(tearDown);
+        }
+      }
+    };
+
+    public void close() {
+      stack.runTearDown();
+    }
+  }
+}
@@ -30,6 +30,7 @@ public class AllTests {
     suite.addTestSuite(com.google.common.testing.junit3.JUnitAssertsTest.class);
     suite.addTestSuite(com.google.common.testing.junit4.JUnitAssertsTest.class);
     suite.addTestSuite(TearDownTestCaseTest.class);
+    suite.addTestSuite(com.google.common.testing.junit3.TearDownTestSetupTest.class);
     //$JUnit-END$
     return suite;
   }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class ClusterExceptionTest {
+
+  @Test
+  public void testSingleRuntimeExceptionIsReturnedAsIs() {
+    RuntimeException one = new IllegalStateException("one");
+    assertSame(one, ClusterException.create(one));
+  }
+
+  @Test
+  public void testSingleCheckedExceptionIsWrapped() {
+    IOException one = new IOException("one");
+    RuntimeException result = ClusterException.create(one);
+    assertSame(one, result.getCause());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoExceptions() {
+    ClusterException.create();
+  }
+
+  @Test
+  public void testFirstIsCauseAndOthersAreSuppressed() {
+    RuntimeException one = new RuntimeException("one");
+    RuntimeException two = new RuntimeException("two");
+    RuntimeException three = new RuntimeException("three");
+    ClusterException result =
+        (ClusterException) ClusterException.create(one, two, three);
+    assertSame(one, result.getCause());
+    assertArrayEquals(new Throwable[] {two, three}, result.getSuppressed());
+    assertEquals(Arrays.asList(one, two, three), result.exceptions);
+    assertEquals("3 exceptions were thrown. The first exception is listed as "
+        + "a cause, and the others as suppressed.", result.getMessage());
+    assertTrue(result.getStackTrace().length > 0);
+  }
+
+  @Test
+  public void testStackless() {
+    ClusterException result = (ClusterException) ClusterException.create(
+        Arrays.asList(new RuntimeException("one"), new RuntimeException("two")),
+        true);
+    assertEquals(0, result.getStackTrace().length);
+    assertEquals(1, result.getSuppressed().length);
+  }
+
+  @Test
+  public void testAlikeExceptionsAreGrouped() {
+    FailureGroups groups = new FailureGroups(2);
+    for (int i = 0; i < 100; i++) {
+      groups.add(newException("connection to port " + i + " refused"));
+    }
+    groups.add(new IllegalStateException("other"));
+    groups.add(new UnsupportedOperationException("dropped"));
+
+    ClusterException result = (ClusterException) ClusterException.create(groups);
+    assertEquals(102, result.totalOccurrences);
+    assertEquals(2, result.exceptions.size());
+    assertEquals(Arrays.asList(100, 1), result.occurrences);
+    assertEquals(1, groups.dropped());
+    assertEquals("connection to port 0 refused", result.getCause().getMessage());
+    assertEquals(1, result.getSuppressed().length);
+    String[] lines = result.getMessage().split("\n");
+    assertEquals("102 exceptions were thrown, 2 of which are listed: the first "
+        + "as a cause, and the others as suppressed. Occurrences:", lines[0]);
+    assertEquals("  100 x java.lang.RuntimeException: "
+        + "connection to port 0 refused", lines[1]);
+    assertEquals("  1 x java.lang.IllegalStateException: other", lines[2]);
+    assertEquals("  1 x others, not kept", lines[3]);
+  }
+
+  @Test
+  public void testDifferentSitesAreNotGrouped() {
+    FailureGroups groups = new FailureGroups();
+    groups.add(newException("boom"));
+    groups.add(new RuntimeException("boom"));
+    assertEquals(2, groups.exemplars().size());
+  }
+
+  private static RuntimeException newException(String message) {
+    return new RuntimeException(message);
+  }
+}
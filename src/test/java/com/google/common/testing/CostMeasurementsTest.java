@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class CostMeasurementsTest {
+
+  @Test
+  public void testPercentile() {
+    long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    assertEquals(1, CostMeasurements.percentile(sorted, 0.1));
+    assertEquals(5, CostMeasurements.percentile(sorted, 50));
+    assertEquals(10, CostMeasurements.percentile(sorted, 99));
+    assertEquals(10, CostMeasurements.percentile(sorted, 100));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPercentileOutOfRange() {
+    CostMeasurements.percentile(new long[] {1}, 0);
+  }
+
+  @Test
+  public void testHistogram() {
+    assertEquals("\n  [0ns, 1ns)                  1 ####################"
+        + "\n  [1ns, 2ns)                  0 "
+        + "\n  [2ns, 4ns)                  2 ########################################",
+        CostMeasurements.describeLatencies(new long[] {0, 2, 3}));
+  }
+
+  @Test
+  public void testFormat() {
+    assertEquals("999ns", CostMeasurements.formatNanos(999));
+    assertEquals("1.5ms", CostMeasurements.formatNanos(1500000));
+    assertEquals("2.00s", CostMeasurements.formatNanos(2000000000));
+    assertEquals("1.5KiB", CostMeasurements.formatBytes(1536));
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class ExecutorFixtureTest {
+
+  private static Runnable sleeper(final long millis) {
+    return new Runnable() {
+      public void run() {
+        try {
+          Thread.sleep(millis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+  }
+
+  @Test
+  public void testLetsTasksFinish() throws Exception {
+    TearDownStack stack = new TearDownStack();
+    ExecutorFixture fixture = ExecutorFixture.create(stack);
+    final AtomicInteger done = new AtomicInteger();
+    List<ExecutorService> executors = new ArrayList<ExecutorService>();
+    executors.add(fixture.newFixedThreadPool(2));
+    executors.add(fixture.newCachedThreadPool());
+    executors.add(fixture.track(Executors.newSingleThreadExecutor()));
+    for (ExecutorService executor : executors) {
+      executor.execute(new Runnable() {
+        public void run() {
+          sleeper(50).run();
+          done.incrementAndGet();
+        }
+      });
+    }
+    stack.runTearDown();
+    assertEquals(3, done.get());
+    for (ExecutorService executor : executors) {
+      assertTrue(executor.isTerminated());
+    }
+  }
+
+  @Test
+  public void testForgetsTerminatedThreads() throws Exception {
+    TearDownStack stack = new TearDownStack();
+    ExecutorFixture fixture = ExecutorFixture.create(stack);
+    ExecutorService executor = fixture.newFixedThreadPool(1);
+    Thread.UncaughtExceptionHandler handler =
+        Thread.getDefaultUncaughtExceptionHandler();
+    Thread.setDefaultUncaughtExceptionHandler(
+        new Thread.UncaughtExceptionHandler() {
+          public void uncaughtException(Thread thread, Throwable e) { }
+        });
+    try {
+      // Each task kills its thread, which the pool then replaces
+      for (int i = 0; i < 100; i++) {
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+          public void run() {
+            ran.countDown();
+            throw new IllegalStateException("killing the thread");
+          }
+        });
+        assertTrue(ran.await(10, TimeUnit.SECONDS));
+      }
+      assertTrue(String.valueOf(fixture.trackedThreadCount()),
+          fixture.trackedThreadCount() < 10);
+      stack.runTearDown();
+    } finally {
+      Thread.setDefaultUncaughtExceptionHandler(handler);
+    }
+  }
+
+  @Test
+  public void testExecutorsThatFailToBeCreatedAreNotShutDown()
+      throws Exception {
+    TearDownStack stack = new TearDownStack();
+    ExecutorFixture fixture = ExecutorFixture.create(stack);
+    try {
+      fixture.newFixedThreadPool(0);
+      fail("no exception thrown");
+    } catch (IllegalArgumentException expected) {
+    }
+    ExecutorService executor = fixture.newFixedThreadPool(1);
+    stack.runTearDown();
+    assertTrue(executor.isTerminated());
+  }
+
+  @Test
+  public void testInterruptedTearDownShutsExecutorsDownNow()
+      throws Exception {
+    TearDownStack stack = new TearDownStack();
+    ExecutorFixture fixture = ExecutorFixture.create(stack);
+    ExecutorService executor = fixture.newFixedThreadPool(1);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    executor.execute(new Runnable() {
+      public void run() {
+        started.countDown();
+        try {
+          Thread.sleep(60000);
+        } catch (InterruptedException e) {
+          interrupted.countDown();
+        }
+      }
+    });
+    started.await();
+    Thread.currentThread().interrupt();
+    try {
+      stack.runTearDown();
+      fail("no exception thrown");
+    } catch (RuntimeException expected) {
+      assertTrue(expected.getCause() instanceof InterruptedException);
+    } finally {
+      Thread.interrupted();
+    }
+    assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testShutsDownUnderOneSharedGracePeriod() throws Exception {
+    TearDownStack stack = new TearDownStack();
+    Duration gracePeriod = Duration.ofMillis(300);
+    ExecutorFixture fixture = ExecutorFixture.create(stack, gracePeriod);
+    int executors = 5;
+    for (int i = 0; i < executors; i++) {
+      fixture.newFixedThreadPool(1).execute(sleeper(60000));
+    }
+    long start = System.nanoTime();
+    try {
+      stack.runTearDown();
+      fail();
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(
+          "5 executors did not finish within PT0.3S:"));
+      assertTrue(e.getMessage(), e.getMessage().contains(
+          "java.lang.Thread.sleep("));
+    }
+    // Rather than a grace period for each of them in turn
+    assertTrue(System.nanoTime() - start
+        < gracePeriod.multipliedBy(executors).toNanos());
+  }
+
+  @Test
+  public void testFlagsThreadsThatIgnoreInterruption() throws Exception {
+    TearDownStack stack = new TearDownStack();
+    ExecutorFixture fixture = ExecutorFixture.create(stack, Duration.ZERO);
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    fixture.newFixedThreadPool(1).execute(new Runnable() {
+      public void run() {
+        started.countDown();
+        while (true) {
+          try {
+            release.await();
+            return;
+          } catch (InterruptedException e) {
+            // Stubborn
+          }
+        }
+      }
+    });
+    started.await();
+    try {
+      stack.runTearDown();
+      fail();
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(
+          "leaked thread \"ExecutorFixture-"));
+      assertTrue(e.getMessage(), e.getMessage().contains(
+          "-pool-1-thread-1\" (WAITING), which ignored being interrupted"));
+    } finally {
+      release.countDown();
+    }
+  }
+
+  @Test
+  public void testVirtualThreads() throws Exception {
+    TearDownStack stack = new TearDownStack();
+    ExecutorFixture fixture = ExecutorFixture.create(stack);
+    if (!ExecutorFixture.supportsVirtualThreads()) {
+      try {
+        fixture.newVirtualThreadPerTaskExecutor();
+        fail();
+      } catch (UnsupportedOperationException expected) {
+      }
+      Assume.assumeTrue(false);
+    }
+    ExecutorService executor = fixture.newVirtualThreadPerTaskExecutor();
+    final AtomicInteger done = new AtomicInteger();
+    for (int i = 0; i < 100; i++) {
+      executor.execute(new Runnable() {
+        public void run() {
+          done.incrementAndGet();
+        }
+      });
+    }
+    stack.runTearDown();
+    assertTrue(executor.awaitTermination(0, TimeUnit.SECONDS));
+    assertEquals(100, done.get());
+  }
+}
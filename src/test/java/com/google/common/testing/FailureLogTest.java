@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class FailureLogTest {
+
+  private final Logger logger =
+      Logger.getLogger(FailureLogTest.class.getName());
+  private final TestLogHandler handler = new TestLogHandler();
+
+  @Before
+  public void setUp() {
+    logger.setUseParentHandlers(false);
+    logger.addHandler(handler);
+  }
+
+  @After
+  public void tearDown() {
+    logger.removeHandler(handler);
+    logger.setUseParentHandlers(true);
+  }
+
+  private static RuntimeException failure(int id) {
+    return new RuntimeException("connection " + id + " refused");
+  }
+
+  private List<String> messages() {
+    List<String> result = new ArrayList<String>();
+    for (LogRecord record : handler.getStoredLogRecords()) {
+      result.add(MessageFormat.format(record.getMessage(),
+          record.getParameters()));
+    }
+    return result;
+  }
+
+  @Test
+  public void testLogsRepeatsInFullOnlyOnce() {
+    FailureLog log = new FailureLog(logger, Level.INFO, "failed", 10, false);
+    RuntimeException first = null;
+    for (int i = 1; i <= 5; i++) {
+      RuntimeException failure = failure(i);
+      if (first == null) {
+        first = failure;
+      }
+      log.log(failure);
+    }
+    List<LogRecord> records = handler.getStoredLogRecords();
+    assertEquals(3, records.size());
+    assertSame(first, records.get(0).getThrown());
+    assertNull(records.get(1).getThrown());
+    assertEquals("failed: connection 1 refused", messages().get(0));
+    assertEquals("failed 2 times so far, logged in full the first time: "
+        + "java.lang.RuntimeException: connection 2 refused", messages().get(1));
+    assertEquals("failed 4 times so far, logged in full the first time: "
+        + "java.lang.RuntimeException: connection 4 refused", messages().get(2));
+    assertEquals(5L, (long) log.getCounts().values().iterator().next());
+  }
+
+  @Test
+  public void testSummary() {
+    FailureLog log = new FailureLog(logger, Level.INFO, "failed", 2, false);
+    assertNull(log.summary());
+    for (int i = 1; i <= 2; i++) {
+      log.log(failure(i));
+    }
+    log.log(new IllegalStateException("closed"));
+    log.log(new IllegalArgumentException("too many"));
+    assertEquals("4 failed, 2 distinct:\n"
+        + "  2 x java.lang.RuntimeException: connection # refused\n"
+        + "  1 x java.lang.IllegalStateException: closed\n"
+        + "  1 x others", log.summary());
+    assertTrue(messages().get(3), messages().get(3).startsWith(
+        "failed (too many distinct ones to log in full): "));
+  }
+
+  @Test
+  public void testCountsEvenWhenNotLoggable() {
+    FailureLog log = new FailureLog(logger, Level.FINE, "failed", 10, false);
+    for (int i = 1; i <= 2; i++) {
+      log.log(failure(i));
+    }
+    assertEquals(0, handler.getStoredLogRecords().size());
+    assertEquals(2L, (long) log.getCounts().values().iterator().next());
+  }
+
+  @Test
+  public void testReset() {
+    FailureLog log = new FailureLog(logger, Level.INFO, "failed", 10, false);
+    for (int i = 0; i < 2; i++) {
+      log.log(failure(1));
+      log.reset();
+    }
+    assertEquals(2, handler.getStoredLogRecords().size());
+    assertNotNull(handler.getStoredLogRecords().get(1).getThrown());
+    assertNull(log.summary());
+  }
+}
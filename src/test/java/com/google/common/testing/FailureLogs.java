@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+/**
+ * Lets tests in other packages reset the package-private {@link FailureLog}s
+ * of this one, so that what they log doesn't depend on what other tests
+ * running in the same JVM logged before.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public final class FailureLogs {
+
+  private FailureLogs() { }
+
+  /**
+   * Forgets the failures logged by {@link TearDownStack}s that suppress
+   * throws, so that the next one of each kind is logged in full again.
+   */
+  public static void resetTearDownFailures() {
+    TearDownStack.failures.reset();
+  }
+}
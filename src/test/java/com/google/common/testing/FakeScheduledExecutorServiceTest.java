@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class FakeScheduledExecutorServiceTest {
+
+  private final FakeClock clock = new FakeClock();
+  private final FakeScheduledExecutorService scheduler =
+      new FakeScheduledExecutorService(clock);
+  private final List<String> events = new ArrayList<String>();
+
+  @Test
+  public void testClock() {
+    assertEquals(FakeClock.DEFAULT_START, clock.instant());
+    clock.advance(Duration.ofMillis(1500));
+    assertEquals(Instant.parse("2010-01-01T00:00:01.500Z"), clock.instant());
+    assertEquals(clock.instant().toEpochMilli(), clock.millis());
+    try {
+      clock.advance(-1, SECONDS);
+      fail("no exception thrown");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void testTasksRunInOrderAtTheirTime() {
+    scheduler.schedule(record("b"), 2, SECONDS);
+    scheduler.schedule(record("a"), 1, SECONDS);
+    scheduler.schedule(record("c"), 3, SECONDS);
+    assertEquals(0, scheduler.runDueTasks());
+    assertEquals(2, scheduler.advance(2, SECONDS));
+    assertEquals(Arrays.asList("a@1", "b@2"), events);
+    assertEquals(1, scheduler.advance(1, MINUTES));
+    assertEquals(Arrays.asList("a@1", "b@2", "c@3"), events);
+    assertEquals(FakeClock.DEFAULT_START.plusSeconds(62), clock.instant());
+  }
+
+  @Test
+  public void testSubmitRunsOnNextAdvance() throws Exception {
+    Future<String> future = scheduler.submit(new Callable<String>() {
+      public String call() {
+        return "done";
+      }
+    });
+    assertFalse(future.isDone());
+    scheduler.runDueTasks();
+    assertEquals("done", future.get());
+  }
+
+  @Test
+  public void testPeriodicTasks() {
+    scheduler.scheduleAtFixedRate(record("rate"), 1, 2, SECONDS);
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        events.add("delay@" + seconds());
+        clock.advance(1, SECONDS);
+      }
+    }, 0, 3, SECONDS);
+    scheduler.advance(7, SECONDS);
+    assertEquals(Arrays.asList("delay@0", "rate@1", "rate@3", "delay@4",
+        "rate@5", "rate@7"), events);
+    scheduler.shutdown();
+    assertTrue(scheduler.isTerminated());
+  }
+
+  @Test
+  public void testHugeDelaysSaturate() {
+    ScheduledFuture<?> future =
+        scheduler.schedule(record("never"), Long.MAX_VALUE, SECONDS);
+    scheduler.scheduleAtFixedRate(record("rate"), 0, Long.MAX_VALUE, SECONDS);
+    assertEquals(1, scheduler.advance(1000000000, SECONDS));
+    assertEquals(Arrays.asList("rate@0"), events);
+    assertTrue(future.getDelay(SECONDS) >= 0);
+    assertEquals(2, scheduler.getPendingTasks().size());
+  }
+
+  @Test
+  public void testCancel() {
+    ScheduledFuture<?> future = scheduler.schedule(record("a"), 1, SECONDS);
+    assertEquals(1, scheduler.getPendingTasks().size());
+    future.cancel(false);
+    assertEquals(0, scheduler.getPendingTasks().size());
+    scheduler.advance(1, SECONDS);
+    assertEquals(Arrays.asList(), events);
+  }
+
+  @Test
+  public void testShutdown() {
+    scheduler.schedule(record("delayed"), 1, SECONDS);
+    scheduler.scheduleAtFixedRate(record("periodic"), 1, 1, SECONDS);
+    scheduler.shutdown();
+    assertFalse(scheduler.isTerminated());
+    try {
+      scheduler.execute(record("late"));
+      fail("no exception thrown");
+    } catch (RejectedExecutionException expected) {
+    }
+    scheduler.advance(5, SECONDS);
+    assertEquals(Arrays.asList("delayed@1"), events);
+    assertTrue(scheduler.isTerminated());
+  }
+
+  @Test
+  public void testTearDownFailsOnPendingTasks() {
+    TearDownStack stack = new TearDownStack();
+    FakeScheduledExecutorService checked =
+        FakeScheduledExecutorService.create(stack, clock);
+    checked.schedule(record("forgotten"), 90, SECONDS);
+    try {
+      stack.runTearDown();
+      fail("no exception thrown");
+    } catch (RuntimeException e) {
+      String message = e.getCause().getMessage();
+      assertTrue(message, message.startsWith(
+          "1 tasks still pending at 2010-01-01T00:00:00Z:\n  due in 90.00s: "));
+    }
+
+    checked = FakeScheduledExecutorService.create(stack, clock);
+    checked.schedule(record("cancelled"), 90, SECONDS);
+    checked.shutdownNow();
+    stack.runTearDown();
+  }
+
+  private Runnable record(final String name) {
+    return new Runnable() {
+      public void run() {
+        events.add(name + "@" + seconds());
+      }
+
+      @Override public String toString() {
+        return name;
+      }
+    };
+  }
+
+  private long seconds() {
+    return clock.instant().getEpochSecond()
+        - FakeClock.DEFAULT_START.getEpochSecond();
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class FixtureCacheTest {
+
+  private final List<String> events =
+      Collections.synchronizedList(new ArrayList<String>());
+
+  private FixtureCache.Loader<String> loader(final String name) {
+    return new FixtureCache.Loader<String>() {
+      public String load(TearDownAccepter accepter) {
+        events.add("built " + name);
+        accepter.addTearDown(new TearDown() {
+          public void tearDown() {
+            events.add("torn down " + name);
+          }
+        });
+        return name;
+      }
+    };
+  }
+
+  /** Gets {@code key} for a test that is done right away. */
+  private String getAndRelease(FixtureCache cache, String key) {
+    TearDownStack test = new TearDownStack();
+    String result = cache.get(test, key, loader(key));
+    test.runTearDown();
+    return result;
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    FixtureCache cache = new FixtureCache(10, Long.MAX_VALUE,
+        FixtureCache.Eviction.LRU);
+    assertEquals("a", getAndRelease(cache, "a"));
+    assertEquals("a", getAndRelease(cache, "a"));
+    assertEquals("b", getAndRelease(cache, "b"));
+    assertEquals(Arrays.asList("built a", "built b"), events);
+    FixtureCache.Stats stats = cache.getStats();
+    assertEquals(1, stats.hits);
+    assertEquals(2, stats.misses);
+    assertEquals(2, stats.entries);
+    assertEquals(1.0 / 3, stats.hitRate(), 0.001);
+    assertEquals("1 hits, 2 misses (33.3% hit rate), 0 evictions, "
+        + "0 load failures, 2 entries weighing 0", stats.toString());
+  }
+
+  @Test
+  public void testLruEviction() {
+    FixtureCache cache = new FixtureCache(2, Long.MAX_VALUE,
+        FixtureCache.Eviction.LRU);
+    getAndRelease(cache, "a");
+    getAndRelease(cache, "b");
+    getAndRelease(cache, "a");
+    getAndRelease(cache, "c");
+    assertEquals(Arrays.asList("built a", "built b", "built c", "torn down b"),
+        events);
+    assertEquals(1, cache.getStats().evictions);
+  }
+
+  @Test
+  public void testLfuEviction() {
+    FixtureCache cache = new FixtureCache(2, Long.MAX_VALUE,
+        FixtureCache.Eviction.LFU);
+    getAndRelease(cache, "a");
+    getAndRelease(cache, "a");
+    getAndRelease(cache, "a");
+    getAndRelease(cache, "b");
+    getAndRelease(cache, "b");
+    getAndRelease(cache, "c");
+    assertEquals(Arrays.asList("built a", "built b", "built c", "torn down b"),
+        events);
+    events.clear();
+    getAndRelease(cache, "d");
+    assertEquals(Arrays.asList("built d", "torn down c"), events);
+  }
+
+  @Test
+  public void testWeightBound() {
+    FixtureCache cache = new FixtureCache(10, 10, FixtureCache.Eviction.LRU);
+    FixtureCache.Weigher<String> weigher = new FixtureCache.Weigher<String>() {
+      public long weigh(String value) {
+        return value.length();
+      }
+    };
+    TearDownStack first = new TearDownStack();
+    cache.get(first, "12345", loader("12345"), weigher);
+    first.runTearDown();
+    assertEquals(5, cache.getStats().weight);
+    cache.get(new TearDownStack(), "123456", loader("123456"), weigher);
+    assertEquals("torn down 12345", events.get(2));
+    assertEquals(6, cache.getStats().weight);
+  }
+
+  @Test
+  public void testFixturesInUseAreNotEvicted() {
+    FixtureCache cache = new FixtureCache(1, Long.MAX_VALUE,
+        FixtureCache.Eviction.LRU);
+    TearDownStack first = new TearDownStack();
+    cache.get(first, "a", loader("a"));
+    getAndRelease(cache, "b");
+    assertEquals(Arrays.asList("built a", "built b", "torn down b"), events);
+    first.runTearDown();
+    assertEquals(3, events.size());
+    getAndRelease(cache, "c");
+    assertEquals("torn down a", events.get(4));
+  }
+
+  @Test
+  public void testFailedLoadIsTornDownAndRetried() {
+    FixtureCache cache = new FixtureCache(10, Long.MAX_VALUE,
+        FixtureCache.Eviction.LRU);
+    final AtomicInteger attempts = new AtomicInteger();
+    FixtureCache.Loader<String> failingOnce = new FixtureCache.Loader<String>() {
+      public String load(TearDownAccepter accepter) throws Exception {
+        accepter.addTearDown(new TearDown() {
+          public void tearDown() {
+            events.add("partially torn down");
+          }
+        });
+        if (attempts.incrementAndGet() == 1) {
+          throw new Exception("not yet");
+        }
+        return "loaded";
+      }
+    };
+    TearDownStack test = new TearDownStack();
+    try {
+      cache.get(test, "key", failingOnce);
+      fail();
+    } catch (RuntimeException e) {
+      assertEquals("not yet", e.getCause().getMessage());
+    }
+    assertEquals(Arrays.asList("partially torn down"), events);
+    assertEquals("loaded", cache.get(test, "key", failingOnce));
+    assertEquals(1, cache.getStats().loadFailures);
+    assertEquals(1, cache.getStats().misses);
+  }
+
+  @Test
+  public void testClear() {
+    FixtureCache cache = new FixtureCache(10, Long.MAX_VALUE,
+        FixtureCache.Eviction.LRU);
+    getAndRelease(cache, "a");
+    getAndRelease(cache, "b");
+    cache.clear();
+    assertTrue(events.containsAll(Arrays.asList("torn down a", "torn down b")));
+    assertEquals(0, cache.getStats().entries);
+  }
+
+  @Test
+  public void testBuiltOnceAcrossThreads() throws Throwable {
+    final FixtureCache cache = new FixtureCache(10, Long.MAX_VALUE,
+        FixtureCache.Eviction.LRU);
+    final List<String> seen = Collections.synchronizedList(new ArrayList<String>());
+    StressRun.run(8, 2, new StressRun.Body() {
+      public void run() {
+        seen.add(cache.get(StressRun.currentTearDownAccepter(), "shared",
+            loader("shared")));
+      }
+    });
+    assertEquals(Arrays.asList("built shared"), events);
+    assertEquals(16, seen.size());
+    assertSame(seen.get(0), seen.get(15));
+    assertEquals(15, cache.getStats().hits);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.testing.junit4.JUnitAsserts;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class FlightRecorderEventsTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Recording recording;
+
+  @Before
+  public void setUp() {
+    assertTrue(FlightRecorderEvents.isAvailable());
+    recording = new Recording();
+    recording.enable(FlightRecorderEvents.TEAR_DOWN);
+    recording.enable(FlightRecorderEvents.LOG_BURST);
+    recording.enable(FlightRecorderEvents.SLOW_COMPARISON)
+        .withThreshold(Duration.ZERO);
+    recording.start();
+  }
+
+  @After
+  public void tearDown() {
+    recording.close();
+  }
+
+  /** Stops recording, and returns the events named {@code name}. */
+  private List<RecordedEvent> stop(String name) throws Exception {
+    recording.stop();
+    Path file = folder.newFile("recording.jfr").toPath();
+    recording.dump(file);
+    List<RecordedEvent> result = new ArrayList<RecordedEvent>();
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      if (event.getEventType().getName().equals(name)) {
+        result.add(event);
+      }
+    }
+    return result;
+  }
+
+  private static class Failing implements TearDown {
+    public void tearDown() {
+      throw new IllegalStateException("broken");
+    }
+  }
+
+  @Test
+  public void testTearDownEvents() throws Exception {
+    TearDownStack stack = new TearDownStack(true);
+    stack.addTearDown(new Failing());
+    stack.addTearDown(new TearDown() {
+      public void tearDown() throws Exception {
+        Thread.sleep(5);
+      }
+    });
+    stack.runTearDown();
+    List<RecordedEvent> events = stop(FlightRecorderEvents.TEAR_DOWN);
+    assertEquals(2, events.size());
+    assertTrue(events.get(0).getDuration().toMillis() >= 5);
+    assertNull(events.get(0).getString("failure"));
+    assertEquals(Failing.class.getName(),
+        events.get(1).getString("tearDownClass"));
+    assertEquals("java.lang.IllegalStateException: broken",
+        events.get(1).getString("failure"));
+  }
+
+  @Test
+  public void testLogBurstEvents() throws Exception {
+    TestLogHandler handler = new TestLogHandler();
+    for (int i = 0; i < 3; i++) {
+      handler.publish(new LogRecord(Level.INFO, "first"));
+    }
+    Thread.sleep(FlightRecorderEvents.LOG_BURST_GAP_MILLIS * 5);
+    handler.publish(new LogRecord(Level.INFO, "second"));
+    handler.getStoredLogRecords();
+    List<RecordedEvent> events = stop(FlightRecorderEvents.LOG_BURST);
+    assertEquals(2, events.size());
+    assertEquals(3, events.get(0).getInt("records"));
+    assertEquals(1, events.get(1).getInt("records"));
+    assertEquals(TestLogHandler.class.getName(),
+        events.get(0).getString("handler"));
+  }
+
+  @Test
+  public void testComparisonEvents() throws Exception {
+    JUnitAsserts.assertContainsRegex("b+", "abbbc");
+    List<RecordedEvent> events = stop(FlightRecorderEvents.SLOW_COMPARISON);
+    assertEquals(1, events.size());
+    assertEquals("regex", events.get(0).getString("kind"));
+    assertEquals("b+", events.get(0).getString("pattern"));
+    assertEquals(5, events.get(0).getLong("inputLength"));
+  }
+
+  @Test
+  public void testLineComparisonEvents() throws Exception {
+    JUnitAsserts.assertSomeLineContainsRegex("c+",
+        new StringReader("ab\nabc\nd"));
+    JUnitAsserts.assertNoLineContainsRegex("e", new StringReader("ab\nd"));
+    JUnitAsserts.assertContainsAllRegexes(Arrays.asList("a", "b"), "ab");
+    List<RecordedEvent> events = stop(FlightRecorderEvents.SLOW_COMPARISON);
+    assertEquals(3, events.size());
+    assertEquals("line regex", events.get(0).getString("kind"));
+    assertEquals("c+", events.get(0).getString("pattern"));
+    assertEquals(5, events.get(0).getLong("inputLength"));
+    assertEquals("line regex", events.get(1).getString("kind"));
+    assertEquals(3, events.get(1).getLong("inputLength"));
+    assertEquals("multi-pattern scan", events.get(2).getString("kind"));
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static com.google.common.testing.junit4.JUnitAsserts.assertContentsEqual;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.testing.junit4.TearDownTestCase;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class InMemoryFileSystemTest extends TearDownTestCase {
+
+  private final InMemoryFileSystem fileSystem = InMemoryFileSystem.create(this);
+
+  @Test
+  public void testPaths() {
+    Path path = fileSystem.getPath("/a/b", "c");
+    assertEquals("/a/b/c", path.toString());
+    assertEquals("c", path.getFileName().toString());
+    assertEquals("/a/b", path.getParent().toString());
+    assertEquals("/", path.getRoot().toString());
+    assertEquals(3, path.getNameCount());
+    assertEquals("b/c", path.subpath(1, 3).toString());
+    assertTrue(path.startsWith("/a"));
+    assertFalse(path.startsWith("a"));
+    assertTrue(path.endsWith("b/c"));
+    assertEquals("/a/c",
+        fileSystem.getPath("/a/./b/../c").normalize().toString());
+    assertEquals("../../d/e",
+        path.relativize(fileSystem.getPath("/a/d/e")).toString());
+    assertEquals("/a/b/c/d", path.resolve("d").toString());
+    assertEquals("/a/b/d", path.resolveSibling("d").toString());
+    assertEquals("/x", path.resolve("/x").toString());
+    assertEquals(path, fileSystem.getPath("a/b/c").toAbsolutePath());
+    assertEquals("memory", path.toUri().getScheme());
+  }
+
+  @Test
+  public void testFilesAndDirectories() throws Exception {
+    Path dir = Files.createDirectories(fileSystem.getPath("/a/b"));
+    Path file = dir.resolve("file.txt");
+    Files.write(file, "hello".getBytes(UTF_8));
+    Files.write(dir.resolve("other.txt"), "world".getBytes(UTF_8));
+    assertEquals(Arrays.asList("hello"), Files.readAllLines(file, UTF_8));
+    assertTrue(Files.isDirectory(dir));
+    assertTrue(Files.isRegularFile(file));
+    assertEquals(5, Files.size(file));
+    assertEquals(Arrays.asList("file.txt", "other.txt"), list(dir, "*.txt"));
+    assertEquals(Arrays.asList("file.txt"), list(dir, "f*.{txt,csv}"));
+
+    try {
+      Files.delete(dir);
+      fail("no exception thrown");
+    } catch (DirectoryNotEmptyException expected) {
+    }
+    try {
+      Files.createDirectory(dir);
+      fail("no exception thrown");
+    } catch (FileAlreadyExistsException expected) {
+    }
+
+    Path copy = fileSystem.getPath("/a/copy.txt");
+    Files.copy(file, copy);
+    Files.write(file, "changed".getBytes(UTF_8));
+    assertEquals("hello", new String(Files.readAllBytes(copy), UTF_8));
+    Files.move(copy, file, StandardCopyOption.REPLACE_EXISTING);
+    assertFalse(Files.exists(copy));
+    assertEquals("hello", new String(Files.readAllBytes(file), UTF_8));
+
+    Files.delete(file);
+    try {
+      Files.readAllBytes(file);
+      fail("no exception thrown");
+    } catch (NoSuchFileException expected) {
+    }
+  }
+
+  @Test
+  public void testAttributes() throws Exception {
+    Path file = Files.createFile(fileSystem.getPath("/file"));
+    FileTime time = FileTime.fromMillis(1234567890000L);
+    Files.setLastModifiedTime(file, time);
+    BasicFileAttributes attributes =
+        Files.readAttributes(file, BasicFileAttributes.class);
+    assertEquals(time, attributes.lastModifiedTime());
+    assertTrue(attributes.isRegularFile());
+    assertEquals(0L, Files.getAttribute(file, "basic:size"));
+    assertEquals(time, Files.readAttributes(file, "*").get("lastModifiedTime"));
+  }
+
+  @Test
+  public void testFileChannel() throws Exception {
+    Path path = fileSystem.getPath("/channel");
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE);
+    try {
+      channel.write(ByteBuffer.wrap("abcdef".getBytes(UTF_8)));
+      assertEquals(6, channel.position());
+      channel.write(ByteBuffer.wrap("XY".getBytes(UTF_8)), 2);
+      channel.write(ByteBuffer.wrap("!".getBytes(UTF_8)), 8);
+      assertEquals(9, channel.size());
+      ByteBuffer read = ByteBuffer.allocate(20);
+      assertEquals(9, channel.read(read, 0));
+      assertArrayEquals(new byte[] {'a', 'b', 'X', 'Y', 'e', 'f', 0, 0, '!'},
+          Arrays.copyOf(read.array(), 9));
+      channel.truncate(4);
+      assertEquals(4, channel.position());
+      assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+    } finally {
+      channel.close();
+    }
+
+    Files.write(path, "+".getBytes(UTF_8), StandardOpenOption.APPEND);
+    assertEquals("abXY+", new String(Files.readAllBytes(path), UTF_8));
+  }
+
+  @Test
+  public void testReadOnlyViewIsASnapshot() throws Exception {
+    Path path = fileSystem.getPath("/view");
+    InMemoryFileChannel channel = (InMemoryFileChannel) FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      channel.write(ByteBuffer.wrap("abcdef".getBytes(UTF_8)));
+      ByteBuffer view = channel.readOnlyView(1, 4);
+      channel.write(ByteBuffer.wrap("XY".getBytes(UTF_8)), 1);
+      channel.truncate(2);
+      channel.write(ByteBuffer.wrap("Z".getBytes(UTF_8)), 3);
+      byte[] seen = new byte[view.remaining()];
+      view.get(seen);
+      assertEquals("bcde", new String(seen, UTF_8));
+      assertTrue(view.isReadOnly());
+    } finally {
+      channel.close();
+    }
+    assertEquals("aX\0Z", new String(Files.readAllBytes(path), UTF_8));
+  }
+
+  @Test
+  public void testContentsEqual() throws Exception {
+    byte[] contents = new byte[100000];
+    Arrays.fill(contents, (byte) 'a');
+    Path expected = Files.write(fileSystem.getPath("/expected"), contents);
+    Path actual = Files.write(fileSystem.getPath("/actual"), contents);
+    assertContentsEqual(expected, actual);
+    contents[54321] = 'b';
+    Files.write(actual, contents);
+    try {
+      assertContentsEqual(expected, actual);
+      fail("no exception thrown");
+    } catch (AssertionError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(
+          "contents differ at offset:<54321>"));
+    }
+  }
+
+  @Test
+  public void testCloseDiscardsEverything() throws Exception {
+    InMemoryFileSystem other = InMemoryFileSystem.newFileSystem();
+    Path file = Files.write(other.getPath("/file"), new byte[10]);
+    other.close();
+    assertFalse(other.isOpen());
+    try {
+      Files.size(file);
+      fail("no exception thrown");
+    } catch (ClosedFileSystemException expected) {
+    }
+  }
+
+  private List<String> list(Path dir, String glob) throws Exception {
+    List<String> result = new ArrayList<String>();
+    DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob);
+    try {
+      for (Path path : stream) {
+        result.add(path.getFileName().toString());
+      }
+    } finally {
+      stream.close();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class LazyFixtureTest {
+
+  private final List<String> events =
+      Collections.synchronizedList(new ArrayList<String>());
+
+  private LazyFixture.Builder<Object> counting(final AtomicInteger builds) {
+    return new LazyFixture.Builder<Object>() {
+      public Object build(TearDownAccepter accepter) {
+        builds.incrementAndGet();
+        events.add("built");
+        accepter.addTearDown(new TearDown() {
+          public void tearDown() {
+            events.add("torn down");
+          }
+        });
+        return new Object();
+      }
+    };
+  }
+
+  @Test
+  public void testUnusedFixtureCostsNothing() {
+    TearDownStack stack = new TearDownStack();
+    AtomicInteger builds = new AtomicInteger();
+    LazyFixture<Object> fixture = LazyFixture.create(stack, counting(builds));
+    stack.runTearDown();
+    assertFalse(fixture.isBuilt());
+    assertEquals(0, builds.get());
+    assertTrue(events.isEmpty());
+  }
+
+  @Test
+  public void testBuiltOnceOnFirstUse() {
+    TearDownStack stack = new TearDownStack();
+    AtomicInteger builds = new AtomicInteger();
+    LazyFixture<Object> fixture = LazyFixture.create(stack, counting(builds));
+    Object first = fixture.get();
+    assertTrue(fixture.isBuilt());
+    assertSame(first, fixture.get());
+    assertEquals(1, builds.get());
+    stack.runTearDown();
+    assertEquals(2, events.size());
+    assertEquals("torn down", events.get(1));
+  }
+
+  @Test
+  public void testBuiltOnceAcrossThreads() throws Throwable {
+    TearDownStack stack = new TearDownStack();
+    AtomicInteger builds = new AtomicInteger();
+    final LazyFixture<Object> fixture =
+        LazyFixture.create(stack, counting(builds));
+    final List<Object> seen = Collections.synchronizedList(new ArrayList<Object>());
+    StressRun.run(8, 3, new StressRun.Body() {
+      public void run() {
+        seen.add(fixture.get());
+      }
+    });
+    assertEquals(1, builds.get());
+    assertEquals(24, seen.size());
+    for (Object each : seen) {
+      assertSame(seen.get(0), each);
+    }
+    assertEquals(1, events.size());
+    stack.runTearDown();
+    assertEquals("torn down", events.get(1));
+  }
+
+  @Test
+  public void testFailedBuildIsRetried() {
+    final AtomicInteger attempts = new AtomicInteger();
+    LazyFixture<String> fixture = LazyFixture.create(new TearDownStack(),
+        new LazyFixture.Builder<String>() {
+          public String build(TearDownAccepter accepter) throws IOException {
+            if (attempts.incrementAndGet() == 1) {
+              throw new IOException("not yet");
+            }
+            return "built";
+          }
+        });
+    try {
+      fixture.get();
+      fail();
+    } catch (RuntimeException e) {
+      assertEquals("not yet", e.getCause().getMessage());
+    }
+    assertFalse(fixture.isBuilt());
+    assertEquals("built", fixture.get());
+    assertEquals(2, attempts.get());
+  }
+
+  public static class Junit3Test
+      extends com.google.common.testing.junit3.TearDownTestCase {
+    final List<String> events = new ArrayList<String>();
+    final LazyFixture<String> used = LazyFixture.create(this,
+        new LazyFixture.Builder<String>() {
+          public String build(TearDownAccepter accepter) {
+            accepter.addTearDown(new TearDown() {
+              public void tearDown() {
+                events.add("used torn down");
+              }
+            });
+            return "used";
+          }
+        });
+    final LazyFixture<String> unused = LazyFixture.create(this,
+        new LazyFixture.Builder<String>() {
+          public String build(TearDownAccepter accepter) {
+            events.add("unused built");
+            return "unused";
+          }
+        });
+
+    public void testUsingOne() {
+      assertEquals("used", used.get());
+    }
+  }
+
+  @Test
+  public void testJunit3TearDownTestCase() throws Throwable {
+    Junit3Test test = new Junit3Test();
+    test.setName("testUsingOne");
+    test.runBare();
+    assertEquals(Collections.singletonList("used torn down"), test.events);
+  }
+}
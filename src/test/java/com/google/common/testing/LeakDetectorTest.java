@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.common.testing.junit4.LeakDetectionRule;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class LeakDetectorTest {
+
+  @Test
+  public void testNoLeaks() {
+    LeakDetector.Snapshot before = LeakDetector.Snapshot.take();
+    assertEquals(Collections.emptyList(), before.findLeaks());
+  }
+
+  @Test
+  public void testThreadThatFinishesIsNotALeak() {
+    LeakDetector.Snapshot before = LeakDetector.Snapshot.take();
+    new Thread("short-lived").start();
+    assertEquals(Collections.emptyList(), before.findLeaks());
+  }
+
+  @Test
+  public void testLeakedThread() throws Exception {
+    LeakDetector.Snapshot before = LeakDetector.Snapshot.take();
+    CountDownLatch stop = startThread("leaked");
+    try {
+      List<String> leaks = before.findLeaks();
+      assertEquals(1, leaks.size());
+      assertTrue(leaks.get(0), leaks.get(0).startsWith("thread \"leaked\""));
+    } finally {
+      stop.countDown();
+    }
+  }
+
+  @Test
+  public void testLeakedFileDescriptor() throws Exception {
+    Assume.assumeTrue(Files.isDirectory(Paths.get("/proc/self/fd")));
+    File file = File.createTempFile("LeakDetectorTest", null);
+    try {
+      LeakDetector.Snapshot before = LeakDetector.Snapshot.take();
+      FileInputStream in = new FileInputStream(file);
+      try {
+        List<String> leaks = before.findLeaks();
+        assertEquals(1, leaks.size());
+        assertTrue(leaks.get(0), leaks.get(0).endsWith(file.getName()));
+      } finally {
+        in.close();
+      }
+      assertEquals(Collections.emptyList(), before.findLeaks());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testReportFails() {
+    try {
+      LeakDetector.report(LeakDetector.Mode.FAIL, "Foo.bar",
+          Collections.singletonList("thread \"t\" (WAITING)"));
+      fail("no exception thrown");
+    } catch (AssertionError e) {
+      assertEquals("Foo.bar leaked 1 resources past its tear-down:\n"
+          + "  thread \"t\" (WAITING)", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testRuleChecksAfterTearDown() throws Throwable {
+    final LeakDetectionRule rule =
+        new LeakDetectionRule(LeakDetector.Mode.FAIL, 1);
+    rule.apply(new Statement() {
+      @Override public void evaluate() {
+        final CountDownLatch stop = startThread("torn down");
+        rule.addTearDown(new TearDown() {
+          public void tearDown() {
+            stop.countDown();
+          }
+        });
+      }
+    }, method(), this).evaluate();
+
+    final CountDownLatch[] leaked = new CountDownLatch[1];
+    try {
+      rule.apply(new Statement() {
+        @Override public void evaluate() {
+          leaked[0] = startThread("not torn down");
+        }
+      }, method(), this).evaluate();
+      fail("no exception thrown");
+    } catch (AssertionError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(getClass().getName()
+          + ".testRuleChecksAfterTearDown leaked 1 resources"));
+    } finally {
+      leaked[0].countDown();
+    }
+  }
+
+  private FrameworkMethod method() throws Exception {
+    return new FrameworkMethod(
+        getClass().getMethod("testRuleChecksAfterTearDown"));
+  }
+
+  private static CountDownLatch startThread(String name) {
+    final CountDownLatch stop = new CountDownLatch(1);
+    new Thread(name) {
+      @Override public void run() {
+        try {
+          stop.await();
+        } catch (InterruptedException e) {
+          // Just finish
+        }
+      }
+    }.start();
+    return stop;
+  }
+}
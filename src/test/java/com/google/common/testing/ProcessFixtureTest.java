@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class ProcessFixtureTest {
+
+  /** Starts a shell running {@code children} background sleeps. */
+  private static Process startShell(ProcessFixture fixture, String setup,
+      int children) throws Exception {
+    StringBuilder script = new StringBuilder(setup);
+    for (int i = 0; i < children; i++) {
+      script.append("sleep 60 & ");
+    }
+    script.append("wait");
+    Process result = fixture.start(
+        new ProcessBuilder("sh", "-c", script.toString()));
+    long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+    while (result.toHandle().children().count() < children) {
+      assertTrue("children did not start", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+    return result;
+  }
+
+  private static List<ProcessHandle> tree(Process process) {
+    List<ProcessHandle> result = new ArrayList<ProcessHandle>();
+    result.add(process.toHandle());
+    result.addAll(process.descendants().collect(Collectors.toList()));
+    return result;
+  }
+
+  @Test
+  public void testStopsDescendants() throws Exception {
+    TearDownStack stack = new TearDownStack();
+    ProcessFixture fixture = ProcessFixture.create(stack);
+    List<ProcessHandle> tree = tree(startShell(fixture, "", 2));
+    assertEquals(3, tree.size());
+    stack.runTearDown();
+    for (ProcessHandle process : tree) {
+      assertFalse(process + " is still running", process.isAlive());
+    }
+  }
+
+  @Test
+  public void testKillsThoseIgnoringTerminationAfterOneSharedGracePeriod()
+      throws Exception {
+    TearDownStack stack = new TearDownStack();
+    Duration gracePeriod = Duration.ofSeconds(1);
+    int shells = 6;
+    ProcessFixture fixture = ProcessFixture.create(stack, gracePeriod);
+    List<ProcessHandle> all = new ArrayList<ProcessHandle>();
+    for (int i = 0; i < shells; i++) {
+      // Ignored signals stay ignored in the sleeps too
+      all.addAll(tree(startShell(fixture, "trap '' TERM; ", 1)));
+    }
+    long start = System.nanoTime();
+    stack.runTearDown();
+    long elapsed = System.nanoTime() - start;
+    for (ProcessHandle process : all) {
+      assertFalse(process + " is still running", process.isAlive());
+    }
+    // Rather than a grace period for each of them in turn
+    assertTrue("took " + elapsed + "ns",
+        elapsed < gracePeriod.multipliedBy(shells).toNanos());
+  }
+
+  @Test
+  public void testIgnoresProcessesThatAlreadyExited() throws Exception {
+    TearDownStack stack = new TearDownStack();
+    ProcessFixture fixture = ProcessFixture.create(stack);
+    Process process = fixture.start(new ProcessBuilder("true"));
+    process.waitFor();
+    stack.runTearDown();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsNegativeGracePeriod() {
+    ProcessFixture.create(new TearDownStack(), Duration.ofMillis(-1));
+  }
+}
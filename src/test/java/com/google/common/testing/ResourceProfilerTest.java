@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.testing.junit4.ResourceProfilingRule;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+import java.util.List;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class ResourceProfilerTest {
+
+  private static volatile Object sink;
+
+  @After
+  public void clearProfiles() {
+    ResourceProfiler.clear();
+  }
+
+  @Test
+  public void testMeasuresAllocations() {
+    ResourceProfiler.Measurement measurement = ResourceProfiler.start();
+    for (int i = 0; i < 100; i++) {
+      sink = new byte[10000];
+    }
+    ResourceProfiler.Profile profile = measurement.stop("allocating");
+    assertEquals("allocating", profile.test);
+    assertTrue(profile.wallNanos >= 0);
+    if (ResourceProfiler.currentThreadAllocatedBytes() >= 0) {
+      assertTrue(profile.toString(), profile.allocatedBytes >= 1000000);
+    }
+    assertTrue(profile.gcCount >= 0);
+    List<ResourceProfiler.Profile> profiles = ResourceProfiler.getProfiles();
+    assertEquals(1, profiles.size());
+    assertEquals(profile, profiles.get(0));
+  }
+
+  @Test
+  public void testWriteCsvAndJson() throws Exception {
+    ResourceProfiler.record(
+        new ResourceProfiler.Profile("Foo.\"bar\"", 10, 5, 1024, 1, 2));
+    StringBuilder csv = new StringBuilder();
+    ResourceProfiler.writeCsv(csv);
+    assertEquals("test,wallNanos,cpuNanos,allocatedBytes,gcCount,gcMillis\n"
+        + "\"Foo.\"\"bar\"\"\",10,5,1024,1,2\n", csv.toString());
+    StringBuilder json = new StringBuilder();
+    ResourceProfiler.writeJson(json);
+    assertEquals("[\n  {\"test\": \"Foo.\\\"bar\\\"\", \"wallNanos\": 10, "
+        + "\"cpuNanos\": 5, \"allocatedBytes\": 1024, \"gcCount\": 1, "
+        + "\"gcMillis\": 2}\n]\n", json.toString());
+  }
+
+  @Test
+  public void testRuleRecordsFailingTests() throws Throwable {
+    Statement failing = new ResourceProfilingRule().apply(new Statement() {
+      @Override public void evaluate() {
+        throw new IllegalStateException("failed");
+      }
+    }, new FrameworkMethod(getClass().getMethod("testRuleRecordsFailingTests")),
+        this);
+    try {
+      failing.evaluate();
+    } catch (IllegalStateException expected) {
+    }
+    List<ResourceProfiler.Profile> profiles = ResourceProfiler.getProfiles();
+    assertEquals(1, profiles.size());
+    assertEquals(getClass().getName() + ".testRuleRecordsFailingTests",
+        profiles.get(0).test);
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static com.google.common.testing.junit4.JUnitAsserts.assertContainsRegex;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class SoftAssertionsTest {
+
+  private final TearDownStack stack = new TearDownStack();
+  private final SoftAssertions soft = SoftAssertions.create(stack);
+
+  @Test
+  public void testNoFailures() throws Exception {
+    soft.check(() -> assertContainsRegex("b", "abc"));
+    stack.runTearDown();
+  }
+
+  @Test
+  public void testSingleFailureIsVerifiedAsIs() throws Exception {
+    soft.check(() -> assertContainsRegex("x", "abc"));
+    soft.check(() -> assertContainsRegex("b", "abc"));
+    assertEquals(1, soft.failureCount());
+    try {
+      soft.verify();
+      fail("verify should have thrown an exception");
+    } catch (AssertionError expected) {
+      assertEquals("expected to contain regex:<x> but was:<abc>",
+          expected.getMessage());
+    }
+    stack.runTearDown();
+  }
+
+  @Test
+  public void testAllFailuresAreReportedAtTearDown() throws Exception {
+    soft.check(() -> assertContainsRegex("x", "abc"));
+    soft.check(() -> assertContainsRegex("y", "abc"));
+    for (int i = 0; i < 10; i++) {
+      final int n = i;
+      soft.check(() -> assertEquals(n, -1));
+    }
+    assertEquals(12, soft.failureCount());
+    try {
+      stack.runTearDown();
+      fail("runTearDown should have thrown an exception");
+    } catch (ClusterException expected) {
+      assertEquals(12, expected.totalOccurrences);
+      assertEquals(12, expected.exceptions.size());
+      assertEquals(1, (int) expected.occurrences.get(11));
+    }
+  }
+
+  @Test
+  public void testIdenticalFailuresAreGrouped() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      soft.check(() -> assertEquals(1, -1));
+    }
+    soft.check(() -> assertContainsRegex("x", "abc"));
+    assertEquals(11, soft.failureCount());
+    try {
+      stack.runTearDown();
+      fail("runTearDown should have thrown an exception");
+    } catch (ClusterException expected) {
+      assertEquals(11, expected.totalOccurrences);
+      assertEquals(2, expected.exceptions.size());
+      assertEquals(10, (int) expected.occurrences.get(0));
+    }
+  }
+
+  @Test
+  public void testOtherExceptionsPropagate() throws Exception {
+    try {
+      soft.check(() -> {
+        throw new IOException("boom");
+      });
+      fail("check should have thrown an exception");
+    } catch (IOException expected) {
+    }
+    assertEquals(0, soft.failureCount());
+    stack.runTearDown();
+  }
+
+  @Test
+  public void testVerifyForgetsReportedFailures() throws Exception {
+    soft.check(() -> fail("once"));
+    try {
+      soft.verify();
+      fail("verify should have thrown an exception");
+    } catch (AssertionError expected) {
+    }
+    soft.verify();
+    stack.runTearDown();
+  }
+}
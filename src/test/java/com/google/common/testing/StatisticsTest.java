@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.testing.junit4.JUnitAsserts;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class StatisticsTest {
+
+  private final Statistics statistics = Statistics.get();
+
+  @Test
+  public void testTearDowns() {
+    long registered = statistics.getTearDownsRegistered();
+    long run = statistics.getTearDownsRun();
+    long failed = statistics.getTearDownsFailed();
+    long pending = statistics.getPendingTearDowns();
+    TearDownStack stack = new TearDownStack(true);
+    stack.addTearDown(new TearDown() {
+      public void tearDown() {
+        throw new IllegalStateException();
+      }
+    });
+    stack.addTearDown(new TearDown() {
+      public void tearDown() {
+      }
+    });
+    assertEquals(registered + 2, statistics.getTearDownsRegistered());
+    assertEquals(pending + 2, statistics.getPendingTearDowns());
+    stack.runTearDown();
+    assertEquals(run + 2, statistics.getTearDownsRun());
+    assertEquals(failed + 1, statistics.getTearDownsFailed());
+    assertEquals(pending, statistics.getPendingTearDowns());
+  }
+
+  @Test
+  public void testLogRecords() {
+    long published = statistics.getLogRecordsPublished();
+    long retained = statistics.getLogRecordsRetained();
+    long dropped = statistics.getLogRecordsDropped();
+    TestLogHandler handler = new TestLogHandler(2);
+    for (int i = 0; i < 3; i++) {
+      handler.publish(new LogRecord(Level.INFO, "message"));
+    }
+    assertEquals(2, handler.getStoredLogRecords().size());
+    assertEquals(published + 3, statistics.getLogRecordsPublished());
+    assertEquals(retained + 2, statistics.getLogRecordsRetained());
+    assertEquals(dropped + 1, statistics.getLogRecordsDropped());
+    assertEquals(2 * (TestLogHandler.RECORD_OVERHEAD_BYTES + 2 * 7),
+        handler.bytesRetained());
+    handler.clear();
+    assertEquals(retained, statistics.getLogRecordsRetained());
+  }
+
+  @Test
+  public void testPatternCacheHitRate() {
+    String regex = "pattern cache test \\d+";
+    JUnitAsserts.assertMatchesRegex(regex, "pattern cache test 1");
+    long hits = PatternCache.getHits();
+    JUnitAsserts.assertMatchesRegex(regex, "pattern cache test 2");
+    assertEquals(hits + 1, PatternCache.getHits());
+    assertSame(PatternCache.compile(regex), PatternCache.compile(regex));
+    assertTrue(statistics.getPatternCacheHitRate() > 0);
+  }
+
+  @Test
+  public void testMultiPatternScanUsesPatternCache() {
+    List<String> regexes = Arrays.asList(
+        "multi pattern \\d", "cache test", "(multi)\\1?");
+    String actual = "multi pattern 1 cache test";
+    JUnitAsserts.assertContainsAllRegexes(regexes, actual);
+    long hits = PatternCache.getHits();
+    long misses = PatternCache.getMisses();
+    JUnitAsserts.assertContainsAllRegexes(regexes, actual);
+    assertEquals(misses, PatternCache.getMisses());
+    assertTrue(PatternCache.getHits() >= hits + 2);
+  }
+
+  @Test
+  public void testRegister() throws Exception {
+    Statistics.register();
+    Statistics.register();
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(Statistics.OBJECT_NAME);
+    assertEquals(statistics.getTearDownsRegistered(),
+        server.getAttribute(name, "TearDownsRegistered"));
+    assertTrue(server.getAttribute(name, "PatternCacheHitRate")
+        instanceof Double);
+  }
+}
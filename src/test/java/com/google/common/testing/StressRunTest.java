@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.google.common.testing.junit4.StressRule;
+import com.google.common.testing.junit4.TearDownMethodRule;
+
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.Statement;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class StressRunTest {
+
+  @Test
+  public void testRule() throws Throwable {
+    final TearDownMethodRule tearDownRule = new TearDownMethodRule();
+    final AtomicInteger runs = new AtomicInteger();
+    final AtomicInteger tearDowns = new AtomicInteger();
+    FrameworkMethod method =
+        new FrameworkMethod(getClass().getMethod("testRule"));
+    Statement test = new Statement() {
+      @Override public void evaluate() {
+        runs.incrementAndGet();
+        tearDownRule.addTearDown(new TearDown() {
+          public void tearDown() {
+            tearDowns.incrementAndGet();
+          }
+        });
+      }
+    };
+    new StressRule(3, 2).apply(tearDownRule.apply(test, method, this),
+        method, this).evaluate();
+    assertEquals(6, runs.get());
+    assertEquals(6, tearDowns.get());
+  }
+
+  @Test
+  public void testAllThreadsRunTogether() throws Throwable {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final AtomicInteger tearDowns = new AtomicInteger();
+    List<StressRun.RoundStats> stats =
+        StressRun.run(4, 5, new StressRun.Body() {
+          public void run() throws Exception {
+            int now = running.incrementAndGet();
+            while (maxRunning.get() < now) {
+              maxRunning.compareAndSet(maxRunning.get(), now);
+            }
+            Thread.sleep(10);
+            running.decrementAndGet();
+            StressRun.currentTearDownAccepter().addTearDown(new TearDown() {
+              public void tearDown() {
+                tearDowns.incrementAndGet();
+              }
+            });
+          }
+        });
+    assertEquals(5, stats.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i + 1, stats.get(i).round);
+      assertEquals(4, stats.get(i).runs);
+      assertEquals(0, stats.get(i).failures);
+    }
+    assertEquals(4, maxRunning.get());
+    assertEquals(20, tearDowns.get());
+    assertNull(StressRun.currentTearDownAccepter());
+  }
+
+  @Test
+  public void testSingleFailureIsThrownAsIs() throws Throwable {
+    final AtomicInteger runs = new AtomicInteger();
+    final AssertionError failure = new AssertionError("once");
+    try {
+      StressRun.run(2, 2, new StressRun.Body() {
+        public void run() {
+          if (runs.incrementAndGet() == 3) {
+            throw failure;
+          }
+        }
+      });
+      fail("no exception thrown");
+    } catch (AssertionError e) {
+      assertSame(failure, e);
+    }
+    assertEquals(4, runs.get());
+  }
+
+  @Test
+  public void testFailuresAreGrouped() throws Throwable {
+    try {
+      StressRun.run(4, 3, new StressRun.Body() {
+        public void run() {
+          fail("always");
+        }
+      });
+      fail("no exception thrown");
+    } catch (ClusterException e) {
+      assertEquals(12, e.totalOccurrences);
+      assertEquals(1, e.exceptions.size());
+    }
+  }
+
+  @Test
+  public void testTearDownFailuresKeepTheirCounts() throws Throwable {
+    try {
+      StressRun.run(2, 3, new StressRun.Body() {
+        public void run() {
+          for (int i = 0; i < 5; i++) {
+            StressRun.currentTearDownAccepter().addTearDown(new TearDown() {
+              public void tearDown() {
+                throw new IllegalStateException("broken fixture");
+              }
+            });
+          }
+        }
+      });
+      fail("no exception thrown");
+    } catch (ClusterException e) {
+      assertEquals(30, e.totalOccurrences);
+      assertEquals(1, e.exceptions.size());
+      assertEquals(30, (int) e.occurrences.get(0));
+    }
+  }
+}
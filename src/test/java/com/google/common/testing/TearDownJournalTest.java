@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class TearDownJournalTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  /** Returns a process id that no running process has. */
+  private static long deadPid() throws Exception {
+    Process process = new ProcessBuilder("true").start();
+    process.waitFor();
+    return process.pid();
+  }
+
+  private Path newDirectoryWithAFile(String name) throws Exception {
+    Path dir = folder.newFolder(name).toPath();
+    Files.write(dir.resolve("file"), Arrays.asList("contents"),
+        StandardCharsets.UTF_8);
+    return dir;
+  }
+
+  @Test
+  public void testDeleteOnTearDown() throws Exception {
+    Path journalDir = folder.newFolder("journal").toPath();
+    TearDownJournal journal = TearDownJournal.open(journalDir);
+    Path dir = newDirectoryWithAFile("dir");
+    TearDownStack stack = new TearDownStack();
+    journal.deleteOnTearDown(stack, dir);
+    assertTrue(Files.exists(journal.getFile()));
+    stack.runTearDown();
+    assertFalse(Files.exists(dir));
+    journal.close();
+    assertFalse(Files.exists(journal.getFile()));
+  }
+
+  @Test
+  public void testCreatesPrivateDirectory() throws Exception {
+    Path journalDir = folder.getRoot().toPath().resolve("new/journal");
+    TearDownJournal.open(journalDir);
+    assertEquals(PosixFilePermissions.fromString("rwx------"),
+        Files.getPosixFilePermissions(journalDir));
+  }
+
+  @Test
+  public void testKeepsJournalWithPendingTearDowns() throws Exception {
+    Path journalDir = folder.newFolder("journal").toPath();
+    TearDownJournal journal = TearDownJournal.open(journalDir);
+    journal.deleteOnTearDown(new TearDownStack(), newDirectoryWithAFile("dir"));
+    journal.close();
+    assertTrue(Files.exists(journal.getFile()));
+  }
+
+  @Test
+  public void testRecoversOrphans() throws Exception {
+    Path journalDir = folder.newFolder("journal").toPath();
+    TearDownJournal dead = new TearDownJournal(journalDir, deadPid(), 1);
+    Path leaked = newDirectoryWithAFile("leaked");
+    Path cleaned = newDirectoryWithAFile("cleaned");
+    Process sleeper = new ProcessBuilder("sleep", "60").start();
+    dead.deleteOnTearDown(new TearDownStack(), leaked);
+    dead.killOnTearDown(new TearDownStack(), sleeper.toHandle());
+    TearDownStack ran = new TearDownStack();
+    dead.deleteOnTearDown(ran, cleaned);
+    ran.runTearDown();
+    dead.close();
+    // Cut short by the death of the JVM
+    Files.write(dead.getFile(),
+        "ADD\t7\tDELETE_".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    TearDownJournal live = TearDownJournal.open(journalDir);
+    assertEquals(2, live.recoverOrphans());
+    assertFalse(Files.exists(leaked));
+    assertTrue(sleeper.waitFor(10, TimeUnit.SECONDS));
+    assertFalse(Files.exists(dead.getFile()));
+    assertEquals(0, journalDir.toFile().list().length);
+  }
+
+  @Test
+  public void testLeavesJournalsOfRunningJvms() throws Exception {
+    Path journalDir = folder.newFolder("journal").toPath();
+    TearDownJournal running = TearDownJournal.open(journalDir);
+    Path dir = newDirectoryWithAFile("dir");
+    running.deleteOnTearDown(new TearDownStack(), dir);
+    assertEquals(0, TearDownJournal.open(journalDir).recoverOrphans());
+    assertTrue(Files.exists(dir));
+    assertTrue(Files.exists(running.getFile()));
+  }
+
+  @Test
+  public void testDoesNotKillReusedPids() throws Exception {
+    Path journalDir = folder.newFolder("journal").toPath();
+    TearDownJournal dead = new TearDownJournal(journalDir, deadPid(), 1);
+    Process sleeper = new ProcessBuilder("sleep", "60").start();
+    try {
+      // Journal a process with the sleeper's pid but another start time
+      dead.deleteOnTearDown(new TearDownStack(), folder.newFolder("x").toPath());
+      dead.close();
+      Files.write(dead.getFile(), ("ADD\t9\tKILL_PROCESS\t" + sleeper.pid()
+          + " 12345\n").getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.APPEND);
+      assertEquals(2, TearDownJournal.open(journalDir).recoverOrphans());
+      assertTrue(sleeper.isAlive());
+    } finally {
+      sleeper.destroyForcibly();
+    }
+  }
+
+  @Test
+  public void testDoesNotKillProcessesOfUnknownStartTime() throws Exception {
+    Path journalDir = folder.newFolder("journal").toPath();
+    TearDownJournal dead = new TearDownJournal(journalDir, deadPid(), 1);
+    Process sleeper = new ProcessBuilder("sleep", "60").start();
+    try {
+      dead.deleteOnTearDown(new TearDownStack(), folder.newFolder("x").toPath());
+      dead.close();
+      Files.write(dead.getFile(), ("ADD\t9\tKILL_PROCESS\t" + sleeper.pid()
+          + " 0\n").getBytes(StandardCharsets.UTF_8),
+          StandardOpenOption.APPEND);
+      assertEquals(2, TearDownJournal.open(journalDir).recoverOrphans());
+      assertTrue(sleeper.isAlive());
+    } finally {
+      sleeper.destroyForcibly();
+    }
+  }
+}
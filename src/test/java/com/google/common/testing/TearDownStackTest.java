@@ -95,6 +95,33 @@ public class TearDownStackTest extends TearDownTestCase {
     assertEquals(true, tearDownTwo.ran);
   }
 
+  @Test
+  public void testTearDownAddedDuringTearDownRuns() throws Exception {
+    final TearDownStack stack = buildTearDownStack();
+
+    final SimpleTearDown tearDownOne = new SimpleTearDown();
+    stack.addTearDown(tearDownOne);
+
+    final SimpleTearDown added = new SimpleTearDown(new Callback() {
+      public void run() {
+        assertEquals("the added tearDown should have run before tearDownOne",
+          false, tearDownOne.ran);
+      }
+    });
+    stack.addTearDown(new TearDown() {
+      public void tearDown() {
+        stack.addTearDown(added);
+      }
+    });
+    long pending = Statistics.get().getPendingTearDowns();
+
+    stack.runTearDown();
+
+    assertEquals("the added tearDown should have run", true, added.ran);
+    assertEquals("tearDownOne should have run", true, tearDownOne.ran);
+    assertEquals(pending - 2, Statistics.get().getPendingTearDowns());
+  }
+
   /**
    * Builds a {@link TearDownStack} that makes sure it's clear by the end of
    * this test.
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.testing.junit4.DurationOrderedSuite;
+import com.google.common.testing.junit4.TearDownMethodRule;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.Description;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Request;
+import org.junit.runner.RunWith;
+import org.junit.runner.notification.RunListener;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class TestTimingsTest {
+
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testEstimatesUntimedTestsAsTheSlowest() throws Exception {
+    TestTimings timings = TestTimings.load(new File(folder.getRoot(), "none"));
+    assertEquals(0, timings.estimateNanos("Foo.a"));
+    timings.record("Foo.a", 10);
+    timings.record("Foo.b", 30);
+    assertEquals(10, timings.estimateNanos("Foo.a"));
+    assertEquals(30, timings.estimateNanos("Foo.c"));
+  }
+
+  @Test
+  public void testSlowestFirst() throws Exception {
+    TestTimings timings = TestTimings.load(new File(folder.getRoot(), "none"));
+    timings.record("Foo.a", 10);
+    timings.record("Foo.b", 30);
+    timings.record("Foo.c", 10);
+    List<String> tests = Arrays.asList("Foo.c", "Foo.a", "Foo.b");
+    Collections.sort(tests, timings.slowestFirst());
+    assertEquals(Arrays.asList("Foo.b", "Foo.a", "Foo.c"), tests);
+  }
+
+  @Test
+  public void testSaveMergesWithOtherRuns() throws Exception {
+    File file = new File(folder.getRoot(), "timings.txt");
+    TestTimings first = TestTimings.load(file);
+    TestTimings second = TestTimings.load(file);
+    first.record("Foo.a", 10);
+    first.record("Foo.b", 20);
+    first.save();
+    second.record("Foo.b", 25);
+    second.save();
+    TestTimings loaded = TestTimings.load(file);
+    assertEquals(10, loaded.estimateNanos("Foo.a"));
+    assertEquals(25, loaded.estimateNanos("Foo.b"));
+  }
+
+  @Test
+  public void testLoadSkipsMalformedLines() throws Exception {
+    File file = new File(folder.getRoot(), "timings.txt");
+    Writer writer = new FileWriter(file);
+    writer.write("garbage\nNaN\tFoo.a\n42\tFoo.b\n");
+    writer.close();
+    TestTimings timings = TestTimings.load(file);
+    assertEquals(42, timings.estimateNanos("Foo.b"));
+    assertEquals(42, timings.estimateNanos("Foo.a"));
+  }
+
+  @Test
+  public void testPartitionBalancesWork() throws Exception {
+    TestTimings timings = TestTimings.load(new File(folder.getRoot(), "none"));
+    timings.record("Foo.a", 50);
+    timings.record("Foo.b", 40);
+    timings.record("Foo.c", 30);
+    timings.record("Foo.d", 20);
+    timings.record("Foo.e", 10);
+    List<List<String>> shards = timings.partition(
+        Arrays.asList("Foo.a", "Foo.b", "Foo.c", "Foo.d", "Foo.e"), 2);
+    assertEquals(Arrays.asList("Foo.a", "Foo.d", "Foo.e"), shards.get(0));
+    assertEquals(Arrays.asList("Foo.b", "Foo.c"), shards.get(1));
+  }
+
+  @Test
+  public void testPartitionSpreadsUntimedTests() throws Exception {
+    TestTimings timings = TestTimings.load(new File(folder.getRoot(), "none"));
+    List<List<String>> shards = timings.partition(
+        Arrays.asList("Foo.a", "Foo.b", "Foo.c", "Foo.d"), 3);
+    assertEquals(Arrays.asList("Foo.a", "Foo.d"), shards.get(0));
+    assertEquals(Arrays.asList("Foo.b"), shards.get(1));
+    assertEquals(Arrays.asList("Foo.c"), shards.get(2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPartitionRejectsNoWorkers() throws Exception {
+    TestTimings.load(new File(folder.getRoot(), "none"))
+        .partition(Arrays.asList("Foo.a"), 0);
+  }
+
+  public static class Sample {
+    @Test public void fast() { }
+    @Test public void medium() { }
+    @Test public void slow() { }
+  }
+
+  @Test
+  public void testSuiteSortsAndShards() throws Exception {
+    TestTimings timings = TestTimings.load(new File(folder.getRoot(), "none"));
+    String prefix = Sample.class.getName() + ".";
+    timings.record(prefix + "fast", 10);
+    timings.record(prefix + "medium", 20);
+    timings.record(prefix + "slow", 30);
+
+    assertEquals(Arrays.asList("slow", "medium", "fast"),
+        run(Request.aClass(Sample.class)
+            .sortWith(DurationOrderedSuite.slowestFirst(timings))));
+
+    Description root = Request.aClass(Sample.class).getRunner().getDescription();
+    assertEquals(Arrays.asList("slow"), run(Request.aClass(Sample.class)
+        .filterWith(DurationOrderedSuite.shard(timings, root, 0, 2))));
+    List<String> second = run(Request.aClass(Sample.class)
+        .filterWith(DurationOrderedSuite.shard(timings, root, 1, 2)));
+    assertEquals(2, second.size());
+    assertTrue(second.containsAll(Arrays.asList("medium", "fast")));
+  }
+
+  @RunWith(Parameterized.class)
+  public static class ParameterizedSample {
+    @Rule public final TearDownMethodRule rule = new TearDownMethodRule();
+    private final int millis;
+
+    public ParameterizedSample(int millis) {
+      this.millis = millis;
+    }
+
+    @Parameters public static Collection<Object[]> parameters() {
+      return Arrays.asList(new Object[][] {{20}, {30}});
+    }
+
+    @Test public void fast() { }
+
+    @Test public void slow() throws InterruptedException {
+      Thread.sleep(millis);
+    }
+  }
+
+  @Test
+  public void testParameterizedTestsAreTimedAndScheduled() throws Exception {
+    File file = File.createTempFile("test-timings", ".txt");
+    file.deleteOnExit();
+    System.setProperty(TestTimings.FILE_PROPERTY, file.getPath());
+    System.setProperty(TestTimings.ENABLED_PROPERTY, "true");
+    try {
+      run(Request.aClass(ParameterizedSample.class));
+    } finally {
+      System.clearProperty(TestTimings.ENABLED_PROPERTY);
+      System.clearProperty(TestTimings.FILE_PROPERTY);
+    }
+    TestTimings timings = TestTimings.getDefault();
+    String prefix = ParameterizedSample.class.getName() + ".";
+    assertTrue(timings.estimateNanos(prefix + "slow")
+        >= TimeUnit.MILLISECONDS.toNanos(30));
+    assertTrue(timings.estimateNanos(prefix + "slow[0]")
+        > timings.estimateNanos(prefix + "fast[0]"));
+
+    assertEquals(Arrays.asList("slow[0]", "fast[0]", "slow[1]", "fast[1]"),
+        run(Request.aClass(ParameterizedSample.class)
+            .sortWith(DurationOrderedSuite.slowestFirst(timings))));
+
+    Description root = Request.aClass(ParameterizedSample.class)
+        .getRunner().getDescription();
+    List<String> all = new ArrayList<String>();
+    for (int shard = 0; shard < 2; shard++) {
+      List<String> tests = run(Request.aClass(ParameterizedSample.class)
+          .filterWith(DurationOrderedSuite.shard(timings, root, shard, 2)));
+      assertEquals(2, tests.size());
+      assertTrue(tests.get(0), tests.get(0).startsWith("slow"));
+      all.addAll(tests);
+    }
+    Collections.sort(all);
+    assertEquals(Arrays.asList("fast[0]", "fast[1]", "slow[0]", "slow[1]"),
+        all);
+  }
+
+  private static List<String> run(Request request) {
+    final List<String> started = new ArrayList<String>();
+    JUnitCore core = new JUnitCore();
+    core.addListener(new RunListener() {
+      @Override public void testStarted(Description description) {
+        started.add(description.getMethodName());
+      }
+    });
+    assertTrue(core.run(request).wasSuccessful());
+    return started;
+  }
+}
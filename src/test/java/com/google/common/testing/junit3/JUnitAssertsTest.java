@@ -16,22 +16,45 @@
 
 package com.google.common.testing.junit3;
 
+import static com.google.common.testing.junit3.JUnitAsserts.assertAllocatesAtMost;
+import static com.google.common.testing.junit3.JUnitAsserts.assertCompletesWithin;
+import static com.google.common.testing.junit3.JUnitAsserts.assertContainsAllRegexes;
+import static com.google.common.testing.junit3.JUnitAsserts.assertContainsAnyRegex;
 import static com.google.common.testing.junit3.JUnitAsserts.assertContainsRegex;
+import static com.google.common.testing.junit3.JUnitAsserts.assertContentsEqual;
 import static com.google.common.testing.junit3.JUnitAsserts.assertContentsInOrder;
+import static com.google.common.testing.junit3.JUnitAsserts.assertEveryLineMatchesRegex;
 import static com.google.common.testing.junit3.JUnitAsserts.assertMatchesRegex;
+import static com.google.common.testing.junit3.JUnitAsserts.assertMatchesRegexLazily;
+import static com.google.common.testing.junit3.JUnitAsserts.assertNoLineContainsRegex;
+import static com.google.common.testing.junit3.JUnitAsserts.assertNotContainsAnyRegex;
 import static com.google.common.testing.junit3.JUnitAsserts.assertNotContainsRegex;
 import static com.google.common.testing.junit3.JUnitAsserts.assertNotEqual;
 import static com.google.common.testing.junit3.JUnitAsserts.assertNotMatchesRegex;
+import static com.google.common.testing.junit3.JUnitAsserts.assertSomeLineContainsRegex;
 
+import com.google.common.testing.Abbreviator;
+import com.google.common.testing.MultiPatternScan;
+import com.google.common.testing.RegexBudget;
 import com.google.common.testing.junit3.JUnitAsserts;
 
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
 
 /**
  * Unit test for {@link JUnitAsserts}.
@@ -135,6 +158,256 @@ public class JUnitAssertsTest extends TestCase {
     }
   }
 
+  public void testContainsRegexCharSequence() {
+    MatchResult result = assertContainsRegex("a(.)", CharBuffer.wrap("ace"));
+    assertEquals("c", result.group(1));
+  }
+
+  public void testContainsRegexCharSequenceFailure() {
+    try {
+      assertContainsRegex("thing", "a(.)", new StringBuilder("ha"));
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertEquals("failure message generated by MoreAsserts",
+          "thing expected to contain regex:<a(.)> but was:<ha>",
+          e.getMessage());
+    }
+  }
+
+  public void testContainsAllRegexesSuccess() {
+    MultiPatternScan scan = assertContainsAllRegexes(
+        Arrays.asList("she", "he", "hers", "x\\d+"), "ushers x42");
+    assertEquals(1, scan.start("she"));
+    assertEquals(2, scan.start("he"));
+    assertEquals(2, scan.start("hers"));
+    assertEquals(7, scan.start("x\\d+"));
+  }
+
+  public void testContainsAllRegexesFailure() {
+    try {
+      assertContainsAllRegexes("thing",
+          Arrays.asList("a", "b+", Pattern.quote("c."), "d"), "a c.");
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertEquals("thing expected to contain all of regexes:"
+          + "<[a, b+, \\Qc.\\E, d]> but was missing:<[b+, d]> "
+          + "(found:<{a=0, \\Qc.\\E=2}>) in:<a c.>", e.getMessage());
+    }
+  }
+
+  public void testContainsAnyRegexSuccess() {
+    assertContainsAnyRegex(Arrays.asList("x", "c(.)"), "ace");
+  }
+
+  public void testContainsAnyRegexFailure() {
+    try {
+      assertContainsAnyRegex("thing", Arrays.asList("x", "y+"), "ace");
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertEquals("thing expected to contain any of regexes:<[x, y+]> "
+          + "but was:<ace>", e.getMessage());
+    }
+  }
+
+  public void testNotContainsAnyRegexSuccess() {
+    assertNotContainsAnyRegex(
+        Arrays.asList("ERROR", "FATAL", "Exception\\b"), "INFO Exceptional");
+  }
+
+  public void testNotContainsAnyRegexFailure() {
+    try {
+      assertNotContainsAnyRegex("thing",
+          Arrays.asList("FATAL", "(a)\\1", "ERR(OR)?", "[0-9]{3}"),
+          "ERROR 404 aa");
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertEquals("thing expected not to contain any of regexes:"
+          + "<[FATAL, (a)\\1, ERR(OR)?, [0-9]{3}]> "
+          + "but found:<{(a)\\1=10, ERR(OR)?=0, [0-9]{3}=6}> in:<ERROR 404 aa>",
+          e.getMessage());
+    }
+  }
+
+  public void testSomeLineContainsRegexSuccess() throws Exception {
+    MatchResult result = assertSomeLineContainsRegex("b(.)",
+        new StringReader("one\nabc\nabd"));
+    assertEquals("c", result.group(1));
+  }
+
+  public void testSomeLineContainsRegexFailure() throws Exception {
+    try {
+      assertSomeLineContainsRegex("thing", "a.c",
+          new StringReader("a\nc\n"));
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertEquals("thing expected some line to contain regex:<a.c> "
+          + "but none of 2 lines did", e.getMessage());
+    }
+  }
+
+  public void testEveryLineMatchesRegexSuccess() throws Exception {
+    assertEveryLineMatchesRegex("\\d+", new StringReader("1\n22\n333"));
+  }
+
+  public void testEveryLineMatchesRegexFailure() throws Exception {
+    try {
+      assertEveryLineMatchesRegex("thing", "\\d+",
+          new StringReader("1\n2x\n3"));
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertEquals("thing expected every line to match regex:<\\d+> "
+          + "but line 2 was:<2x>", e.getMessage());
+    }
+  }
+
+  public void testNoLineContainsRegexSuccess() throws Exception {
+    assertNoLineContainsRegex("ERROR", new StringReader("INFO\nWARN"));
+  }
+
+  public void testNoLineContainsRegexFailurePath() throws Exception {
+    Path log = createTempFile(bytes("INFO ok\nERROR boom\nINFO ok\n"));
+    try {
+      assertNoLineContainsRegex("thing", "ERROR", log);
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertEquals("thing expected no line to contain regex:<ERROR> "
+          + "but line 2 was:<ERROR boom>", e.getMessage());
+    } finally {
+      Files.delete(log);
+    }
+  }
+
+  public void testContainsRegexFailureAbbreviated() {
+    int oldMaxLength = Abbreviator.getMaxLength();
+    Abbreviator.setMaxLength(6);
+    try {
+      StringBuilder actual = new StringBuilder();
+      for (int i = 0; i < 1000; i++) {
+        actual.append('a');
+      }
+      actual.append("xyz");
+      assertContainsRegex("thing", "b", actual);
+      fail("no exception thrown");
+    } catch (AbbreviatedAssertionFailedError e) {
+      assertEquals("thing expected to contain regex:<b> but was:<aaa...xyz> "
+          + "(length:1003, 997 chars omitted)", e.getMessage());
+      assertEquals(1003,
+          ((CharSequence) e.getValueSupplier().get()).length());
+    } finally {
+      Abbreviator.setMaxLength(oldMaxLength);
+    }
+  }
+
+  public void testNullMessage() {
+    assertNotEqual(null, 1, 2);
+    assertMatchesRegex(null, "a", "a");
+    assertContainsRegex(null, "a", "a");
+    assertNotMatchesRegex(null, "b", "a");
+    assertNotContainsRegex(null, "b", "a");
+  }
+
+  public void testMatchesRegexLazyMessageNotComputedOnSuccess() {
+    assertMatchesRegexLazily(new Supplier<String>() {
+      public String get() {
+        throw new AssertionError("message should not have been computed");
+      }
+    }, "a(.)", "ab");
+  }
+
+  public void testMatchesRegexLazyMessageFailure() {
+    try {
+      assertMatchesRegexLazily(() -> "thing", "a(.)", "ace");
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertEquals("thing expected to match regex:<a(.)> but was:<ace>",
+          e.getMessage());
+    }
+  }
+
+  public void testMatchesRegexBudgetExceeded() {
+    RegexBudget.setMaxSteps(100000);
+    try {
+      // the back-reference keeps the JDK from memoizing the backtracking
+      assertMatchesRegex("thing", "(a+)+(b)\\2", "aaaaaaaaaaaaaaaaaaaaaaaaac");
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(
+          "thing regex:<(a+)+(b)\\2> took more than 100000 steps"));
+      assertTrue(e.getMessage(),
+          e.getMessage().contains("against an input of length:<26>"));
+    } finally {
+      RegexBudget.setMaxSteps(0);
+    }
+  }
+
+  private static String repeat(char c, int count) {
+    StringBuilder result = new StringBuilder();
+    for (int i = 0; i < count; i++) {
+      result.append(c);
+    }
+    return result.toString();
+  }
+
+  public void testContainsAllRegexesBudgetExceeded() {
+    RegexBudget.setMaxSteps(1000);
+    try {
+      assertContainsAllRegexes("thing", Arrays.asList("a+c", "b+c"),
+          repeat('a', 200));
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(
+          "thing regex:<[a+c, b+c]> took more than 1000 steps"));
+      assertTrue(e.getMessage(),
+          e.getMessage().contains("against an input of length:<200>"));
+    } finally {
+      RegexBudget.setMaxSteps(0);
+    }
+  }
+
+  public void testNotContainsAnyRegexBudgetExceededAlone() {
+    RegexBudget.setMaxSteps(1000);
+    try {
+      // the back-reference makes it scanned on its own
+      assertNotContainsAnyRegex("thing", Arrays.asList("(a)\\1+c"),
+          repeat('a', 200));
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(
+          "thing regex:<(a)\\1+c> took more than 1000 steps"));
+      assertTrue(e.getMessage(),
+          e.getMessage().contains("against an input of length:<200>"));
+    } finally {
+      RegexBudget.setMaxSteps(0);
+    }
+  }
+
+  public void testSomeLineContainsRegexBudgetExceeded() throws Exception {
+    RegexBudget.setMaxSteps(1000);
+    try {
+      assertSomeLineContainsRegex("thing", "a+c",
+          new StringReader("short\n" + repeat('a', 200) + "\n"));
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(
+          "thing regex:<a+c> took more than 1000 steps"));
+      assertTrue(e.getMessage(), e.getMessage().contains(
+          "against an input of length:<200>, which usually means "
+          + "catastrophic backtracking on line 2"));
+    } finally {
+      RegexBudget.setMaxSteps(0);
+    }
+  }
+
+  public void testContainsRegexWithinBudget() {
+    RegexBudget.setMaxSteps(100000);
+    try {
+      MatchResult result = assertContainsRegex("a(.)", "ace");
+      assertEquals("c", result.group(1));
+    } finally {
+      RegexBudget.setMaxSteps(0);
+    }
+  }
+
   public void testNotMatchesRegexSuccess() {
     assertNotMatchesRegex("a(.)", "ace");
   }
@@ -207,4 +480,154 @@ public class JUnitAssertsTest extends TestCase {
           "foo expected:<[2, 1]> but was:<[1, 2]>", e.getMessage());
     }
   }
+
+  public void testContentsEqualSuccess() {
+    ByteBuffer expected = ByteBuffer.wrap(bytes("xxabcdef"));
+    expected.position(2);
+    assertContentsEqual(expected, ByteBuffer.wrap(bytes("abcdef")));
+    assertEquals("position should not have changed", 2, expected.position());
+  }
+
+  public void testContentsEqualFailure() {
+    try {
+      assertContentsEqual("thing", ByteBuffer.wrap(bytes("abcdef")),
+          ByteBuffer.wrap(bytes("abcXef")));
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      String[] lines = e.getMessage().split("\n");
+      assertEquals("thing contents differ at offset:<3> "
+          + "(expected length:<6>, actual length:<6>)", lines[0]);
+      assertTrue(lines[1], lines[1].startsWith("expected: 0x00000000  61 62 63 64"));
+      assertTrue(lines[1], lines[1].endsWith("|abcdef|"));
+      assertTrue(lines[2], lines[2].startsWith("actual:   0x00000000  61 62 63 58"));
+      assertTrue(lines[2], lines[2].endsWith("|abcXef|"));
+    }
+  }
+
+  public void testContentsEqualFailurePrefix() {
+    try {
+      assertContentsEqual(ByteBuffer.wrap(bytes("abc")),
+          ByteBuffer.wrap(bytes("abcd")));
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith(
+          "contents differ at offset:<3> (expected length:<3>, actual length:<4>)"));
+    }
+  }
+
+  public void testContentsEqualPaths() throws Exception {
+    byte[] contents = new byte[100000];
+    Arrays.fill(contents, (byte) 'a');
+    Path expected = createTempFile(contents);
+    Path actual = createTempFile(contents);
+    try {
+      assertContentsEqual(expected, actual);
+      contents[54321] = 'b';
+      Files.write(actual, contents);
+      try {
+        assertContentsEqual(expected, actual);
+        fail("no exception thrown");
+      } catch (AssertionFailedError e) {
+        assertTrue(e.getMessage(), e.getMessage().startsWith(
+            "contents differ at offset:<54321>"));
+        assertTrue(e.getMessage(), e.getMessage().contains(
+            "|aaaaaaaaaaaaaaaabaaaaaaaaaaaaaaa|"));
+      }
+    } finally {
+      Files.delete(expected);
+      Files.delete(actual);
+    }
+  }
+
+  private static volatile Object sink;
+
+  public void testAllocatesAtMostSuccess() {
+    final int[] counter = new int[1];
+    assertAllocatesAtMost(0, new Runnable() {
+      public void run() {
+        counter[0]++;
+      }
+    });
+  }
+
+  public void testAllocatesAtMostFailure() {
+    try {
+      assertAllocatesAtMost("hot path", 100, 10, new Runnable() {
+        public void run() {
+          sink = new byte[1000];
+        }
+      });
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("hot path "
+          + "expected each run to allocate at most 100 bytes, but the worst "
+          + "of 10 runs allocated "));
+      assertTrue(e.getMessage(), e.getMessage().contains(
+          "Bytes allocated per run:\n  [512B, 1.0KiB)"));
+    }
+  }
+
+  public void testAllocatesAtMostPercentileSuccess() {
+    final int[] counter = new int[1];
+    assertAllocatesAtMost(100, 90, 20, new Runnable() {
+      public void run() {
+        if (++counter[0] == 25) {
+          sink = new byte[1000];
+        }
+      }
+    });
+  }
+
+  public void testAllocatesAtMostPercentileFailure() {
+    try {
+      assertAllocatesAtMost(100, 50, 10, new Runnable() {
+        public void run() {
+          sink = new byte[1000];
+        }
+      });
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("expected "
+          + "percentile 50.0 of 10 runs to allocate at most 100 bytes, but it "
+          + "allocated "));
+    }
+  }
+
+  public void testCompletesWithinSuccess() {
+    assertCompletesWithin(Duration.ofSeconds(10), 99, 10, new Runnable() {
+      public void run() {
+        sink = "fast";
+      }
+    });
+  }
+
+  public void testCompletesWithinFailure() {
+    try {
+      assertCompletesWithin(Duration.ofNanos(1), 50, 5, new Runnable() {
+        public void run() {
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      });
+      fail("no exception thrown");
+    } catch (AssertionFailedError e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("expected "
+          + "percentile 50.0 of 5 runs to take at most 1ns, but it took "));
+      assertTrue(e.getMessage(), e.getMessage().contains(
+          "Time taken per run:\n  ["));
+    }
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static Path createTempFile(byte[] contents) throws Exception {
+    Path result = File.createTempFile("JUnitAssertsTest", null).toPath();
+    Files.write(result, contents);
+    return result;
+  }
 }
@@ -18,6 +18,7 @@ package com.google.common.testing.junit3;
 
 import static com.google.common.testing.junit3.JUnitAsserts.assertContentsInOrder;
 
+import com.google.common.testing.FailureLogs;
 import com.google.common.testing.TearDown;
 import com.google.common.testing.TearDownStack;
 import com.google.common.testing.TestLogHandler;
@@ -26,6 +27,7 @@ import junit.framework.TestCase;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
@@ -47,6 +49,8 @@ public class TearDownTestCaseTest extends TestCase {
     handler = new TestLogHandler();
     TearDownStack.logger.addHandler(handler);
     TearDownStack.logger.setUseParentHandlers(false);
+    // Alike failures are only logged in full the first time
+    FailureLogs.resetTearDownFailures();
   }
 
   public void testAdHocTearDownObject() throws Exception {
@@ -119,6 +123,18 @@ public class TearDownTestCaseTest extends TestCase {
     assertNothingWasLogged();
   }
 
+  public void testRunConcurrently() throws Throwable {
+    final AtomicInteger runs = new AtomicInteger();
+    final AtomicInteger tearDowns = new AtomicInteger();
+    ConcurrentTestCase concurrent = new ConcurrentTestCase(runs, tearDowns);
+    concurrent.setName("testIncrement");
+    concurrent.runBare();
+    assertEquals(12, runs.get());
+    assertEquals(12, tearDowns.get());
+    assertEquals(1, concurrent.setUps);
+    assertNothingWasLogged();
+  }
+
   private void assertNothingWasLogged() {
     assertTrue(handler.getStoredLogRecords().isEmpty());
   }
@@ -138,6 +154,32 @@ public class TearDownTestCaseTest extends TestCase {
     super.tearDown();
   }
 
+  public static class ConcurrentTestCase extends TearDownTestCase {
+    final AtomicInteger runs;
+    final AtomicInteger tearDowns;
+    int setUps;
+
+    ConcurrentTestCase(AtomicInteger runs, AtomicInteger tearDowns) {
+      this.runs = runs;
+      this.tearDowns = tearDowns;
+    }
+
+    @Override protected void setUp() throws Exception {
+      super.setUp();
+      setUps++;
+      runConcurrently(4, 3);
+    }
+
+    public void testIncrement() {
+      runs.incrementAndGet();
+      addTearDown(new TearDown() {
+        public void tearDown() {
+          tearDowns.incrementAndGet();
+        }
+      });
+    }
+  }
+
   private static class SomeObject {
     String desc;
     SomeObject(String desc) {
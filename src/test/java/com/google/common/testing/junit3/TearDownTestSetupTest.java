@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit3;
+
+import static com.google.common.testing.junit3.JUnitAsserts.assertContentsInOrder;
+
+import com.google.common.testing.TearDown;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestResult;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit test for {@link TearDownTestSetup}.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class TearDownTestSetupTest extends TestCase {
+
+  static final List<String> events = new ArrayList<String>();
+
+  @Override protected void setUp() {
+    events.clear();
+    SharingTest.lastFixture = null;
+  }
+
+  static TearDown logging(final String event) {
+    return new TearDown() {
+      public void tearDown() {
+        events.add(event);
+      }
+    };
+  }
+
+  public void testFixtureIsSharedBySuite() {
+    Counting setup = new Counting(new TestSuite(SharingTest.class));
+    TestResult result = new TestResult();
+    setup.run(result);
+    assertTrue(result.wasSuccessful());
+    assertEquals(3, result.runCount());
+    assertContentsInOrder(events, "setUp", "test", "test", "test",
+        "shared tearDown", "suite tearDown");
+  }
+
+  public void testNestedSetups() {
+    Counting outer = new Counting(new Other(new TestSuite(SharingTest.class)));
+    TestResult result = new TestResult();
+    outer.run(result);
+    assertTrue(result.wasSuccessful());
+    assertEquals(1, outer.setUps);
+  }
+
+  public void testRunWithoutSetup() {
+    AloneTest test = new AloneTest();
+    test.setName("testOnItsOwn");
+    TestResult result = new TestResult();
+    test.run(result);
+    assertTrue(result.wasSuccessful());
+    assertContentsInOrder(events, "alone tearDown");
+  }
+
+  public void testUnlinkedAfterRun() {
+    SharingTest test = new SharingTest();
+    test.setName("testShared");
+    new Counting(test).run(new TestResult());
+    assertTrue(test.suiteSetups.isEmpty());
+  }
+
+  public void testTearDownDespiteSetUpFailure() {
+    TearDownTestSetup setup = new TearDownTestSetup(new SharingTest()) {
+      @Override protected void setUp() {
+        addTearDown(logging("torn down"));
+        throw new IllegalStateException("setUp failed");
+      }
+    };
+    TestResult result = new TestResult();
+    setup.run(result);
+    assertEquals(1, result.errorCount());
+    assertEquals("setUp failed",
+        result.errors().nextElement().thrownException().getMessage());
+    assertContentsInOrder(events, "torn down");
+  }
+
+  public void testTearDownFailureIsReported() {
+    TearDownTestSetup setup = new TearDownTestSetup(new TestSuite()) {
+      @Override protected void setUp() {
+        addTearDown(new TearDown() {
+          public void tearDown() {
+            throw new IllegalStateException("tearDown failed");
+          }
+        });
+      }
+    };
+    TestResult result = new TestResult();
+    setup.run(result);
+    assertEquals(1, result.errorCount());
+  }
+
+  static class Counting extends TearDownTestSetup {
+    int setUps;
+    Object fixture;
+
+    Counting(Test test) {
+      super(test);
+    }
+
+    @Override protected void setUp() {
+      setUps++;
+      events.add("setUp");
+      fixture = new Object();
+      addTearDown(logging("suite tearDown"));
+    }
+  }
+
+  static class Other extends TearDownTestSetup {
+    Other(Test test) {
+      super(test);
+    }
+  }
+
+  public static class SharingTest extends TearDownTestCase {
+    static Object lastFixture;
+
+    public void testShared() {
+      Counting setup = getSuiteSetup(Counting.class);
+      assertNotNull(setup);
+      if (lastFixture == null) {
+        getSuiteTearDownAccepter().addTearDown(logging("shared tearDown"));
+      } else {
+        assertSame(lastFixture, setup.fixture);
+      }
+      lastFixture = setup.fixture;
+      events.add("test");
+    }
+
+    public void testAlsoShared() {
+      testShared();
+    }
+
+    public void testAgainShared() {
+      testShared();
+    }
+  }
+
+  public static class AloneTest extends TearDownTestCase {
+    public void testOnItsOwn() {
+      assertNull(getSuiteSetup(Counting.class));
+      assertSame(this, getSuiteTearDownAccepter());
+      getSuiteTearDownAccepter().addTearDown(logging("alone tearDown"));
+    }
+  }
+}
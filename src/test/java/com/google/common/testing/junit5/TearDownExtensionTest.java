@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2010 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.testing.junit5;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.platform.engine.discovery.DiscoverySelectors.selectClass;
+
+import com.google.common.testing.TearDown;
+import com.google.common.testing.TearDownAccepter;
+import com.google.common.testing.junit5.TearDownExtension.Scope;
+import com.google.common.testing.junit5.TearDownExtension.TearDownScope;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInfo;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.platform.launcher.LauncherDiscoveryRequest;
+import org.junit.platform.launcher.core.LauncherDiscoveryRequestBuilder;
+import org.junit.platform.launcher.core.LauncherFactory;
+import org.junit.platform.launcher.listeners.SummaryGeneratingListener;
+import org.junit.platform.launcher.listeners.TestExecutionSummary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs Jupiter test classes that use {@link TearDownExtension}.
+ *
+ * @author Luiz-Otavio "Z" Zorzella
+ */
+public class TearDownExtensionTest {
+
+  static final List<String> events =
+      Collections.synchronizedList(new ArrayList<String>());
+
+  @Before
+  public void clearEvents() {
+    events.clear();
+  }
+
+  static TearDown logging(final String event) {
+    return new TearDown() {
+      public void tearDown() {
+        events.add(event);
+      }
+    };
+  }
+
+  @ExtendWith(TearDownExtension.class)
+  static class Scopes {
+    @BeforeAll static void beforeAll(TearDownAccepter perClass,
+        @TearDownScope(Scope.ENGINE) TearDownAccepter perEngine) {
+      perClass.addTearDown(logging("class"));
+      perEngine.addTearDown(logging("engine"));
+    }
+
+    @AfterEach void afterEach() {
+      events.add("afterEach");
+    }
+
+    @AfterAll static void afterAll() {
+      events.add("afterAll");
+    }
+
+    @org.junit.jupiter.api.Test void test(TearDownAccepter accepter) {
+      accepter.addTearDown(logging("first"));
+      accepter.addTearDown(logging("second"));
+    }
+  }
+
+  @Test
+  public void testScopes() {
+    TestExecutionSummary summary = run(Scopes.class, false);
+    assertEquals(0, summary.getTotalFailureCount());
+    assertEquals(Arrays.asList("afterEach", "second", "first", "afterAll",
+        "class", "engine"), events);
+  }
+
+  @ExtendWith(TearDownExtension.class)
+  static class FailingTearDowns {
+    @org.junit.jupiter.api.Test void test(TearDownAccepter accepter) {
+      accepter.addTearDown(new TearDown() {
+        public void tearDown() {
+          throw new IllegalStateException("one");
+        }
+      });
+      accepter.addTearDown(new TearDown() {
+        public void tearDown() {
+          throw new IllegalArgumentException("two");
+        }
+      });
+      accepter.addTearDown(logging("still run"));
+    }
+  }
+
+  @Test
+  public void testFailuresAreClustered() {
+    TestExecutionSummary summary = run(FailingTearDowns.class, false);
+    assertEquals(1, summary.getTestsFailedCount());
+    Throwable failure = summary.getFailures().get(0).getException();
+    assertEquals("ClusterException", failure.getClass().getSimpleName());
+    assertEquals(1, failure.getSuppressed().length);
+    assertEquals(Arrays.asList("still run"), events);
+  }
+
+  static final int PARALLEL_TESTS = 4;
+  static final CountDownLatch allRunning = new CountDownLatch(PARALLEL_TESTS);
+  static final ThreadLocal<String> tearingDown = new ThreadLocal<String>();
+
+  @ExtendWith(TearDownExtension.class)
+  static class Parallel {
+    void runConcurrently(final String name, TearDownAccepter accepter)
+        throws InterruptedException {
+      for (int i = 0; i < 100; i++) {
+        accepter.addTearDown(new TearDown() {
+          public void tearDown() {
+            if (!name.equals(tearingDown.get())) {
+              throw new AssertionError(
+                  tearingDown.get() + " ran the tear-down of " + name);
+            }
+            events.add(name);
+          }
+        });
+        Thread.yield();
+      }
+      allRunning.countDown();
+      assertTrue(allRunning.await(10, TimeUnit.SECONDS));
+    }
+
+    @AfterEach void afterEach(TestInfo info) {
+      tearingDown.set(info.getTestMethod().get().getName());
+    }
+
+    @org.junit.jupiter.api.Test void a(TearDownAccepter accepter)
+        throws InterruptedException {
+      runConcurrently("a", accepter);
+    }
+
+    @org.junit.jupiter.api.Test void b(TearDownAccepter accepter)
+        throws InterruptedException {
+      runConcurrently("b", accepter);
+    }
+
+    @org.junit.jupiter.api.Test void c(TearDownAccepter accepter)
+        throws InterruptedException {
+      runConcurrently("c", accepter);
+    }
+
+    @org.junit.jupiter.api.Test void d(TearDownAccepter accepter)
+        throws InterruptedException {
+      runConcurrently("d", accepter);
+    }
+  }
+
+  @Test
+  public void testParallelTestsDontShareStacks() {
+    TestExecutionSummary summary = run(Parallel.class, true);
+    assertEquals(PARALLEL_TESTS, summary.getTestsSucceededCount());
+    assertEquals(0, allRunning.getCount());
+    assertEquals(PARALLEL_TESTS * 100, events.size());
+  }
+
+  private static TestExecutionSummary run(Class<?> testClass, boolean parallel) {
+    LauncherDiscoveryRequest request = LauncherDiscoveryRequestBuilder.request()
+        .selectors(selectClass(testClass))
+        .configurationParameter("junit.jupiter.execution.parallel.enabled",
+            String.valueOf(parallel))
+        .configurationParameter(
+            "junit.jupiter.execution.parallel.mode.default", "concurrent")
+        .configurationParameter(
+            "junit.jupiter.execution.parallel.config.strategy", "fixed")
+        .configurationParameter(
+            "junit.jupiter.execution.parallel.config.fixed.parallelism",
+            String.valueOf(PARALLEL_TESTS))
+        .build();
+    SummaryGeneratingListener listener = new SummaryGeneratingListener();
+    LauncherFactory.create().execute(request, listener);
+    return listener.getSummary();
+  }
+}